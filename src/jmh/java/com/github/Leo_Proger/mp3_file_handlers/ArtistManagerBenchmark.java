@@ -0,0 +1,72 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.utils.ArtistJournal;
+import com.github.Leo_Proger.utils.JsonManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding new artists to a JSON file of known artists. One operation is one append to the journal of
+ * {@link #NEW_ARTISTS} artists
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ArtistManagerBenchmark {
+    private static final int NEW_ARTISTS = 100;
+
+    /**
+     * Number of artists already in the file
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int artists;
+
+    private Path jsonFile;
+    private List<String> newArtists;
+    private int round;
+    private ArtistManager artistManager;
+
+    @Setup(Level.Trial)
+    public void createJsonFile() throws IOException {
+        jsonFile = Files.createTempFile("correct_artists_names", ".json");
+        Map<String, String> existingArtists = new HashMap<>();
+        for (int i = 0; i < artists; i++) {
+            String artist = "Artist_" + i;
+            existingArtists.put(artist.toLowerCase(), artist);
+        }
+        JsonManager.writeDataToJson(existingArtists, jsonFile);
+        artistManager = new ArtistManager();
+    }
+
+    @Setup(Level.Invocation)
+    public void createNewArtists() {
+        // Every merge adds artists that are not in the file yet
+        newArtists = new ArrayList<>(NEW_ARTISTS);
+        for (int i = 0; i < NEW_ARTISTS; i++) {
+            newArtists.add("New_Artist_%d_%d".formatted(round, i));
+        }
+        round++;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJsonFile() throws IOException {
+        Files.deleteIfExists(jsonFile);
+        Files.deleteIfExists(new ArtistJournal(jsonFile).getJournalFile());
+    }
+
+    @Benchmark
+    public void updateArtistsInJsonFile() {
+        artistManager.updateArtistsInJsonFile(newArtists, jsonFile);
+    }
+}
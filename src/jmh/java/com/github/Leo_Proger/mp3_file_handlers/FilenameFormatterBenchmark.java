@@ -0,0 +1,91 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting of filenames. One operation is one filename
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilenameFormatterBenchmark {
+    static final int FILENAMES = 1024;
+
+    private static final String[] REALISTIC_FILENAMES = {
+            "DVRST - Close Eyes.mp3",
+            "dvrst - Close Eyes (Official Video).mp3",
+            "Kordhell, Scarlxrd - Live Another Day [Music Video].mp3",
+            "LXST CXNTURY - ODIUM (EEMUSIC.ru).mp3",
+            "freddie dredd x shadxwbxrn - Opium.mp3",
+            "MC ORSEN feat Ghostface Playa - Маска.mp3",
+            "Ghostface Playa & Kordhell - Why Not (Official Audio).mp3",
+            "Imagine Dragons - Believer.mp3",
+            "Кино - Группа крови (musmore.com).mp3",
+            "SHADXWBXRN - Murder In My Mind ★.mp3",
+            "ØRBIT - Don’t Stop.mp3",
+            "Artist_1, Artist_2_-_Another_Song_Title.mp3"
+    };
+
+    @Param({"realistic", "adversarial"})
+    public String filenames;
+
+    private String[] names;
+    private FilenameFormatter formatter;
+
+    @Setup
+    public void setUp() {
+        names = filenames.equals("realistic") ? realisticFilenames() : adversarialFilenames();
+        formatter = new FilenameFormatter(new HashSet<>());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILENAMES)
+    public void run(Blackhole blackhole) {
+        for (String name : names) {
+            try {
+                blackhole.consume(formatter.run(name));
+            } catch (Mp3FileFormattingException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    static String[] realisticFilenames() {
+        String[] names = new String[FILENAMES];
+        for (int i = 0; i < FILENAMES; i++) {
+            names[i] = REALISTIC_FILENAMES[i % REALISTIC_FILENAMES.length];
+        }
+        return names;
+    }
+
+    /**
+     * Long filenames full of separators, spaces, characters to replace and parts of ads that almost match
+     */
+    static String[] adversarialFilenames() {
+        String[] pieces = {
+                " ", "  ", "_", "-", " - ", "_-_", ", ", " ,", "x", " x ", " feat ", " & ", "(Official", "Video)",
+                "(Official Vide)", "[Music", "(EEMUSIC.r)", "Ø", "★", "’", "Artist", "артист", "kordhell", ".mp3"
+        };
+        Random random = new Random(42);
+        String[] names = new String[FILENAMES];
+        for (int i = 0; i < FILENAMES; i++) {
+            StringBuilder name = new StringBuilder();
+            int count = 20 + random.nextInt(40);
+            for (int j = 0; j < count; j++) {
+                name.append(pieces[random.nextInt(pieces.length)]);
+            }
+            name.insert(name.length() / 2, " - ");
+            names[i] = name.append(".mp3").toString();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FileFormatter#isValidMp3Filename(CharSequence)}. One operation is one filename
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilenameValidationBenchmark {
+    @Param({"valid", "invalid"})
+    public String filenames;
+
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        if (filenames.equals("valid")) {
+            // Results of formatting are valid filenames
+            FilenameFormatter formatter = new FilenameFormatter(new HashSet<>());
+            String[] realistic = FilenameFormatterBenchmark.realisticFilenames();
+            names = new String[realistic.length];
+            for (int i = 0; i < realistic.length; i++) {
+                try {
+                    names[i] = formatter.run(realistic[i]);
+                } catch (Mp3FileFormattingException e) {
+                    throw new IllegalStateException("Filename \"%s\" cannot be formatted".formatted(realistic[i]), e);
+                }
+            }
+        } else {
+            names = FilenameFormatterBenchmark.adversarialFilenames();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FilenameFormatterBenchmark.FILENAMES)
+    public int isValidMp3Filename() {
+        int valid = 0;
+        for (String name : names) {
+            if (FileFormatter.isValidMp3Filename(name)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+}
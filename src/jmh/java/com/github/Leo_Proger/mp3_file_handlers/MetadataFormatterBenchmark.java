@@ -0,0 +1,119 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.jaudiotagger.tag.images.Artwork;
+import org.jaudiotagger.tag.images.ArtworkFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures writing metadata to a freshly downloaded file and reading of its tag. One operation is one file.
+ * <p>
+ * Every operation gets its own copy of the original file, copying is not measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataFormatterBenchmark {
+    private static final String FILENAME = "Ghostface_Playa, Kordhell_-_Why_Not.mp3";
+
+    /**
+     * small - 10 seconds of audio, large - 10 minutes of audio
+     */
+    @Param({"small", "large"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean artwork;
+
+    private Path tempDir;
+    private Path originalFile;
+    private Path mp3File;
+    private MetadataFormatter formatter;
+    private Id3TagReader tagReader;
+
+    @Setup(Level.Trial)
+    public void createOriginalFile() throws Exception {
+        tempDir = Files.createTempDirectory("mp3_editor_benchmark");
+        originalFile = tempDir.resolve("original.mp3");
+        mp3File = tempDir.resolve(FILENAME);
+        Mp3TestFiles.writeSilentMp3(originalFile, size.equals("small") ? 383 : 22_970);
+
+        // Tag like the ones of downloaded files: some fields, artwork and no padding
+        ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.ARTIST, "Ghostface Playa");
+        tag.setField(FieldKey.TITLE, "Why Not (EEMUSIC.ru)");
+        tag.setField(FieldKey.ALBUM, "Why Not");
+        if (artwork) {
+            byte[] image = new byte[300 * 1024];
+            new Random(42).nextBytes(image);
+            Artwork cover = ArtworkFactory.getNew();
+            cover.setBinaryData(image);
+            cover.setMimeType("image/jpeg");
+            cover.setPictureType(3);
+            tag.setField(cover);
+        }
+        new Id3TagWriter(0).write(originalFile, tag);
+
+        formatter = new MetadataFormatter();
+        tagReader = new Id3TagReader();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyOriginalFile() throws IOException {
+        Files.copy(originalFile, mp3File, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void run() throws Exception {
+        formatter.run(mp3File, FILENAME);
+    }
+
+    /**
+     * Decoding of the whole tag
+     */
+    @Benchmark
+    public Id3TagReader.Result readTag() throws Exception {
+        return tagReader.read(mp3File);
+    }
+
+    /**
+     * Reading of headers of frames, as it is done by {@link MetadataFormatter}. Artwork is not loaded
+     */
+    @Benchmark
+    public Id3TagReader.TagFrames readFrames() throws Exception {
+        return tagReader.readFrames(mp3File, Set.of("APIC", "USLT"));
+    }
+
+    /**
+     * Reading of the tag together with audio header, for comparison with {@link #readTag()}
+     */
+    @Benchmark
+    public AudioFile readAudioFile() throws Exception {
+        return AudioFileIO.read(mp3File.toFile());
+    }
+}
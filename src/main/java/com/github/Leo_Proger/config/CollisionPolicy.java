@@ -0,0 +1,23 @@
+package com.github.Leo_Proger.config;
+
+/**
+ * What is done with a file when a file with the same name, ignoring case, is already in target dir
+ */
+public enum CollisionPolicy {
+    /**
+     * File is not moved and is shown as an error
+     */
+    ERROR,
+    /**
+     * File is formatted, but not moved
+     */
+    SKIP,
+    /**
+     * Number is added to the end of track title, e.g. "Artist_-_Song_(2).mp3"
+     */
+    SUFFIX,
+    /**
+     * File replaces the file in target dir if its bitrate is higher, otherwise it is not moved
+     */
+    REPLACE_IF_BETTER_BITRATE
+}
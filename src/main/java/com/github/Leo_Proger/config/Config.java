@@ -1,30 +1,127 @@
 package com.github.Leo_Proger.config;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.Leo_Proger.main.Main;
-import com.github.Leo_Proger.utils.JsonManager;
+import com.github.Leo_Proger.mp3_file_handlers.FilePipeline;
+import com.github.Leo_Proger.mp3_file_handlers.FilenameRules;
+import com.github.Leo_Proger.mp3_file_handlers.PipelineStage;
+import com.github.Leo_Proger.utils.ArtistDictionary;
+import com.github.Leo_Proger.utils.ArtistJournal;
+import com.github.Leo_Proger.utils.MultiPatternMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
 
 public class Config {
     public static final Path RESOURCES_PATH = Path.of(System.getenv("MP3_EDITOR_RESOURCES_PATH"));
     public static final Path SOURCE_PATH = Path.of(System.getenv("MP3_EDITOR_SOURCE_PATH"));
     public static final Path TARGET_PATH = Path.of(System.getenv("MP3_EDITOR_TARGET_PATH"));
 
+    /**
+     * Directory of logs, reports and plans. {@code logs} in working directory if MP3_EDITOR_LOG_PATH is not set,
+     * the same default is used by log4j2.xml
+     */
+    public static final Path LOG_PATH = getPathSetting("MP3_EDITOR_LOG_PATH", Path.of("logs"));
+
+    /**
+     * JSON report with timing and throughput of the last run
+     */
+    public static final Path REPORT_PATH = LOG_PATH.resolve("run_report.json");
+
+    /**
+     * JSON lines file with result of every file of the last run
+     */
+    public static final Path RESULTS_PATH = LOG_PATH.resolve("run_results.jsonl");
+
+    /**
+     * JSON plan written by "plan" mode and executed by "apply" mode, unless another file is given
+     */
+    public static final Path PLAN_PATH = LOG_PATH.resolve("plan.json");
+
     private static final Logger log = LoggerFactory.getLogger(Config.class.getName());
 
-    static {
-        loadDataFromJsons();
-    }
+    /**
+     * Number of files processed at the same time. {@code 1} means sequential processing
+     */
+    public static final int PROCESSING_THREADS = getIntSetting("MP3_EDITOR_THREADS", 1, 1);
+
+    /**
+     * Threads and queue capacity of every stage of file processing, used when PROCESSING_THREADS is more than 1.
+     * <p>
+     * Set by MP3_EDITOR_&lt;STAGE&gt;_THREADS and MP3_EDITOR_&lt;STAGE&gt;_QUEUE, e.g. MP3_EDITOR_MOVE_THREADS.
+     * By default every stage has PROCESSING_THREADS threads and a queue of twice as many files
+     *
+     * @see PipelineStage
+     */
+    public static final Map<PipelineStage, FilePipeline.StageSettings> PIPELINE_STAGES = getPipelineStages();
+
+    /**
+     * Free space in bytes reserved in a new ID3v2 tag, so later tag updates can be written in place
+     * without moving audio data
+     */
+    public static final int TAG_PADDING = getIntSetting("MP3_EDITOR_TAG_PADDING", 4096, 0);
+
+    /**
+     * Ids of ID3v2 frames that are copied from the old tag to the new one without decoding.
+     * Set by comma-separated MP3_EDITOR_KEPT_FRAMES, by default artwork and lyrics.
+     * Title and artists are always written anew
+     */
+    public static final Set<String> KEPT_FRAMES = getKeptFrames();
+
+    /**
+     * Take MP3 files from subdirs of SOURCE_PATH too. Formatted files are moved to TARGET_PATH without subdirs
+     */
+    public static final boolean RECURSIVE_SCAN = Boolean.parseBoolean(System.getenv("MP3_EDITOR_RECURSIVE"));
+
+    /**
+     * Write formatted files with new tags directly to TARGET_PATH and delete source files,
+     * instead of changing files in SOURCE_PATH and moving them
+     */
+    public static final boolean WRITE_TO_TARGET = Boolean.parseBoolean(System.getenv("MP3_EDITOR_WRITE_TO_TARGET"));
+
+    /**
+     * Don't move files whose audio data is already in TARGET_PATH under another name. Enabled unless set to "false"
+     */
+    public static final boolean DUPLICATE_CHECK = !"false".equalsIgnoreCase(System.getenv("MP3_EDITOR_DUPLICATE_CHECK"));
+
+    /**
+     * What is done with a file when a file with the same name, ignoring case, is already in TARGET_PATH
+     */
+    public static final CollisionPolicy COLLISION_POLICY = getEnumSetting("MP3_EDITOR_COLLISION_POLICY", CollisionPolicy.class, CollisionPolicy.SUFFIX);
+
+    /**
+     * What is flushed to disk when a file is moved to TARGET_PATH on another disk, before source file is deleted
+     */
+    public static final SyncPolicy MOVE_SYNC = getEnumSetting("MP3_EDITOR_MOVE_SYNC", SyncPolicy.class, SyncPolicy.FILE_AND_DIR);
+
+    /**
+     * Name of this process in "worker" mode, must be unique among workers that share SOURCE_PATH.
+     * By default, it is made of host name and process id
+     */
+    public static final String WORKER_ID = getWorkerId();
+
+    /**
+     * Time after which files claimed by a worker that stopped renewing its claims, e.g. crashed,
+     * can be taken by other workers. Set in seconds by MP3_EDITOR_LEASE_SECONDS
+     */
+    public static final Duration LEASE_DURATION = Duration.ofSeconds(getIntSetting("MP3_EDITOR_LEASE_SECONDS", 300, 1));
+
+    /**
+     * Port on localhost of "serve" mode. Set by MP3_EDITOR_SERVICE_PORT, {@code 0} to choose a free port
+     */
+    public static final int SERVICE_PORT = getIntSetting("MP3_EDITOR_SERVICE_PORT", 8765, 0);
 
     public static final String FILENAME_FORMAT = "^([^<>:\\\"/\\\\|?*\\x00-\\x1F, ]+?)(,\\s[^<>:\\\"/\\\\|?*\\x00-\\x1F, ]+)*_-_([^<>:\\\"/\\\\|?*\\x00-\\x1F ]+)\\.mp3$";
     public static final ArtistsDelimiterForMetadata ARTISTS_DELIMITER_IN_METADATA = ArtistsDelimiterForMetadata.COMMA;
 
+    static {
+        loadDataFromJsons();
+    }
+
     /**
      * Characters to replace in filename
      */
@@ -35,12 +132,18 @@ public class Config {
      */
     public static Set<String> BLACKLIST;
 
+    /**
+     * Matcher that finds all ads from BLACKLIST in one pass
+     */
+    public static MultiPatternMatcher BLACKLIST_MATCHER;
+
     /**
      * Key is incorrect artist's name; Value is correct artist's name.
      * <p>
-     * When searching for artist's name, case is not considered
+     * When searching for artist's name, case is not considered.
+     * Built from correct_artists_names.json and its journal into correct_artists_names.dict, which is memory-mapped
      */
-    public static Map<String, String> CORRECT_ARTISTS_NAMES;
+    public static ArtistDictionary CORRECT_ARTISTS_NAMES;
 
     /**
      * Artists who don't need to remove underscore when adding it to metadata
@@ -53,27 +156,145 @@ public class Config {
     public static List<String> ARTIST_SEPARATORS;
 
     /**
-     * Method that assign values from json files to variables above
+     * Matcher that finds all separators from ARTIST_SEPARATORS in one pass
+     */
+    public static MultiPatternMatcher ARTIST_SEPARATORS_MATCHER;
+
+    /**
+     * All filename formatting rules above compiled into one program
+     */
+    public static FilenameRules FILENAME_RULES;
+
+    /**
+     * Hash of all formatting rules. Changes when any json file or formatting constant changes
+     */
+    public static String CONFIG_VERSION;
+
+    /**
+     * Method that assign values from json files to variables above.
+     * <p>
+     * Parsed json files and matchers are read from a binary snapshot, see {@link ConfigSnapshot}
      */
     public static void loadDataFromJsons() {
         try {
-            CHARACTERS_TO_REPLACE = JsonManager.loadDataFromResourcesJson("characters_to_replace.json", new TypeReference<>() {
-            });
-
-            BLACKLIST = JsonManager.loadDataFromResourcesJson("blacklist.json", new TypeReference<>() {
-            });
+            ConfigSnapshot snapshot = ConfigSnapshot.load(RESOURCES_PATH,
+                    List.of(FILENAME_FORMAT, ARTISTS_DELIMITER_IN_METADATA.getDelimiter()));
 
-            CORRECT_ARTISTS_NAMES = JsonManager.loadDataFromResourcesJson("correct_artists_names.json", new TypeReference<>() {
-            });
+            CHARACTERS_TO_REPLACE = snapshot.charactersToReplace();
+            BLACKLIST = snapshot.blacklist();
+            ARTISTS_EXCLUSIONS = snapshot.artistsExclusions();
+            ARTIST_SEPARATORS = snapshot.artistSeparators();
+            BLACKLIST_MATCHER = snapshot.blacklistMatcher();
+            ARTIST_SEPARATORS_MATCHER = snapshot.artistSeparatorsMatcher();
+            CONFIG_VERSION = snapshot.configVersion();
 
-            ARTISTS_EXCLUSIONS = JsonManager.loadDataFromResourcesJson("artists_exclusions.json", new TypeReference<>() {
-            });
+            Path correctArtistsNamesFile = RESOURCES_PATH.resolve("correct_artists_names.json");
+            CORRECT_ARTISTS_NAMES = ArtistDictionary.load(correctArtistsNamesFile,
+                    RESOURCES_PATH.resolve("correct_artists_names.dict"));
+            new ArtistJournal(correctArtistsNamesFile).compactInBackgroundIfNeeded();
 
-            ARTIST_SEPARATORS = JsonManager.loadDataFromResourcesJson("artist_separators.json", new TypeReference<>() {
-            });
+            FILENAME_RULES = new FilenameRules(CHARACTERS_TO_REPLACE, BLACKLIST_MATCHER, ARTIST_SEPARATORS_MATCHER, CORRECT_ARTISTS_NAMES);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             Main.exitProgram();
         }
     }
+
+    /**
+     * Read threads and queue size of every pipeline stage from environment variables
+     *
+     * @return settings of every stage, by default {@link #PROCESSING_THREADS} threads and twice as many queued files
+     */
+    private static Map<PipelineStage, FilePipeline.StageSettings> getPipelineStages() {
+        Map<PipelineStage, FilePipeline.StageSettings> stages = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            String prefix = "MP3_EDITOR_" + stage.name() + "_";
+            int threads = getIntSetting(prefix + "THREADS", PROCESSING_THREADS, 1);
+            stages.put(stage, new FilePipeline.StageSettings(threads, getIntSetting(prefix + "QUEUE", threads * 2, 1)));
+        }
+        return Collections.unmodifiableMap(stages);
+    }
+
+    private static Set<String> getKeptFrames() {
+        String value = System.getenv("MP3_EDITOR_KEPT_FRAMES");
+        if (value == null || value.isBlank()) {
+            return Set.of("APIC", "USLT");
+        }
+        Set<String> frames = new HashSet<>();
+        for (String id : value.split(",")) {
+            id = id.trim().toUpperCase(Locale.ROOT);
+            if (!id.matches("[A-Z0-9]{4}")) {
+                log.warn("\"MP3_EDITOR_KEPT_FRAMES\" must contain ids of ID3v2.4 frames, \"{}\" is ignored", id);
+            } else if (!id.equals("TIT2") && !id.equals("TPE1")) {
+                frames.add(id);
+            }
+        }
+        return Collections.unmodifiableSet(frames);
+    }
+
+    private static String getWorkerId() {
+        String workerId = System.getenv("MP3_EDITOR_WORKER_ID");
+        if (workerId != null && workerId.matches("[\\w.-]+")) {
+            return workerId;
+        }
+        if (workerId != null) {
+            log.warn("\"MP3_EDITOR_WORKER_ID\" may contain only letters, digits, '.', '_' and '-', got \"{}\"", workerId);
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host.replaceAll("[^\\w.-]", "_") + "-" + ProcessHandle.current().pid();
+    }
+
+    private static <E extends Enum<E>> E getEnumSetting(String name, Class<E> type, E defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("\"{}\" must be one of {}, got \"{}\". Using {}", name, EnumSet.allOf(type), value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read optional path setting from environment variables
+     *
+     * @param name         name of environment variable
+     * @param defaultValue value to use if variable is not set
+     * @return value of environment variable or {@code defaultValue} if it is not set
+     */
+    private static Path getPathSetting(String name, Path defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : Path.of(value.trim());
+    }
+
+    /**
+     * Read optional integer setting from environment variables
+     *
+     * @param name         name of environment variable
+     * @param defaultValue value to use if variable is not set
+     * @param minValue     minimal allowed value
+     * @return value of environment variable or {@code defaultValue} if it is not set or is not a valid integer
+     */
+    private static int getIntSetting(String name, int defaultValue, int minValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= minValue) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        log.warn("\"{}\" must be an integer not less than {}, got \"{}\". Using {}", name, minValue, value, defaultValue);
+        return defaultValue;
+    }
 }
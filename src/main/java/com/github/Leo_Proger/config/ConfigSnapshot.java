@@ -0,0 +1,252 @@
+package com.github.Leo_Proger.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.Leo_Proger.utils.ArtistJournal;
+import com.github.Leo_Proger.utils.JsonManager;
+import com.github.Leo_Proger.utils.MultiPatternMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Formatting rules loaded from json files together with matchers built from them.
+ * <p>
+ * Parsing json files and building matchers is done once: the result is saved to a binary snapshot file
+ * in resources dir and is read from it on the next launches. The snapshot is rebuilt when size or modification
+ * time of any json file or size of the artists journal changes, or when formatting constants change
+ *
+ * @param charactersToReplace     characters to replace in filename
+ * @param blacklist               ads to remove from filename
+ * @param artistsExclusions       artists who don't need to remove underscore in metadata
+ * @param artistSeparators        separators between artists
+ * @param blacklistMatcher        matcher of {@code blacklist}
+ * @param artistSeparatorsMatcher matcher of {@code artistSeparators}
+ * @param configVersion           hash of all json files and formatting constants
+ * @see Config#CONFIG_VERSION
+ */
+record ConfigSnapshot(Map<String, String> charactersToReplace,
+                      Set<String> blacklist,
+                      Set<String> artistsExclusions,
+                      List<String> artistSeparators,
+                      MultiPatternMatcher blacklistMatcher,
+                      MultiPatternMatcher artistSeparatorsMatcher,
+                      String configVersion) {
+    static final String SNAPSHOT_FILENAME = "config.snapshot";
+
+    /**
+     * Json files the snapshot is built from. All of them change {@link #configVersion()}
+     */
+    static final List<String> JSON_FILES = List.of("characters_to_replace.json", "blacklist.json",
+            "correct_artists_names.json", "artists_exclusions.json", "artist_separators.json");
+
+    /**
+     * Not yet merged names of artists. Optional, changes the snapshot but not {@link #configVersion()}: names are
+     * appended after every run, and they are names that already formatted files contain
+     */
+    static final String ARTISTS_JOURNAL_FILE = "correct_artists_names.json" + ArtistJournal.SUFFIX;
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+    private static final int MAGIC = 0x4D504353;
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Load snapshot from {@code resourcesDir}, rebuilding it from json files if it is missing or outdated
+     *
+     * @param resourcesDir dir with json files
+     * @param constants    formatting constants that are part of config version
+     * @return loaded snapshot
+     * @throws IOException if json files cannot be read
+     */
+    static ConfigSnapshot load(Path resourcesDir, List<String> constants) throws IOException {
+        Path snapshotFile = resourcesDir.resolve(SNAPSHOT_FILENAME);
+        byte[] sources = describeSources(resourcesDir, constants);
+
+        if (Files.exists(snapshotFile)) {
+            try {
+                ConfigSnapshot snapshot = read(ByteBuffer.wrap(Files.readAllBytes(snapshotFile)), sources);
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            } catch (IOException e) {
+                log.warn("Config snapshot \"{}\" is damaged and will be rebuilt", snapshotFile, e);
+            }
+        }
+
+        ConfigSnapshot snapshot = build(resourcesDir, constants);
+        try {
+            snapshot.write(snapshotFile, sources);
+        } catch (IOException e) {
+            log.warn("Failed to write config snapshot \"{}\", json files will be parsed on next launch", snapshotFile, e);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Parse json files and build matchers
+     */
+    static ConfigSnapshot build(Path resourcesDir, List<String> constants) throws IOException {
+        Map<String, String> charactersToReplace = JsonManager.loadDataFromJson(resourcesDir.resolve("characters_to_replace.json"), new TypeReference<>() {
+        });
+        Set<String> blacklist = JsonManager.loadDataFromJson(resourcesDir.resolve("blacklist.json"), new TypeReference<>() {
+        });
+        Set<String> artistsExclusions = JsonManager.loadDataFromJson(resourcesDir.resolve("artists_exclusions.json"), new TypeReference<>() {
+        });
+        List<String> artistSeparators = JsonManager.loadDataFromJson(resourcesDir.resolve("artist_separators.json"), new TypeReference<>() {
+        });
+
+        return new ConfigSnapshot(charactersToReplace, blacklist, artistsExclusions, artistSeparators,
+                new MultiPatternMatcher(blacklist), new MultiPatternMatcher(artistSeparators),
+                computeConfigVersion(resourcesDir, constants));
+    }
+
+    /**
+     * Compute hash of json files and formatting constants
+     *
+     * @return hex string of SHA-256 hash
+     * @throws IOException if json file cannot be read
+     */
+    private static String computeConfigVersion(Path resourcesDir, List<String> constants) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String jsonFile : JSON_FILES) {
+                digest.update(Files.readAllBytes(resourcesDir.resolve(jsonFile)));
+            }
+            for (String constant : constants) {
+                digest.update(constant.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Describe what the snapshot is built from: names, sizes and modification times of json files and constants
+     */
+    private static byte[] describeSources(Path resourcesDir, List<String> constants) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (String jsonFile : JSON_FILES) {
+            BasicFileAttributes attributes = Files.readAttributes(resourcesDir.resolve(jsonFile), BasicFileAttributes.class);
+            writeString(output, jsonFile);
+            output.writeLong(attributes.size());
+            output.writeLong(attributes.lastModifiedTime().toMillis());
+        }
+        Path journalFile = resourcesDir.resolve(ARTISTS_JOURNAL_FILE);
+        output.writeLong(Files.exists(journalFile) ? Files.size(journalFile) : -1);
+        for (String constant : constants) {
+            writeString(output, constant);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(Path snapshotFile, byte[] sources) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(sources.length);
+        output.write(sources);
+
+        writeString(output, configVersion);
+        output.writeInt(charactersToReplace.size());
+        for (Map.Entry<String, String> entry : charactersToReplace.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+        writeStrings(output, blacklist);
+        writeStrings(output, artistsExclusions);
+        writeStrings(output, artistSeparators);
+        blacklistMatcher.writeTo(output);
+        artistSeparatorsMatcher.writeTo(output);
+
+        // Unique name, so processes that rebuild the snapshot at the same time don't write the same temp file
+        Path tempFile = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), "." + snapshotFile.getFileName() + ".", ".tmp");
+        try {
+            Files.write(tempFile, bytes.toByteArray());
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Read snapshot
+     *
+     * @param input   content of snapshot file
+     * @param sources expected description of sources
+     * @return read snapshot or {@code null} if it was built from other sources or by other version of the program
+     * @throws IOException if snapshot is damaged
+     */
+    private static ConfigSnapshot read(ByteBuffer input, byte[] sources) throws IOException {
+        try {
+            if (input.getInt() != MAGIC || input.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            byte[] snapshotSources = new byte[input.getInt()];
+            input.get(snapshotSources);
+            if (!Arrays.equals(snapshotSources, sources)) {
+                return null;
+            }
+
+            String configVersion = readString(input);
+            Map<String, String> charactersToReplace = new HashMap<>();
+            for (int count = input.getInt(); count > 0; count--) {
+                charactersToReplace.put(readString(input), readString(input));
+            }
+            Set<String> blacklist = new LinkedHashSet<>(readStrings(input));
+            Set<String> artistsExclusions = new LinkedHashSet<>(readStrings(input));
+            List<String> artistSeparators = readStrings(input);
+            MultiPatternMatcher blacklistMatcher = MultiPatternMatcher.readFrom(input);
+            MultiPatternMatcher artistSeparatorsMatcher = MultiPatternMatcher.readFrom(input);
+
+            return new ConfigSnapshot(charactersToReplace, blacklist, artistsExclusions, artistSeparators,
+                    blacklistMatcher, artistSeparatorsMatcher, configVersion);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Config snapshot is damaged", e);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream output, Collection<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    private static List<String> readStrings(ByteBuffer input) {
+        int count = input.getInt();
+        List<String> strings = new ArrayList<>(Math.min(count, input.remaining()));
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(input));
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        output.writeInt(string.length());
+        output.writeChars(string);
+    }
+
+    private static String readString(ByteBuffer input) {
+        char[] chars = new char[input.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = input.getChar();
+        }
+        return new String(chars);
+    }
+}
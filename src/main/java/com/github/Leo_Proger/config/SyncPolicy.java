@@ -0,0 +1,19 @@
+package com.github.Leo_Proger.config;
+
+/**
+ * What is flushed to disk when a file is copied to another disk, before the source file is deleted
+ */
+public enum SyncPolicy {
+    /**
+     * Nothing, the operating system writes data later. Fastest, but a power loss can lose moved files
+     */
+    NONE,
+    /**
+     * Data of the copied file
+     */
+    FILE,
+    /**
+     * Data of the copied file and the entry of the file in target dir. Dir is not flushed on Windows
+     */
+    FILE_AND_DIR
+}
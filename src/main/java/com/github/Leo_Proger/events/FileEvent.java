@@ -0,0 +1,87 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Base of Java Flight Recorder events of file processing steps.
+ * <p>
+ * When recording is off, creating and finishing an event costs almost nothing: path, size and outcome are
+ * filled only if the event is going to be recorded.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * RenameEvent event = new RenameEvent();
+ * event.begin();
+ * try {
+ *     Files.move(file, newFile);
+ * } catch (IOException e) {
+ *     event.finish(file, e);
+ *     throw e;
+ * }
+ * event.finish(newFile, null);
+ * }</pre>
+ */
+@Category("MP3 Editor")
+@StackTrace(false)
+public abstract class FileEvent extends Event {
+    public static final String OUTCOME_SUCCESS = "Success";
+
+    @Label("Path")
+    protected String path;
+
+    @Label("File Size")
+    @DataAmount
+    protected long size;
+
+    @Label("Outcome")
+    @Description("\"Success\" or name of exception class")
+    protected String outcome;
+
+    /**
+     * End event and record it with size of {@code file}
+     *
+     * @param file  processed file
+     * @param error error that stopped the step, {@code null} if the step is successful
+     */
+    public void finish(Path file, Throwable error) {
+        end();
+        if (shouldCommit()) {
+            path = file.toString();
+            size = sizeOf(file);
+            outcome = error == null ? OUTCOME_SUCCESS : error.getClass().getSimpleName();
+            commit();
+        }
+    }
+
+    /**
+     * End event and record it without file size, for steps that work only with the filename
+     *
+     * @param filename processed filename
+     * @param error    error that stopped the step, {@code null} if the step is successful
+     */
+    public void finish(String filename, Throwable error) {
+        end();
+        if (shouldCommit()) {
+            path = filename;
+            outcome = error == null ? OUTCOME_SUCCESS : error.getClass().getSimpleName();
+            commit();
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
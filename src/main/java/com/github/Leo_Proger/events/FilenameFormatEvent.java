@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.FilenameFormat")
+@Label("Filename Format")
+@Description("Formatting of filename with formatting rules. Path is the original filename")
+public class FilenameFormatEvent extends FileEvent {
+}
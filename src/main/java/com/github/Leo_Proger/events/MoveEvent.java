@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.Move")
+@Label("Move")
+@Description("Moving of file to target dir. Path is the new path if moving is successful")
+public class MoveEvent extends FileEvent {
+}
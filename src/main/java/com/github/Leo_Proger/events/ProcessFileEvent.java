@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.ProcessFile")
+@Label("Process File")
+@Description("Whole processing of MP3 file: formatting, renaming and moving")
+public class ProcessFileEvent extends FileEvent {
+}
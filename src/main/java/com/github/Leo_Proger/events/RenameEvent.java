@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.Rename")
+@Label("Rename")
+@Description("Renaming of file to formatted filename. Path is the new path if renaming is successful")
+public class RenameEvent extends FileEvent {
+}
@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.TagRead")
+@Label("Tag Read")
+@Description("Reading of ID3v2 tag")
+public class TagReadEvent extends FileEvent {
+}
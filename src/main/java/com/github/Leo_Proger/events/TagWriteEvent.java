@@ -0,0 +1,11 @@
+package com.github.Leo_Proger.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.Leo_Proger.TagWrite")
+@Label("Tag Write")
+@Description("Writing of new ID3v2 tag, in place or with rewriting of the file")
+public class TagWriteEvent extends FileEvent {
+}
@@ -4,20 +4,152 @@ import com.github.Leo_Proger.config.Config;
 import com.github.Leo_Proger.mp3_file_handlers.ArtistManager;
 import com.github.Leo_Proger.mp3_file_handlers.FileManager;
 import com.github.Leo_Proger.mp3_file_handlers.FilenameFormatter;
+import com.github.Leo_Proger.mp3_file_handlers.FormatService;
+import com.github.Leo_Proger.mp3_file_handlers.ProcessingOptions;
+import com.github.Leo_Proger.mp3_file_handlers.SourceWatcher;
+import com.github.Leo_Proger.mp3_file_handlers.WorkerLeases;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
+    /**
+     * The only reader of System.in, so commands and answers about new artists don't take lines from each other
+     */
+    private static final Scanner console = new Scanner(System.in);
+
+    /**
+     * Without arguments, process all files in SOURCE_PATH once.
+     * <p>
+     * With "watch" argument, keep running and process new files as soon as they appear in SOURCE_PATH.
+     * <p>
+     * With "plan [file]" argument, write what would be done with files in SOURCE_PATH to a plan without changing them.
+     * With "apply [file]" argument, execute the plan. Plan file is PLAN_PATH by default.
+     * <p>
+     * With "worker" argument, process SOURCE_PATH together with other processes started with "worker" argument.
+     * <p>
+     * With "serve" argument, format filenames and files requested by other programs over HTTP on localhost
+     *
+     * @param args command line arguments
+     */
     public static void main(String[] args) {
         FileManager fileManager = new FileManager();
-        ArtistManager artistManager = new ArtistManager();
+        ArtistManager artistManager = new ArtistManager(console);
 
-        fileManager.run(true);
+        String mode = args.length > 0 ? args[0] : "";
+        Path planFile = args.length > 1 ? Path.of(args[1]) : Config.PLAN_PATH;
+        switch (mode) {
+            case "watch" -> watch(fileManager);
+            case "plan" -> {
+                // New artists are asked about when the plan is applied
+                fileManager.plan(planFile);
+                exitProgram();
+            }
+            case "apply" -> fileManager.apply(planFile);
+            case "worker" -> {
+                // Workers run without console, so they don't ask about new artists
+                runWorker();
+                if (!FilenameFormatter.getNewArtists().isEmpty()) {
+                    log.info("New artists are not added by workers: {}", FilenameFormatter.getNewArtists());
+                }
+                exitProgram();
+            }
+            case "serve" -> serve(fileManager);
+            default -> fileManager.run(true);
+        }
         artistManager.run(FilenameFormatter.getNewArtists(), Config.RESOURCES_PATH.resolve("correct_artists_names.json"));
 
         exitProgram();
     }
 
+    /**
+     * Process files of SOURCE_PATH that are not claimed by other workers
+     */
+    private static void runWorker() {
+        FileManager fileManager = new FileManager(Config.SOURCE_PATH, Config.TARGET_PATH, Config.PROCESSING_THREADS,
+                Config.RECURSIVE_SCAN, ProcessingOptions.fromConfig().forWorkers());
+        try (WorkerLeases leases = new WorkerLeases(Config.SOURCE_PATH, Config.WORKER_ID, Config.LEASE_DURATION)) {
+            log.info("Worker \"{}\" started", leases.getWorkerId());
+            fileManager.runWorker(leases);
+        } catch (IOException e) {
+            log.error("Unable to create leases in \"{}\"", Config.SOURCE_PATH, e);
+        }
+    }
+
+    /**
+     * Serve requests of other programs until user enters "q"
+     *
+     * @param fileManager manager that formats requested files
+     * @see FormatService
+     */
+    private static void serve(FileManager fileManager) {
+        FormatService service;
+        try {
+            service = new FormatService(fileManager, Config.SERVICE_PORT, Config.LOG_PATH.resolve("service_results.jsonl"));
+        } catch (IOException e) {
+            log.error("Unable to start service on port {}", Config.SERVICE_PORT, e);
+            return;
+        }
+        service.start();
+        log.info("Enter \"q\" to stop");
+        while (console.hasNextLine()) {
+            if (console.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
+            }
+        }
+        service.stop();
+    }
+
+    /**
+     * Process new files in SOURCE_PATH until user enters "q".
+     * <p>
+     * Report of all processed files is written when watching stops or when user enters "report"
+     *
+     * @param fileManager manager that processes files
+     */
+    private static void watch(FileManager fileManager) {
+        SourceWatcher watcher = new SourceWatcher(Config.SOURCE_PATH, fileManager, true);
+
+        Thread commandReader = new Thread(() -> readCommands(watcher, fileManager), "command-reader");
+        commandReader.setDaemon(true);
+        commandReader.start();
+
+        log.info("Watching \"{}\". Enter \"report\" to write report, \"q\" to stop", Config.SOURCE_PATH);
+        try {
+            watcher.run();
+        } catch (IOException e) {
+            log.error("Unable to watch dir \"{}\"", Config.SOURCE_PATH, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fileManager.writeReport();
+    }
+
+    /**
+     * Read commands from console while watching SOURCE_PATH
+     *
+     * @param watcher     watcher to control
+     * @param fileManager manager that processes files
+     */
+    private static void readCommands(SourceWatcher watcher, FileManager fileManager) {
+        while (console.hasNextLine()) {
+            String command = console.nextLine().trim();
+            if (command.equalsIgnoreCase("q")) {
+                watcher.stop();
+                return;
+            }
+            if (command.equalsIgnoreCase("report")) {
+                fileManager.writeReport();
+            }
+        }
+    }
+
     /**
      * Count down 5 second and exit
      */
@@ -1,6 +1,6 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
-import com.github.Leo_Proger.utils.JsonManager;
+import com.github.Leo_Proger.utils.ArtistJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,11 +14,28 @@ import java.util.stream.Collectors;
  * Manages a collection of artists, providing functionality to interactively add artists to a JSON file.
  * <p>
  * This class handles the process of displaying new artists, getting user confirmation,
- * and updating a JSON file with artist information while avoiding duplicates.
+ * and adding them to the journal of a JSON file with artist information.
  */
 public class ArtistManager {
     private static final Logger log = LoggerFactory.getLogger(ArtistManager.class);
 
+    /**
+     * Console input shared with other readers of System.in, {@code null} to read System.in when asking
+     */
+    private final Scanner console;
+
+    public ArtistManager() {
+        this(null);
+    }
+
+    /**
+     * @param console scanner of System.in that is also used by other parts of the program.
+     *                Another scanner could lose lines that the shared one has already buffered
+     */
+    public ArtistManager(Scanner console) {
+        this.console = console;
+    }
+
     /**
      * Orchestrates the main workflow for adding new artists to a JSON file
      *
@@ -64,9 +81,9 @@ public class ArtistManager {
                 
                 Example: "y 1 3 10" or "y" or "n":\s""", jsonFilePath);
 
-        try (Scanner scanner = new Scanner(System.in)) {
-            return Arrays.asList(scanner.nextLine().split("\\s+"));
-        }
+        // System.in is not closed, it can be read again
+        Scanner scanner = console != null ? console : new Scanner(System.in);
+        return Arrays.asList(scanner.nextLine().split("\\s+"));
     }
 
     /**
@@ -123,36 +140,20 @@ public class ArtistManager {
     }
 
     /**
-     * Updates the JSON file with new artists, preventing duplicates
+     * Adds new artists to the journal of the JSON file.
      * <p>
-     * Workflow:
-     * <p>
-     * 1. Load existing artists from the JSON file
-     * <p>
-     * 2. Convert new artists to a map with lowercase keys
-     * <p>
-     * 3. Merge new artists with existing artists
-     * <p>
-     * 4. Write the updated map back to the JSON file
+     * The JSON file itself is not read or rewritten: artists are appended to {@link ArtistJournal},
+     * which is merged into the JSON file later. Artists already in the JSON file keep their names
      *
      * @param artists      List of new artists to add
      * @param jsonFilePath Path to the JSON file to be updated
      */
-    private void updateArtistsInJsonFile(List<String> artists, Path jsonFilePath) {
-        Map<String, String> existingArtists = new HashMap<>();
-        try {
-            existingArtists = JsonManager.loadDataFromJson(jsonFilePath);
-        } catch (IOException e) {
-            log.error("Failed to read data from \"{}\"", jsonFilePath, e);
-        }
-
-        Map<String, String> newArtists = convertToLowercaseMap(artists);
-        newArtists.forEach(existingArtists::putIfAbsent);
-
+    void updateArtistsInJsonFile(List<String> artists, Path jsonFilePath) {
+        ArtistJournal journal = new ArtistJournal(jsonFilePath);
         try {
-            JsonManager.writeDataToJson(existingArtists, jsonFilePath);
+            journal.append(convertToLowercaseMap(artists));
         } catch (IOException e) {
-            log.error("Failed to write data to \"{}\"", jsonFilePath, e);
+            log.error("Failed to write data to \"{}\"", journal.getJournalFile(), e);
         }
     }
 
@@ -175,7 +176,8 @@ public class ArtistManager {
                 .collect(Collectors.toMap(
                         String::toLowerCase,
                         Function.identity(),
-                        (existing, replacement) -> existing
+                        (existing, replacement) -> existing,
+                        LinkedHashMap::new
                 ));
     }
 }
@@ -0,0 +1,97 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads average bitrate of MP3 file from the first audio frame.
+ * <p>
+ * For files with variable bitrate, the average is computed from the number of frames in Xing or Info header.
+ * Otherwise, bitrate of the first frame is returned
+ */
+public class BitrateReader {
+    private static final int ID3V1_LENGTH = 128;
+
+    private static final int[][] BITRATES = {
+            // MPEG-1 Layer I, II, III
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            // MPEG-2 and MPEG-2.5 Layer I, II and III
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    private BitrateReader() {
+    }
+
+    /**
+     * Read average bitrate of {@code mp3File}
+     *
+     * @param mp3File path to MP3 file
+     * @return bitrate in kbit/s, {@code 0} if there is no audio frame
+     * @throws IOException if the file cannot be read
+     */
+    public static int read(Path mp3File) throws IOException {
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            long audioStart = Id3TagWriter.readTagSize(channel);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Id3TagReader.FRAME_SEARCH_LENGTH, channel.size() - audioStart));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, audioStart + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            int frameStart = Id3TagReader.indexOfFrameHeader(buffer);
+            if (frameStart < 0) {
+                return 0;
+            }
+            long audioLength = channel.size() - audioStart - frameStart - (hasId3v1Tag(channel) ? ID3V1_LENGTH : 0);
+            return readBitrate(buffer.position(frameStart).slice(), audioLength);
+        }
+    }
+
+    /**
+     * @param frame       buffer that starts with frame header
+     * @param audioLength number of bytes of audio data from the frame header
+     */
+    static int readBitrate(ByteBuffer frame, long audioLength) {
+        int versionBits = (frame.get(1) >> 3) & 0x03;
+        int layer = 4 - ((frame.get(1) >> 1) & 0x03);
+        boolean mpeg1 = versionBits == 3;
+        boolean mono = ((frame.get(3) >> 6) & 0x03) == 3;
+
+        int bitrateIndex = (frame.get(2) >> 4) & 0x0F;
+        int[] bitrates = mpeg1 ? BITRATES[layer - 1] : BITRATES[layer == 1 ? 3 : 4];
+        int sampleRate = MPEG1_SAMPLE_RATES[(frame.get(2) >> 2) & 0x03] >> (mpeg1 ? 0 : versionBits == 2 ? 1 : 2);
+        int samplesPerFrame = layer == 1 ? 384 : layer == 2 || mpeg1 ? 1152 : 576;
+
+        if (layer == 3) {
+            int xingOffset = mpeg1 ? (mono ? 21 : 36) : (mono ? 13 : 21);
+            if (frame.limit() >= xingOffset + 12) {
+                String marker = StandardCharsets.ISO_8859_1.decode(frame.slice(xingOffset, 4)).toString();
+                boolean hasFrameCount = (frame.getInt(xingOffset + 4) & 0x01) != 0;
+                long frames = Integer.toUnsignedLong(frame.getInt(xingOffset + 8));
+                if ((marker.equals("Xing") || marker.equals("Info")) && hasFrameCount && frames > 0) {
+                    double seconds = (double) frames * samplesPerFrame / sampleRate;
+                    return (int) Math.round(audioLength * 8 / seconds / 1000);
+                }
+            }
+        }
+        return bitrates[bitrateIndex];
+    }
+
+    private static boolean hasId3v1Tag(FileChannel channel) throws IOException {
+        if (channel.size() < ID3V1_LENGTH) {
+            return false;
+        }
+        ByteBuffer marker = ByteBuffer.allocate(3);
+        channel.read(marker, channel.size() - ID3V1_LENGTH);
+        return new String(marker.array(), StandardCharsets.ISO_8859_1).equals("TAG");
+    }
+}
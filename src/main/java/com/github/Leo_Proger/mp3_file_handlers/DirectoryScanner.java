@@ -0,0 +1,248 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds MP3 files in a dir and, if enabled, in all its subdirs.
+ * <p>
+ * Subdirs are scanned in parallel on the common fork-join pool. Found files are passed to the returned stream
+ * as soon as they are found, so processing starts before the scan is finished.
+ * <p>
+ * Attributes of each entry are read once. Entries whose names don't end with ".mp3" are not read at all
+ * unless they may be subdirs to scan
+ *
+ * @see com.github.Leo_Proger.config.Config#RECURSIVE_SCAN
+ */
+public class DirectoryScanner {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    private static final String MP3_EXTENSION = ".mp3";
+
+    /**
+     * Marks the end of the scan in the queue of found files
+     */
+    private static final Path END_OF_SCAN = Path.of("");
+
+    private final boolean recursive;
+
+    /**
+     * Dir that is not scanned, e.g. target dir inside source dir. May be {@code null}
+     */
+    private final Path excludedDir;
+
+    /**
+     * @param recursive   {@code true} - subdirs are scanned too,
+     *                    {@code false} - only files directly in the dir are found
+     * @param excludedDir dir to skip while scanning subdirs, {@code null} if there is no such dir
+     */
+    public DirectoryScanner(boolean recursive, Path excludedDir) {
+        this.recursive = recursive;
+        this.excludedDir = excludedDir == null ? null : excludedDir.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Check that file has MP3 extension
+     *
+     * @param path path to file
+     * @return {@code true} if filename ends with ".mp3" in any case
+     */
+    public static boolean isMp3File(Path path) {
+        String name = path.toString();
+        return name.regionMatches(true, name.length() - MP3_EXTENSION.length(), MP3_EXTENSION, 0, MP3_EXTENSION.length());
+    }
+
+    /**
+     * Start scanning {@code dir} in background.
+     * <p>
+     * Order of files from different subdirs is not defined. Closing the stream stops the scan
+     *
+     * @param dir dir to scan
+     * @return stream of found MP3 files
+     * @throws IOException if {@code dir} cannot be read
+     */
+    public Stream<Path> scan(Path dir) throws IOException {
+        return scan(dir, new RunMetrics());
+    }
+
+    /**
+     * Start scanning {@code dir} in background and record time of listing each dir
+     *
+     * @param dir     dir to scan
+     * @param metrics metrics to record time of listing dirs to
+     * @return stream of found MP3 files
+     * @throws IOException if {@code dir} cannot be read
+     * @see #scan(Path)
+     */
+    public Stream<Path> scan(Path dir, RunMetrics metrics) throws IOException {
+        // Root dir is opened here, so an unreadable source dir is reported to the caller
+        DirectoryStream<Path> rootStream = Files.newDirectoryStream(dir);
+
+        BlockingQueue<Path> foundFiles = new LinkedBlockingQueue<>();
+        ScanTask rootTask = new ScanTask(rootStream, dir, foundFiles, metrics);
+        ForkJoinPool.commonPool().execute(() -> {
+            try {
+                rootTask.invoke();
+            } finally {
+                foundFiles.add(END_OF_SCAN);
+            }
+        });
+
+        Spliterator<Path> spliterator = Spliterators.spliteratorUnknownSize(new QueueIterator(foundFiles),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(rootTask::cancelScan);
+    }
+
+    /**
+     * Lists one dir, forks tasks for its subdirs and waits for them.
+     * Tasks are never serialized, they are only serializable as subclasses of {@link RecursiveAction}
+     */
+    private class ScanTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient DirectoryStream<Path> openedStream;
+        private final transient Path dir;
+        private final transient BlockingQueue<Path> foundFiles;
+        private final transient RunMetrics metrics;
+        private final ScanTask root;
+
+        private volatile boolean cancelled;
+
+        ScanTask(DirectoryStream<Path> openedStream, Path dir, BlockingQueue<Path> foundFiles, RunMetrics metrics) {
+            this.openedStream = openedStream;
+            this.dir = dir;
+            this.foundFiles = foundFiles;
+            this.metrics = metrics;
+            this.root = this;
+        }
+
+        private ScanTask(Path dir, ScanTask parent) {
+            this.openedStream = null;
+            this.dir = dir;
+            this.foundFiles = parent.foundFiles;
+            this.metrics = parent.metrics;
+            this.root = parent.root;
+        }
+
+        void cancelScan() {
+            cancelled = true;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanTask> subdirTasks = new ArrayList<>();
+            long startTime = System.nanoTime();
+
+            try (DirectoryStream<Path> entries = openedStream != null ? openedStream : Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (root.cancelled) {
+                        return;
+                    }
+                    boolean mp3Name = isMp3File(entry);
+                    if (!mp3Name && !recursive) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes = readAttributes(entry);
+                    if (attributes == null) {
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (recursive && !isExcluded(entry)) {
+                            ScanTask task = new ScanTask(entry, this);
+                            task.fork();
+                            subdirTasks.add(task);
+                        }
+                    } else if (mp3Name && isRegularFile(entry, attributes)) {
+                        foundFiles.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Unable to read dir \"{}\"", dir, e);
+            }
+            metrics.record(RunMetrics.Stage.SCAN, startTime, 0);
+
+            for (ScanTask task : subdirTasks) {
+                task.join();
+            }
+        }
+
+        /**
+         * Read attributes without following symbolic links, so links to parent dirs don't cause endless scanning
+         *
+         * @return attributes or {@code null} if entry was removed
+         */
+        private BasicFileAttributes readAttributes(Path entry) {
+            try {
+                return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private boolean isRegularFile(Path entry, BasicFileAttributes attributes) {
+            // Symbolic link to a file is processed as the file itself
+            return attributes.isRegularFile() || attributes.isSymbolicLink() && Files.isRegularFile(entry);
+        }
+
+        private boolean isExcluded(Path subdir) {
+            return excludedDir != null && subdir.toAbsolutePath().normalize().equals(excludedDir);
+        }
+    }
+
+    /**
+     * Iterates over found files, waiting for the next file while scanning continues
+     */
+    private static class QueueIterator implements Iterator<Path> {
+        private final BlockingQueue<Path> queue;
+        private Path next;
+
+        QueueIterator(BlockingQueue<Path> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    next = END_OF_SCAN;
+                }
+            }
+            return next != END_OF_SCAN;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Path result = next;
+            next = null;
+            return result;
+        }
+    }
+}
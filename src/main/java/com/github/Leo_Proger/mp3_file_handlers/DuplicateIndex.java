@@ -0,0 +1,457 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Index of audio data of MP3 files in target dir, used to find the same track under another name.
+ * <p>
+ * Tags are not a part of audio data, so files that differ only in tags are duplicates. Files are compared in steps,
+ * and every step is done only for files that are the same after the previous one:
+ * <p>
+ * 1. Size of audio data, read from the header of the tag
+ * <p>
+ * 2. CRC32C of {@link #PARTIAL_LENGTH} bytes at the beginning and at the end of audio data
+ * <p>
+ * 3. SHA-256 of whole audio data
+ * <p>
+ * So a file with unique size of audio costs one read of the tag header. Hashes of files in the index are computed
+ * when they are needed for the first time and are saved.
+ * <p>
+ * The index is a text file in target dir with one line per file. Changes are appended to it, the last line of
+ * a file wins. Lines replaced by later lines are removed when the index is loaded.
+ * If the file doesn't exist, sizes of all MP3 files in target dir are indexed.
+ * <p>
+ * Files are read and hashed without holding the lock of the index, so threads that check different files
+ * don't wait for each other.
+ * <p>
+ * A file added by {@link #findOrAdd(Path, String)} is pending until it is put to target dir and
+ * {@link #update(Path)} is called: other files of the run are compared with its source file, and it is not written
+ * to the index file
+ */
+public class DuplicateIndex {
+    private static final Logger log = LoggerFactory.getLogger(DuplicateIndex.class);
+
+    public static final String INDEX_FILENAME = ".mp3_editor_index";
+
+    /**
+     * Length of audio data hashed at the beginning and at the end of the file for quick comparison
+     */
+    static final int PARTIAL_LENGTH = 16 * 1024;
+
+    private static final int ID3V1_LENGTH = 128;
+    private static final String UNKNOWN = "-";
+
+    private final Path targetDir;
+    private final Path indexFile;
+
+    /**
+     * Key is size of audio data
+     */
+    private final Map<Long, List<Entry>> entriesBySize = new HashMap<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    private BufferedWriter writer;
+
+    private DuplicateIndex(Path targetDir) {
+        this.targetDir = targetDir;
+        this.indexFile = targetDir.resolve(INDEX_FILENAME);
+    }
+
+    /**
+     * Load index of {@code targetDir}, or create it if there is no index yet
+     *
+     * @param targetDir dir with formatted MP3 files
+     * @return loaded index
+     * @throws IOException if the index or target dir cannot be read
+     */
+    public static DuplicateIndex load(Path targetDir) throws IOException {
+        DuplicateIndex index = new DuplicateIndex(targetDir);
+        if (Files.exists(index.indexFile)) {
+            index.read();
+        } else {
+            index.build();
+        }
+        return index;
+    }
+
+    /**
+     * Find a file in target dir, or a file that is being put there, with the same audio data as {@code mp3File} and,
+     * if there is none, add {@code mp3File} to the index under {@code targetFilename} as a pending file.
+     * The name must be reserved in {@link TargetNameIndex}
+     *
+     * @param mp3File        MP3 file that will be moved to target dir
+     * @param targetFilename name of the file in target dir
+     * @return name of the file with the same audio data, empty if {@code mp3File} was added to the index
+     * @throws IOException if the files cannot be read
+     */
+    public Optional<String> findOrAdd(Path mp3File, String targetFilename) throws IOException {
+        Entry incoming = readAudioRange(mp3File, targetFilename, mp3File);
+        Set<Entry> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (true) {
+            List<Entry> candidates = new ArrayList<>();
+            synchronized (this) {
+                for (Entry candidate : entriesBySize.getOrDefault(incoming.audioSize, List.of())) {
+                    if (!checked.contains(candidate) && !candidate.filename.equals(incoming.filename)) {
+                        candidates.add(candidate);
+                    }
+                }
+                // Files added by other threads while candidates were compared are compared in the next pass
+                if (candidates.isEmpty()) {
+                    // Written to the index file when the file is in target dir
+                    put(incoming);
+                    return Optional.empty();
+                }
+            }
+            for (Entry candidate : candidates) {
+                checked.add(candidate);
+                if (isDuplicate(candidate, incoming, mp3File, checked)) {
+                    return Optional.of(candidate.filename);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update position of audio data of a file added by {@link #findOrAdd(Path, String)} after it was put
+     * to target dir, possibly with a new tag. The file is not pending anymore. Hashes are kept, because audio data
+     * is the same
+     *
+     * @param targetFile file in target dir
+     * @throws IOException if the file cannot be read
+     */
+    public void update(Path targetFile) throws IOException {
+        Entry updated = readAudioRange(targetFile, targetFile.getFileName().toString(), null);
+        synchronized (this) {
+            Entry previous = entriesByName.get(updated.filename);
+            if (previous != null && previous.audioSize == updated.audioSize) {
+                updated.partialHash = previous.partialHash;
+                updated.fullHash = previous.fullHash;
+            }
+            put(updated);
+            append(updated);
+        }
+    }
+
+    /**
+     * Remove file from the index, e.g. when it could not be moved to target dir after {@link #findOrAdd(Path, String)}
+     *
+     * @param targetFilename name of the file in target dir
+     */
+    public synchronized void remove(String targetFilename) {
+        Entry entry = entriesByName.remove(targetFilename);
+        if (entry != null) {
+            entriesBySize.get(entry.audioSize).remove(entry);
+            if (entry.source != null) {
+                return;
+            }
+            try {
+                appendLine(TabSeparatedLine.join(targetFilename, UNKNOWN));
+            } catch (IOException e) {
+                log.warn("Unable to update duplicate index \"{}\"", indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * Write appended lines to disk
+     */
+    public synchronized void flush() {
+        if (writer != null) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                log.warn("Unable to write duplicate index \"{}\"", indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return number of indexed files
+     */
+    public synchronized int size() {
+        return entriesByName.size();
+    }
+
+    /**
+     * Compare audio data of an indexed file with {@code incoming}. Called without the lock
+     *
+     * @param checked entries that are already compared, an entry read again is added to it
+     */
+    private boolean isDuplicate(Entry candidate, Entry incoming, Path mp3File, Set<Entry> checked) throws IOException {
+        Path candidateFile = targetDir.resolve(candidate.filename);
+        if (candidate.source != null && !Files.exists(candidateFile) && Files.exists(candidate.source)) {
+            // File is not in target dir yet
+            candidateFile = candidate.source;
+        }
+        if (!Files.exists(candidateFile)) {
+            if (candidate.source != null) {
+                // Pending file could not be put to target dir, it is removed by its thread
+                return false;
+            }
+            // File was deleted from target dir
+            synchronized (this) {
+                if (entriesByName.get(candidate.filename) == candidate) {
+                    remove(candidate.filename);
+                }
+            }
+            return false;
+        }
+        long fileSize = Files.size(candidateFile);
+        long audioEnd = candidate.audioStart + candidate.audioSize;
+        if (fileSize != audioEnd && fileSize != audioEnd + ID3V1_LENGTH) {
+            // Tag of the file was changed after it was indexed, e.g. tag of a pending file in source dir
+            Entry changed = readAudioRange(candidateFile, candidate.filename,
+                    candidateFile.equals(candidate.source) ? candidate.source : null);
+            checked.add(changed);
+            synchronized (this) {
+                if (entriesByName.get(candidate.filename) == candidate) {
+                    put(changed);
+                    if (changed.source == null) {
+                        append(changed);
+                    }
+                }
+            }
+            if (changed.audioSize != incoming.audioSize) {
+                return false;
+            }
+            candidate = changed;
+        }
+        return partialHash(candidate, candidateFile) == partialHash(incoming, mp3File)
+                && fullHash(candidate, candidateFile).equals(fullHash(incoming, mp3File));
+    }
+
+    private long partialHash(Entry entry, Path file) throws IOException {
+        Long hash = entry.partialHash;
+        if (hash == null) {
+            CRC32C crc = new CRC32C();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long headLength = Math.min(PARTIAL_LENGTH, entry.audioSize);
+                crc.update(read(channel, entry.audioStart, (int) headLength));
+                long tailStart = Math.max(entry.audioStart + headLength, entry.audioStart + entry.audioSize - PARTIAL_LENGTH);
+                crc.update(read(channel, tailStart, (int) (entry.audioStart + entry.audioSize - tailStart)));
+            }
+            hash = crc.getValue();
+            synchronized (this) {
+                entry.partialHash = hash;
+                saveHashes(entry);
+            }
+        }
+        return hash;
+    }
+
+    private String fullHash(Entry entry, Path file) throws IOException {
+        String hash = entry.fullHash;
+        if (hash == null) {
+            MessageDigest digest = createDigest();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long end = entry.audioStart + entry.audioSize;
+                for (long position = entry.audioStart; position < end; position += 1024 * 1024) {
+                    digest.update(read(channel, position, (int) Math.min(1024 * 1024, end - position)));
+                }
+            }
+            hash = HexFormat.of().formatHex(digest.digest());
+            synchronized (this) {
+                entry.fullHash = hash;
+                saveHashes(entry);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Save computed hashes of an indexed file, so they are not computed again by next runs
+     */
+    private void saveHashes(Entry entry) throws IOException {
+        if (entry.source == null && entriesByName.get(entry.filename) == entry) {
+            append(entry);
+        }
+    }
+
+    /**
+     * @param mp3File MP3 file
+     * @return CRC32C of whole audio data of the file, tags are not included
+     * @throws IOException if the file cannot be read
+     */
+    static long audioChecksum(Path mp3File) throws IOException {
+        Entry entry = readAudioRange(mp3File, mp3File.getFileName().toString(), null);
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            long end = entry.audioStart + entry.audioSize;
+            for (long position = entry.audioStart; position < end; position += 1024 * 1024) {
+                crc.update(read(channel, position, (int) Math.min(1024 * 1024, end - position)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Find where audio data of MP3 file is: between ID3v2 tag at the beginning and ID3v1 tag at the end
+     *
+     * @param source source file of a pending file, {@code null} if the file is in target dir
+     */
+    private static Entry readAudioRange(Path mp3File, String filename, Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            long audioStart = Id3TagWriter.readTagSize(channel);
+            long audioEnd = channel.size();
+            if (audioEnd - audioStart >= ID3V1_LENGTH) {
+                ByteBuffer marker = read(channel, audioEnd - ID3V1_LENGTH, 3);
+                if (StandardCharsets.ISO_8859_1.decode(marker).toString().equals("TAG")) {
+                    audioEnd -= ID3V1_LENGTH;
+                }
+            }
+            return new Entry(filename, audioStart, audioEnd - audioStart, null, null, source);
+        }
+    }
+
+    private void read() throws IOException {
+        long lineCount;
+        try (Stream<String> lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+            lineCount = lines.peek(line -> {
+                String[] parts;
+                try {
+                    parts = TabSeparatedLine.split(line);
+                } catch (IllegalArgumentException e) {
+                    log.debug("Damaged line in duplicate index \"{}\"", line);
+                    return;
+                }
+                if (parts.length == 2 && parts[1].equals(UNKNOWN)) {
+                    Entry removed = entriesByName.remove(parts[0]);
+                    if (removed != null) {
+                        entriesBySize.get(removed.audioSize).remove(removed);
+                    }
+                } else if (parts.length == 5) {
+                    try {
+                        put(new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                                parts[3].equals(UNKNOWN) ? null : Long.parseLong(parts[3]),
+                                parts[4].equals(UNKNOWN) ? null : parts[4], null));
+                    } catch (NumberFormatException e) {
+                        log.debug("Damaged line in duplicate index \"{}\"", line);
+                    }
+                }
+                // Other lines are damaged, e.g. the last line written by a killed program
+            }).filter(line -> !line.isEmpty()).count();
+        }
+        if (lineCount > entriesByName.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the index file with one line per indexed file, without lines replaced by later ones
+     */
+    private void compact() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : entriesByName.values()) {
+            lines.append(toLine(entry)).append(System.lineSeparator());
+        }
+        Path tempFile = Files.createTempFile(targetDir, INDEX_FILENAME + ".", ".tmp");
+        try {
+            Files.writeString(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private void build() throws IOException {
+        long startTime = System.nanoTime();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(targetDir, "*.mp3")) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    Entry entry = readAudioRange(file, file.getFileName().toString(), null);
+                    put(entry);
+                    append(entry);
+                }
+            }
+        }
+        flush();
+        log.info("Duplicate index of {} files is created in {} ms", entriesByName.size(), (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private void put(Entry entry) {
+        Entry previous = entriesByName.put(entry.filename, entry);
+        if (previous != null) {
+            entriesBySize.get(previous.audioSize).remove(previous);
+        }
+        entriesBySize.computeIfAbsent(entry.audioSize, size -> new ArrayList<>()).add(entry);
+    }
+
+    private void append(Entry entry) throws IOException {
+        appendLine(toLine(entry));
+    }
+
+    private static String toLine(Entry entry) {
+        return TabSeparatedLine.join(entry.filename, String.valueOf(entry.audioStart), String.valueOf(entry.audioSize),
+                entry.partialHash == null ? UNKNOWN : String.valueOf(entry.partialHash),
+                entry.fullHash == null ? UNKNOWN : entry.fullHash);
+    }
+
+    private void appendLine(String line) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            // Line of a killed program can be unfinished
+            writer.newLine();
+        }
+        writer.write(line);
+        writer.newLine();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Indexed file
+     *
+     * @see DuplicateIndex
+     */
+    private static final class Entry {
+        private final String filename;
+        private final long audioStart;
+        private final long audioSize;
+        private volatile Long partialHash;
+        private volatile String fullHash;
+
+        /**
+         * Source file of a file that is not in target dir yet, {@code null} for files in target dir
+         */
+        private final Path source;
+
+        Entry(String filename, long audioStart, long audioSize, Long partialHash, String fullHash, Path source) {
+            this.filename = filename;
+            this.audioStart = audioStart;
+            this.audioSize = audioSize;
+            this.partialHash = partialHash;
+            this.fullHash = fullHash;
+            this.source = source;
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.jaudiotagger.tag.TagException;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +21,35 @@ public class FileFormatter {
         Logger.getLogger("org.jaudiotagger").setLevel(Level.OFF);
     }
 
+    private static final Pattern FILENAME_PATTERN = Pattern.compile(Config.FILENAME_FORMAT);
+
+    private final FilenameFormatter filenameFormatter;
+    private final MetadataFormatter metadataFormatter;
+    private final RunMetrics metrics;
+
+    /**
+     * Create formatter that adds new artists to the shared set
+     *
+     * @see FilenameFormatter#getNewArtists()
+     */
+    public FileFormatter() {
+        this.filenameFormatter = new FilenameFormatter();
+        this.metrics = new RunMetrics();
+        this.metadataFormatter = new MetadataFormatter(metrics);
+    }
+
+    /**
+     * Create formatter that adds new artists to {@code newArtistsSink}
+     *
+     * @param newArtistsSink set to add new artists to
+     * @param metrics        metrics to record time of formatting steps to
+     */
+    public FileFormatter(Set<String> newArtistsSink, RunMetrics metrics) {
+        this.filenameFormatter = new FilenameFormatter(newArtistsSink);
+        this.metrics = metrics;
+        this.metadataFormatter = new MetadataFormatter(metrics);
+    }
+
     /**
      * Check the correctness of the filename format with regexf
      *
@@ -26,8 +57,8 @@ public class FileFormatter {
      * @return {@code true}, if the filename matches expected format and can be processed further, {@code false} otherwise
      * @see Config#FILENAME_FORMAT
      */
-    public static boolean isValidMp3Filename(String filename) {
-        return filename.matches(Config.FILENAME_FORMAT);
+    public static boolean isValidMp3Filename(CharSequence filename) {
+        return FILENAME_PATTERN.matcher(filename).matches();
     }
 
     /**
@@ -37,16 +68,94 @@ public class FileFormatter {
      * @return new file with formatted filename and metadata
      */
     public Path format(Path mp3File) throws Mp3FileFormattingException, CannotWriteException, CannotReadException, TagException, InvalidAudioFrameException, ReadOnlyFileException, IOException {
-        FilenameFormatter filenameFormatter = new FilenameFormatter();
-        MetadataFormatter metadataFormatter = new MetadataFormatter();
+        return apply(mp3File, plan(mp3File.getFileName().toString()));
+    }
 
-        String newFilename = filenameFormatter.run(mp3File.getFileName().toString());
-        metadataFormatter.run(mp3File, newFilename);
+    /**
+     * Compute formatted filename and metadata without reading or writing files
+     *
+     * @param filename name of MP3 file
+     * @return formatting to pass to {@link #apply(Path, Formatting)}
+     * @throws Mp3FileFormattingException if the filename cannot be formatted
+     */
+    public Formatting plan(String filename) throws Mp3FileFormattingException {
+        long startTime = System.nanoTime();
+        String newFilename = filenameFormatter.run(filename);
+        metrics.record(RunMetrics.Stage.FILENAME_RULES, startTime, 0);
+        MetadataFormatter.Metadata metadata = metadataFormatter.plan(newFilename);
 
         // Final check for formatting correctness
         if (!isValidMp3Filename(newFilename)) {
             throw new Mp3FileFormattingException("Invalid filename format");
         }
-        return mp3File.getParent().resolve(newFilename);
+        return new Formatting(newFilename, metadata);
+    }
+
+    /**
+     * Check that tags of MP3 file can be read, so {@link #apply(Path, Formatting)} would not fail on them
+     *
+     * @param mp3File MP3 file
+     */
+    public void check(Path mp3File) throws TagException, InvalidAudioFrameException, IOException {
+        readTag(mp3File);
+    }
+
+    /**
+     * Read frames of existing tag of MP3 file that are kept, to pass them to
+     * {@link #apply(Path, Formatting, Id3TagReader.TagFrames)}
+     *
+     * @param mp3File MP3 file
+     * @return kept frames of existing ID3v2 tag
+     */
+    public Id3TagReader.TagFrames readTag(Path mp3File) throws TagException, InvalidAudioFrameException, IOException {
+        return metadataFormatter.readFrames(mp3File);
+    }
+
+    /**
+     * Write metadata computed by {@link #plan(String)}. The file is not renamed
+     *
+     * @param mp3File    MP3 file that needs to be formatted
+     * @param formatting formatting of the file
+     * @return path to the file with formatted filename
+     */
+    public Path apply(Path mp3File, Formatting formatting) throws TagException, InvalidAudioFrameException, IOException {
+        return apply(mp3File, formatting, readTag(mp3File));
+    }
+
+    /**
+     * Write metadata computed by {@link #plan(String)}, keeping frames of the already read tag.
+     * The file is not renamed
+     *
+     * @param mp3File    MP3 file that needs to be formatted
+     * @param formatting formatting of the file
+     * @param oldTag     frames read by {@link #readTag(Path)}
+     * @return path to the file with formatted filename
+     */
+    public Path apply(Path mp3File, Formatting formatting, Id3TagReader.TagFrames oldTag) throws TagException, IOException {
+        metadataFormatter.write(mp3File, oldTag, formatting.metadata());
+        return mp3File.getParent().resolve(formatting.newFilename());
+    }
+
+    /**
+     * Write formatted copy of MP3 file to {@code targetFile}. The source file is not changed
+     *
+     * @param mp3File    MP3 file that needs to be formatted
+     * @param formatting formatting of the file
+     * @param oldTag     frames read by {@link #readTag(Path)}
+     * @param targetFile path to the formatted file in target dir, usually with formatted filename
+     * @return path to the written file
+     */
+    public Path applyTo(Path mp3File, Formatting formatting, Id3TagReader.TagFrames oldTag, Path targetFile) throws TagException, IOException {
+        metadataFormatter.writeTo(mp3File, oldTag, formatting.metadata(), targetFile);
+        return targetFile;
+    }
+
+    /**
+     * Formatted filename and metadata of MP3 file
+     *
+     * @param newFilename formatted filename
+     * @param metadata    metadata computed from formatted filename
+     */
+    public record Formatting(String newFilename, MetadataFormatter.Metadata metadata) {
     }
 }
@@ -1,6 +1,13 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.Leo_Proger.config.CollisionPolicy;
 import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.events.MoveEvent;
+import com.github.Leo_Proger.events.ProcessFileEvent;
+import com.github.Leo_Proger.events.RenameEvent;
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import com.github.Leo_Proger.utils.JsonManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,25 +16,130 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
-import static com.github.Leo_Proger.config.Config.SOURCE_PATH;
-import static com.github.Leo_Proger.config.Config.TARGET_PATH;
+import static com.github.Leo_Proger.config.Config.*;
 
 public class FileManager {
     private static final Logger log = LoggerFactory.getLogger(FileManager.class);
 
     /**
-     * List of modified files
+     * Results of processed files of the current run, written as soon as every file is processed
      */
-    private final List<Path> modifiedFiles = new LinkedList<>();
+    private ResultLog results;
 
     /**
-     * Files that could not be formatted.
-     * They cannot be moved.
+     * Files formatted by previous runs, loaded at the start of every run
      */
-    private final Map<Path, String> errorFiles = new HashMap<>();
+    private RunManifest manifest;
+
+    /**
+     * Finished operations of the current run, so a killed run can be continued
+     */
+    private RunJournal journal = RunJournal.disabled();
+
+    /**
+     * Claims of files in worker mode, {@code null} in other modes
+     */
+    private volatile WorkerLeases leases;
+
+    /**
+     * Timing and throughput of the current run. In watch mode it covers all files since the start
+     */
+    private volatile RunMetrics metrics = new RunMetrics();
+
+    private final Path sourceDir;
+    private final Path targetDir;
+
+    /**
+     * Number of files processed at the same time
+     */
+    private final int threads;
+
+    /**
+     * How files are processed and put to target dir
+     */
+    private final ProcessingOptions options;
+
+    /**
+     * Names of files in target dir, loaded when a run moves the first file
+     */
+    private volatile TargetNameIndex nameIndex;
+
+    /**
+     * Lowercase names of files in target dir that are replaced by files of the current run
+     */
+    private final Set<String> replacedNames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Index of audio data in target dir, loaded when it is needed for the first time
+     */
+    private DuplicateIndex duplicateIndex;
+
+    private final DirectoryScanner scanner;
+
+    private final FileMover mover = new FileMover();
+
+    /**
+     * Create manager that processes files from SOURCE_PATH to TARGET_PATH
+     *
+     * @see Config#SOURCE_PATH
+     * @see Config#TARGET_PATH
+     * @see Config#PROCESSING_THREADS
+     * @see Config#RECURSIVE_SCAN
+     * @see ProcessingOptions#fromConfig()
+     */
+    public FileManager() {
+        this(SOURCE_PATH, TARGET_PATH, PROCESSING_THREADS, RECURSIVE_SCAN, ProcessingOptions.fromConfig());
+    }
+
+    /**
+     * Create manager that takes files only directly from {@code sourceDir}
+     *
+     * @param sourceDir dir to take MP3 files from
+     * @param targetDir dir to move formatted MP3 files to
+     * @param threads   number of files processed at the same time, {@code 1} means sequential processing
+     */
+    public FileManager(Path sourceDir, Path targetDir, int threads) {
+        this(sourceDir, targetDir, threads, false);
+    }
+
+    /**
+     * @param sourceDir dir to take MP3 files from
+     * @param targetDir dir to move formatted MP3 files to
+     * @param threads   number of files processed at the same time, {@code 1} means sequential processing
+     * @param recursive {@code true} - files are taken from subdirs of {@code sourceDir} too
+     * @see ProcessingOptions#defaults(int)
+     */
+    public FileManager(Path sourceDir, Path targetDir, int threads, boolean recursive) {
+        this(sourceDir, targetDir, threads, recursive, ProcessingOptions.defaults(threads));
+    }
+
+    /**
+     * @param sourceDir dir to take MP3 files from
+     * @param targetDir dir to move formatted MP3 files to
+     * @param threads   number of files processed at the same time, {@code 1} means sequential processing
+     * @param recursive {@code true} - files are taken from subdirs of {@code sourceDir} too
+     * @param options   how files are processed and put to {@code targetDir}
+     */
+    public FileManager(Path sourceDir, Path targetDir, int threads, boolean recursive, ProcessingOptions options) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.sourceDir = sourceDir;
+        this.targetDir = targetDir;
+        this.threads = threads;
+        this.options = options;
+        this.scanner = new DirectoryScanner(recursive, targetDir);
+    }
 
     /**
      * The main method starts formatting, moving MP3 files and prints a summary
@@ -36,122 +148,1065 @@ public class FileManager {
      *                      {@code false} - files will not be moved to target dir
      */
     public void run(boolean allowFileMove) {
+        metrics = new RunMetrics();
+        startRun(true, RESULTS_PATH, false);
         formatAndMoveFiles(allowFileMove);
-        printResults();
+        finishRun();
+        writeReport();
+    }
+
+    /**
+     * Format and move only specified MP3 files and print a summary.
+     * Used to process files that appear in source dir while the program is running
+     *
+     * @param files         full paths to MP3 files in source dir
+     * @param allowFileMove {@code true} - files will be moved to target dir,
+     *                      {@code false} - files will not be moved to target dir
+     * @return new paths of processed files, in source dir or in target dir
+     */
+    public List<Path> run(List<Path> files, boolean allowFileMove) {
+        return run(files, allowFileMove, RESULTS_PATH);
     }
 
     /**
-     * Prints results:
+     * Format and move only specified MP3 files and write their results to {@code resultsFile}.
+     * Results are added after results of previous runs, so the file keeps results of all files of watch mode.
+     * The manifest is loaded by the first of such runs and is kept for the next ones
+     *
+     * @param files         full paths to MP3 files
+     * @param allowFileMove {@code true} - files will be moved to target dir,
+     *                      {@code false} - files will not be moved to target dir
+     * @param resultsFile   JSON lines file to write results to
+     * @return new paths of processed files, in source dir or in target dir
+     * @see ResultLog
+     */
+    public List<Path> run(List<Path> files, boolean allowFileMove, Path resultsFile) {
+        startRun(true, resultsFile, true);
+        List<Path> newPaths = new ArrayList<>();
+        processFiles(files.stream().map(path -> new FileJob(path, allowFileMove, null, metrics)), result -> {
+            applyResult(result);
+            if (result.newPath() != null) {
+                newPaths.add(result.newPath());
+            }
+        });
+        finishRun();
+        return newPaths;
+    }
+
+    /**
+     * Process files of source dir together with other workers, e.g. processes on other machines
+     * with the same source dir on a shared mount.
      * <p>
-     * 1. Modified files
+     * Every file is processed by the worker that claims it first. Files are written directly to target dir,
+     * so they are not renamed in source dir and their paths stay valid as claims.
+     * The manifest is not saved, because workers would overwrite entries of each other.
      * <p>
-     * 2. Files with errors
+     * Report of the worker is written to {@value WorkerLeases#WORKERS_DIRNAME}/reports of source dir,
+     * then reports of all workers found there are merged into REPORT_PATH. The worker that begins a new batch,
+     * when no other worker is processing files, deletes reports of the previous batch.
+     * Results of files are written to {@value WorkerLeases#WORKERS_DIRNAME}/results.
+     * <p>
+     * A file that a crashed worker already put to target dir is only deleted from source dir
+     *
+     * @param leases claims of this worker
+     * @throws IllegalStateException if files are not written directly to target dir
+     * @see ProcessingOptions#forWorkers()
+     */
+    public void runWorker(WorkerLeases leases) {
+        if (!options.writeToTarget()) {
+            throw new IllegalStateException("Workers must write files directly to target dir");
+        }
+        metrics = new RunMetrics();
+        Path workersDir = sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME);
+        Path resultsFile = workersDir.resolve("results").resolve(leases.getWorkerId() + ".jsonl");
+        AtomicBoolean joined = new AtomicBoolean();
+        // Workers would overwrite journal of each other, and files are not renamed in source dir anyway
+        startRun(false, resultsFile, false);
+        this.leases = leases;
+        try (Stream<Path> paths = scanner.scan(sourceDir, metrics)) {
+            processFiles(paths.filter(leases::tryClaim).peek(path -> {
+                // Worker joins a batch when it claims a file, not when it only finds files already processed
+                // by workers of the current batch
+                if (!joined.getAndSet(true)) {
+                    joinBatch(leases, workersDir);
+                }
+            }).filter(path -> !finishPublishedFile(path)).map(path -> new FileJob(path, true, null, metrics)), result -> {
+                applyResult(result);
+                leases.release(result.path());
+            });
+        } catch (IOException e) {
+            log.error("Unable to read dir \"{}\"", sourceDir, e);
+        } finally {
+            this.leases = null;
+        }
+        if (duplicateIndex != null) {
+            duplicateIndex.flush();
+        }
+        printResults();
+        writeWorkerReport(leases.getWorkerId());
+    }
+
+    /**
+     * Compute what {@link #run(boolean)} would do with every file in source dir and write it to {@code planFile}.
+     * No MP3 file is changed: filenames and metadata are computed, tags are only read to find damaged files.
      * <p>
-     * 3. Number of modified files
+     * Planning uses at least as many threads as there are processors, because files are only read
+     *
+     * @param planFile JSON file to write the plan to
+     * @see #apply(Path)
+     */
+    public void plan(Path planFile) {
+        metrics = new RunMetrics();
+        manifest = RunManifest.load(sourceDir, CONFIG_VERSION);
+        List<RunPlan.Entry> entries = new ArrayList<>();
+        Set<String> newArtists = new LinkedHashSet<>();
+
+        try (Stream<Path> paths = scanner.scan(sourceDir, metrics)) {
+            processFiles(paths, this::planFile, planned -> {
+                entries.add(planned.entry());
+                newArtists.addAll(planned.newArtists());
+            }, Math.max(threads, Runtime.getRuntime().availableProcessors()));
+        } catch (IOException e) {
+            log.error("Unable to read dir \"{}\"", sourceDir, e);
+            return;
+        }
+
+        RunPlan plan = new RunPlan(CONFIG_VERSION, Instant.now().toString(), targetDir.toAbsolutePath().normalize().toString(),
+                RunPlan.markCollisions(entries, targetDir), newArtists);
+        printPlan(plan);
+        try {
+            plan.save(planFile);
+            log.info("Plan is written to \"{}\"", planFile);
+        } catch (IOException e) {
+            log.error("Failed to write plan \"{}\"", planFile, e);
+        }
+    }
+
+    /**
+     * Execute plan created by {@link #plan(Path)}: write metadata, rename and move files.
      * <p>
-     * 4. Number of files with errors
+     * Files of one dir are processed together in order of names, so the dir stays in cache of file system.
+     * Files changed since planning and files with errors in the plan are not touched.
+     * A plan created for another target dir is not applied, because its name collisions were checked there
+     *
+     * @param planFile JSON file with the plan
      */
-    private void printResults() {
-        int countFiles = 0;
+    public void apply(Path planFile) {
+        RunPlan plan;
+        try {
+            plan = RunPlan.load(planFile);
+        } catch (IOException e) {
+            log.error("Failed to read plan \"{}\"", planFile, e);
+            return;
+        }
+        if (plan.targetDir() == null
+                || !Path.of(plan.targetDir()).equals(targetDir.toAbsolutePath().normalize())) {
+            log.error("Plan \"{}\" was created for target dir \"{}\", not \"{}\", it is not applied",
+                    planFile, plan.targetDir(), targetDir);
+            return;
+        }
+        if (!Objects.equals(plan.configVersion(), CONFIG_VERSION)) {
+            log.warn("Plan \"{}\" was created with other formatting rules, it is applied as it is", planFile);
+        }
+
+        metrics = new RunMetrics();
+        startRun(true, RESULTS_PATH, false);
+        Stream<RunPlan.Entry> entries = plan.entries().stream()
+                .sorted(Comparator.comparing((RunPlan.Entry entry) -> Path.of(entry.source()).getParent())
+                        .thenComparing(RunPlan.Entry::source));
+        processFiles(entries.map(entry -> new FileJob(Path.of(entry.source()), true, entry, metrics)));
+        FilenameFormatter.getNewArtists().addAll(plan.newArtists());
+        finishRun();
+        writeReport();
+    }
+
+    /**
+     * Write timing and throughput of the run so far to REPORT_PATH. Can be called while files are being processed
+     *
+     * @see Config#REPORT_PATH
+     * @see RunMetrics
+     */
+    public void writeReport() {
+        try {
+            metrics.writeReport(REPORT_PATH);
+            log.info("Report is written to \"{}\"", REPORT_PATH);
+        } catch (IOException e) {
+            log.error("Failed to write report \"{}\"", REPORT_PATH, e);
+        }
+    }
+
+    /**
+     * Join the batch of workers. The worker that begins a new batch deletes reports and results of workers
+     * of the previous batch, so they are not merged with reports of this batch. Files of workers that are still
+     * processing files are kept
+     *
+     * @param leases     claims of this worker
+     * @param workersDir dir of files shared by workers
+     */
+    private static void joinBatch(WorkerLeases leases, Path workersDir) {
+        Set<String> liveWorkers;
+        try {
+            if (!leases.joinBatch()) {
+                return;
+            }
+            liveWorkers = leases.getLiveWorkers();
+        } catch (IOException e) {
+            log.warn("Unable to join batch of workers in \"{}\"", workersDir, e);
+            return;
+        }
+        for (Path dir : List.of(workersDir.resolve("reports"), workersDir.resolve("results"))) {
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.toList()) {
+                    String name = file.getFileName().toString();
+                    if (!liveWorkers.contains(name.substring(0, Math.max(name.lastIndexOf('.'), 0)))) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Unable to delete files of previous workers in \"{}\"", dir, e);
+            }
+        }
+    }
+
+    /**
+     * Delete source of a file that a crashed worker already put to target dir, instead of putting it there
+     * again under another name. The file in target dir must have the same audio data
+     *
+     * @param file claimed file
+     * @return {@code true} if the file is finished
+     */
+    private boolean finishPublishedFile(Path file) {
+        Optional<String> published = leases.getPublishedTarget(file);
+        if (published.isEmpty()) {
+            return false;
+        }
+        Path targetFile = targetDir.resolve(published.get());
+        try {
+            if (!Files.exists(targetFile) || DuplicateIndex.audioChecksum(targetFile) != DuplicateIndex.audioChecksum(file)) {
+                return false;
+            }
+            deleteSource(file, targetFile);
+        } catch (IOException e) {
+            log.warn("Unable to finish file \"{}\" put to target dir by a crashed worker, it is processed again",
+                    file.getFileName(), e);
+            return false;
+        }
+        log.info("File \"{}\" was already put to target dir as \"{}\" by a crashed worker", file.getFileName(), published.get());
+        results.add(ResultLog.Outcome.MODIFIED, file, targetFile, null);
+        metrics.recordModified();
+        leases.release(file);
+        return true;
+    }
+
+    /**
+     * Write report of this worker and merge reports of all workers into REPORT_PATH
+     *
+     * @param workerId name of this worker
+     */
+    private void writeWorkerReport(String workerId) {
+        Path reportDir = sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("reports");
+        List<Map<String, Object>> reports = new ArrayList<>();
+        try {
+            Files.createDirectories(reportDir);
+            metrics.writeReport(reportDir.resolve(workerId + ".json"));
+            try (Stream<Path> files = Files.list(reportDir)) {
+                for (Path file : files.filter(file -> file.toString().endsWith(".json")).sorted().toList()) {
+                    reports.add(JsonManager.loadDataFromJson(file, new TypeReference<>() {
+                    }));
+                }
+            }
+            JsonManager.writeObjectToJson(RunMetrics.mergeReports(reports), REPORT_PATH);
+            log.info("Report of {} workers is written to \"{}\"", reports.size(), REPORT_PATH);
+        } catch (IOException e) {
+            log.error("Failed to write report of worker \"{}\"", workerId, e);
+        }
+    }
+
+    /**
+     * @param journaled   {@code true} to record operations and continue a killed run
+     * @param resultsFile file to write results of processed files to
+     * @param append      {@code true} to keep results of previous runs in {@code resultsFile}
+     *                    and to keep using the manifest of previous runs
+     */
+    private void startRun(boolean journaled, Path resultsFile, boolean append) {
+        results = ResultLog.open(resultsFile, append);
+        replacedNames.clear();
+        // Target dir can be changed between runs
+        nameIndex = null;
+        if (!append || manifest == null) {
+            manifest = RunManifest.load(sourceDir, CONFIG_VERSION);
+        }
+        journal = journaled ? openJournal() : RunJournal.disabled();
+    }
 
-        // Print successfully formatted files
-        for (Path file : modifiedFiles) {
-            log.info("{}. \"{}\"", ++countFiles, file.getFileName());
+    /**
+     * Open journal of the run and continue files of a killed run: renamed files are treated as formatted,
+     * and sources of files already written to target dir are deleted
+     */
+    private RunJournal openJournal() {
+        try {
+            RunJournal journal = RunJournal.open(sourceDir);
+            for (Path file : journal.getRenamedFiles()) {
+                manifest.restore(file);
+            }
+            journal.deleteWrittenSources();
+            return journal;
+        } catch (IOException e) {
+            log.warn("Unable to open journal in \"{}\", files of an interrupted run are processed again", sourceDir, e);
+            return RunJournal.disabled();
         }
-        countFiles = 0;
+    }
 
-        // Sort error files by error message
-        List<Map.Entry<Path, String>> sortedErrorEntries = new ArrayList<>(errorFiles.entrySet());
-        sortedErrorEntries.sort(Map.Entry.comparingByValue());
+    private void finishRun() {
+        manifest.save();
+        if (duplicateIndex != null) {
+            duplicateIndex.flush();
+        }
+        // Everything the journal knows is saved now
+        journal.finish();
+        printResults();
+    }
 
-        // Print files with errors
-        for (Map.Entry<Path, String> entry : sortedErrorEntries) {
-            Path errorFile = entry.getKey();
-            String errorMessage = entry.getValue();
+    /**
+     * Finish results of the run and print numbers of modified files and files with errors
+     *
+     * @see ResultLog#close()
+     */
+    private void printResults() {
+        results.close();
+    }
 
-            log.error("{}. {} - {}", ++countFiles, errorFile.getFileName(), errorMessage);
+    /**
+     * Prints files that cannot be processed according to the plan and number of planned files
+     *
+     * @param plan created plan
+     */
+    private void printPlan(RunPlan plan) {
+        int countFiles = 0;
+        int plannedFiles = 0;
+        for (RunPlan.Entry entry : plan.entries()) {
+            if (entry.error() == null) {
+                plannedFiles++;
+            } else {
+                log.error("{}. {} - {}", ++countFiles, Path.of(entry.source()).getFileName(), entry.error());
+            }
         }
-        log.info("Modified files: {}", modifiedFiles.size());
-        log.info("Error files: {}", errorFiles.size());
+        log.info("Planned files: {}", plannedFiles);
+        log.info("Error files: {}", countFiles);
     }
 
     /**
-     * Format and move MP3 files from SOURCE_PATH to TARGET_PATH
+     * Format and move MP3 files from source dir to target dir
      *
      * @param allowFileMove {@code true} - files will be moved to target dir,
      *                      {@code false} - files will not be moved to target dir
-     * @see Config#SOURCE_PATH
-     * @see Config#TARGET_PATH
      */
     private void formatAndMoveFiles(boolean allowFileMove) {
-        try (Stream<Path> paths = Files.list(SOURCE_PATH)) {
-            paths
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().toLowerCase().endsWith(".mp3"))
-                    .forEach(path -> processFile(path, allowFileMove));
+        try (Stream<Path> paths = scanner.scan(sourceDir, metrics)) {
+            processFiles(paths.map(path -> new FileJob(path, allowFileMove, null, metrics)));
         } catch (IOException e) {
-            log.error("Unable to read dir \"{}\"", SOURCE_PATH, e);
+            log.error("Unable to read dir \"{}\"", sourceDir, e);
         }
     }
 
     /**
-     * Process an MP3 file
+     * Process MP3 files sequentially or in a pipeline of stages, depending on number of threads
      *
-     * @param path          full path to file
-     * @param allowFileMove {@code true} - files will be moved to target dir,
-     *                      {@code false} - files will not be moved to target dir
+     * @param jobs MP3 files to process
+     */
+    private void processFiles(Stream<FileJob> jobs) {
+        processFiles(jobs, this::applyResult);
+    }
+
+    /**
+     * Process MP3 files sequentially or in a pipeline of stages, depending on number of threads
+     *
+     * @param jobs MP3 files to process
+     * @param sink receiver of results, called from the current thread in the order of files
+     */
+    private void processFiles(Stream<FileJob> jobs, Consumer<FileResult> sink) {
+        if (threads == 1) {
+            jobs.forEach(job -> sink.accept(processFile(job)));
+            return;
+        }
+        Map<PipelineStage, UnaryOperator<FileJob>> steps = new EnumMap<>(PipelineStage.class);
+        steps.put(PipelineStage.NORMALIZE, this::normalize);
+        steps.put(PipelineStage.TAG_READ, this::readTag);
+        steps.put(PipelineStage.TAG_WRITE, this::writeTag);
+        steps.put(PipelineStage.MOVE, this::move);
+
+        try (FilePipeline<FileJob> pipeline = new FilePipeline<>(options.stages(), steps, metrics)) {
+            pipeline.run(jobs.iterator(), job -> sink.accept(job.result));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("File processing was interrupted", e);
+        } catch (ExecutionException e) {
+            log.error("Unexpected error while processing files", e.getCause());
+        }
+    }
+
+    /**
+     * Run {@code task} for every item sequentially or in parallel and pass results to {@code sink}
+     * in the order of items
+     *
+     * @param items   items to process, e.g. MP3 files
+     * @param task    processing of one item, safe to call from several threads at the same time
+     * @param sink    receiver of results, called from the current thread only
+     * @param threads number of items processed at the same time
+     */
+    private <T, R> void processFiles(Stream<T> items, Function<T, R> task, Consumer<R> sink, int threads) {
+        if (threads == 1) {
+            items.forEach(item -> sink.accept(task.apply(item)));
+        } else {
+            processInParallel(items.iterator(), task, sink, threads);
+        }
+    }
+
+    /**
+     * Process items on a bounded pool of threads.
+     * <p>
+     * Results are applied in the order the items were listed, so modified files, errors and new artists
+     * are the same as after sequential processing. No more than {@code 2 * threads} results wait to be applied
+     *
+     * @param items   items to process
+     * @param task    processing of one item
+     * @param sink    receiver of results
+     * @param threads number of items processed at the same time
      */
-    private void processFile(Path path, boolean allowFileMove) {
-        FileFormatter formatter = new FileFormatter();
-        Path newPath;
+    private <T, R> void processInParallel(Iterator<T> items, Function<T, R> task, Consumer<R> sink, int threads) {
+        Deque<Future<R>> pendingResults = new ArrayDeque<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            while (items.hasNext()) {
+                T item = items.next();
+                pendingResults.add(executor.submit(() -> task.apply(item)));
+
+                if (pendingResults.size() >= threads * 2) {
+                    sink.accept(pendingResults.poll().get());
+                }
+            }
+            while (!pendingResults.isEmpty()) {
+                sink.accept(pendingResults.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("File processing was interrupted", e);
+        } catch (ExecutionException e) {
+            log.error("Unexpected error while processing files", e.getCause());
+        }
+    }
+
+    /**
+     * Write result of file processing and register found new artists
+     *
+     * @param result result of processing of one file
+     */
+    private void applyResult(FileResult result) {
+        if (result.errorMessage() == null) {
+            if (result.skipReason() != null) {
+                results.add(ResultLog.Outcome.SKIPPED, result.path(), result.newPath(), result.skipReason());
+            } else if (result.modified()) {
+                results.add(ResultLog.Outcome.MODIFIED, result.path(), result.newPath(), null);
+            } else {
+                results.add(ResultLog.Outcome.UNCHANGED, result.path(), result.newPath(), null);
+            }
+            if (result.modified()) {
+                metrics.recordModified();
+            } else {
+                metrics.recordUnchanged();
+            }
+        } else {
+            results.add(ResultLog.Outcome.ERROR, result.path(), null, result.errorMessage());
+        }
+        FilenameFormatter.getNewArtists().addAll(result.newArtists());
+    }
+
+    /**
+     * Process an MP3 file by all stages on the current thread
+     *
+     * @param job MP3 file to process
+     * @return result of processing
+     */
+    private FileResult processFile(FileJob job) {
+        return move(writeTag(readTag(normalize(job)))).result;
+    }
+
+    /**
+     * Compute new filename and metadata, or take them from the plan.
+     * <p>
+     * Files that are in the manifest are not formatted again, they are only moved.
+     * Files tagged by a killed run are only renamed and moved
+     */
+    private FileJob normalize(FileJob job) {
+        job.event.begin();
+        return runStep(job, () -> {
+            if (job.planned == null) {
+                job.alreadyFormatted = manifest.isFormatted(job.path);
+                if (!job.alreadyFormatted) {
+                    job.formatting = job.formatter.plan(job.path.getFileName().toString());
+                    job.tagWritten = journal.isTagged(job.path);
+                }
+            } else {
+                if (job.planned.error() != null) {
+                    throw new Mp3FileFormattingException(job.planned.error());
+                }
+                // Writing the tag changed the file after planning
+                job.tagWritten = journal.isTagged(job.path);
+                if (!job.tagWritten && !job.planned.matchesFile()) {
+                    throw new Mp3FileFormattingException("File was changed after planning");
+                }
+                job.alreadyFormatted = job.planned.alreadyFormatted();
+                job.formatting = job.planned.formatting();
+            }
+        });
+    }
+
+    private FileJob readTag(FileJob job) {
+        return runStep(job, () -> {
+            if (job.allowFileMove && isPutByKilledRun(job)) {
+                return;
+            }
+            if (!job.alreadyFormatted && !job.tagWritten) {
+                job.oldTag = job.formatter.readTag(job.path);
+            }
+            if (job.allowFileMove) {
+                reserveTargetName(job);
+                if (job.skipReason == null && options.checkDuplicates()) {
+                    checkDuplicate(job, job.path);
+                }
+            }
+        });
+    }
+
+    /**
+     * Check that a killed run put the file to target dir under its formatted name, but did not commit it
+     * to the journal. Then only the source is left to delete
+     */
+    private boolean isPutByKilledRun(FileJob job) {
+        if (!journal.isInterrupted()) {
+            return false;
+        }
+        String filename = job.alreadyFormatted ? job.path.getFileName().toString() : job.formatting.newFilename();
+        Path targetFile = targetDir.resolve(filename);
+        if (!RunJournal.isCopy(job.path, targetFile)) {
+            return false;
+        }
+        job.targetFilename = filename;
+        job.newPath = targetFile;
+        job.writtenToTarget = true;
+        job.putByKilledRun = true;
+        return true;
+    }
+
+    /**
+     * Check that audio data of the file is not in target dir under another name and add it to the index
+     *
+     * @throws FileAlreadyExistsException if the same audio data is in target dir
+     */
+    private void checkDuplicate(FileJob job, Path source) throws IOException {
+        DuplicateIndex index = getDuplicateIndex();
+        if (index == null) {
+            return;
+        }
+        Optional<String> duplicate = index.findOrAdd(source, job.targetFilename);
+        if (duplicate.isPresent()) {
+            throw new FileAlreadyExistsException("Same audio is already in target dir as \"%s\"".formatted(duplicate.get()));
+        }
+        job.indexedFilename = job.targetFilename;
+    }
+
+    /**
+     * Choose name of the file in target dir and reserve it, so other files of the run cannot take it.
+     * If a file with the same name ignoring case is in target dir, the collision policy is applied
+     *
+     * @throws FileAlreadyExistsException if the file must not be moved because of the collision
+     * @see CollisionPolicy
+     */
+    private void reserveTargetName(FileJob job) throws IOException {
+        String filename = job.alreadyFormatted ? job.path.getFileName().toString() : job.formatting.newFilename();
+        TargetNameIndex nameIndex = getNameIndex();
+        String existing = nameIndex.reserve(filename);
+        if (existing == null) {
+            job.targetFilename = filename;
+            return;
+        }
+        switch (options.collisionPolicy()) {
+            case ERROR -> throw new FileAlreadyExistsException("File already exists in \"%s\"".formatted(targetDir));
+            case SKIP -> job.skipReason = "File \"%s\" is already in target dir".formatted(existing);
+            case SUFFIX -> job.targetFilename = nameIndex.reserveWithSuffix(filename);
+            case REPLACE_IF_BETTER_BITRATE -> {
+                Path existingFile = targetDir.resolve(existing);
+                // A file reserved by this run is not in target dir yet
+                int existingBitrate = Files.exists(existingFile) ? BitrateReader.read(existingFile) : Integer.MAX_VALUE;
+                int bitrate = BitrateReader.read(job.path);
+                if (bitrate > existingBitrate && replaceName(existing, filename)) {
+                    job.targetFilename = filename;
+                    job.replacedFilename = existing;
+                } else {
+                    job.skipReason = "File \"%s\" with the same or better bitrate is already in target dir".formatted(existing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Take name of a file that will be replaced, unless another file of the run took it first
+     */
+    private boolean replaceName(String existing, String filename) {
+        return replacedNames.add(existing.toLowerCase(Locale.ROOT)) && nameIndex.replace(existing, filename);
+    }
+
+    /**
+     * Free target name of a file that was not moved, or give it back to the file that was not replaced
+     */
+    private void releaseTargetName(FileJob job) {
+        if (job.replacedFilename == null) {
+            nameIndex.release(job.targetFilename);
+        } else {
+            nameIndex.replace(job.targetFilename, job.replacedFilename);
+            replacedNames.remove(job.replacedFilename.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * @return names of files in target dir, loaded once per run
+     * @throws IOException if target dir cannot be read
+     */
+    private synchronized TargetNameIndex getNameIndex() throws IOException {
+        if (nameIndex == null) {
+            nameIndex = TargetNameIndex.load(targetDir);
+        }
+        return nameIndex;
+    }
+
+    /**
+     * @return index of target dir, {@code null} if it cannot be loaded
+     */
+    private synchronized DuplicateIndex getDuplicateIndex() {
+        if (duplicateIndex == null) {
+            try {
+                duplicateIndex = DuplicateIndex.load(targetDir);
+            } catch (IOException e) {
+                log.error("Unable to load duplicate index of \"{}\", duplicates are not checked", targetDir, e);
+            }
+        }
+        return duplicateIndex;
+    }
+
+    private FileJob writeTag(FileJob job) {
+        return runStep(job, () -> {
+            if (job.alreadyFormatted || job.putByKilledRun) {
+                return;
+            }
+            if (job.tagWritten) {
+                job.newPath = job.path.resolveSibling(job.formatting.newFilename());
+                return;
+            }
+            // One write of the whole file instead of changing it in source dir and copying it to target dir
+            if (job.isMoved() && options.writeToTarget() && placeInTarget(job, job.path, () -> {
+                Path targetFile = targetDir.resolve(job.targetFilename);
+                recordIntent(RunJournal.Operation.WRITING, job.path, targetFile);
+                job.newPath = job.formatter.applyTo(job.path, job.formatting, job.oldTag, targetFile);
+            })) {
+                job.writtenToTarget = true;
+                journal.record(RunJournal.Operation.WRITTEN, job.path, job.newPath, null);
+            } else {
+                job.newPath = job.formatter.apply(job.path, job.formatting, job.oldTag);
+                journal.record(RunJournal.Operation.TAGGED, job.path, null,
+                        Files.readAttributes(job.path, BasicFileAttributes.class));
+            }
+            // Artwork of the old tag is not needed anymore
+            job.oldTag = null;
+        });
+    }
+
+    /**
+     * Move file to target dir under its reserved name, or rename it in source dir if it is not moved,
+     * then finish processing of the file. A file already written to target dir is deleted from source dir.
+     * <p>
+     * Moved files are not renamed in source dir first, so files with the same formatted name don't collide there
+     */
+    private FileJob move(FileJob job) {
+        runStep(job, () -> {
+            if (job.writtenToTarget) {
+                long startTime = System.nanoTime();
+                deleteSource(job.path, job.newPath);
+                metrics.record(RunMetrics.Stage.MOVE, startTime, 0);
+                journal.record(RunJournal.Operation.MOVED, job.path, job.newPath, null);
+                return;
+            }
+            if (job.isMoved()) {
+                long size = Files.size(job.path);
+                long startTime = System.nanoTime();
+                if (placeInTarget(job, job.path, () -> {
+                    Path targetFile = targetDir.resolve(job.targetFilename);
+                    recordIntent(RunJournal.Operation.MOVING, job.path, targetFile);
+                    moveFileTo(job.path, targetFile);
+                })) {
+                    metrics.record(RunMetrics.Stage.MOVE, startTime, size);
+                    journal.record(RunJournal.Operation.MOVED, job.path, targetDir.resolve(job.targetFilename), null);
+                    manifest.remove(job.path);
+                    return;
+                }
+            }
+            if (!job.alreadyFormatted) {
+                long startTime = System.nanoTime();
+                renameFile(job.path, job.newPath);
+                metrics.record(RunMetrics.Stage.RENAME, startTime, 0);
+                journal.record(RunJournal.Operation.RENAMED, job.path, job.newPath, null);
+                manifest.markFormatted(job.newPath);
+            }
+        });
+        if (job.error != null && job.targetFilename != null && !job.putByKilledRun) {
+            releaseTargetName(job);
+        }
+        updateDuplicateIndex(job);
+        job.result = finish(job);
+        return job;
+    }
+
+    /**
+     * Put file to target dir. A file that is replaced is kept until the new file is in place.
+     * <p>
+     * If another process, e.g. another worker, puts a file with the reserved name to target dir first, the collision
+     * policy is applied again, and the file is put under another name or not moved
+     *
+     * @param job    processed file
+     * @param source current path of the file
+     * @param place  step that puts the file to target dir under {@code job.targetFilename}
+     * @return {@code false} if the file must not be moved because of a collision
+     */
+    private boolean placeInTarget(FileJob job, Path source, FileStep place) throws Exception {
+        while (job.replacedFilename == null) {
+            try {
+                place.run();
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                log.debug("Name \"{}\" was taken in target dir by another process", job.targetFilename, e);
+                reserveTakenTargetName(job, source);
+                if (!job.isMoved()) {
+                    return false;
+                }
+            }
+        }
+        Path replaced = targetDir.resolve(job.replacedFilename);
+        Path backup = targetDir.resolve(".mp3_editor_replaced_" + job.replacedFilename);
+        Files.move(replaced, backup, StandardCopyOption.ATOMIC_MOVE);
         try {
-            newPath = formatter.format(path);
-            renameFile(path, newPath);
+            place.run();
+        } catch (Exception e) {
+            FileMover.publish(backup, replaced);
+            throw e;
+        }
+        Files.delete(backup);
+        return true;
+    }
+
+    /**
+     * Choose target name again after the reserved name was taken by another process. The taken name stays reserved,
+     * because it is the name of the file of the other process now
+     *
+     * @param job    processed file
+     * @param source current path of the file
+     * @throws FileAlreadyExistsException if the file must not be moved because of the collision
+     */
+    private void reserveTakenTargetName(FileJob job, Path source) throws IOException {
+        if (job.indexedFilename != null) {
+            duplicateIndex.remove(job.indexedFilename);
+            job.indexedFilename = null;
+        }
+        job.targetFilename = null;
+        reserveTargetName(job);
+        if (job.isMoved() && options.checkDuplicates()) {
+            checkDuplicate(job, source);
+        }
+    }
+
+    /**
+     * Update position of audio data of a moved file in the duplicate index, or remove a file that was not moved
+     */
+    private void updateDuplicateIndex(FileJob job) {
+        if (job.indexedFilename == null) {
+            return;
+        }
+        if (job.error != null) {
+            duplicateIndex.remove(job.indexedFilename);
+            return;
+        }
+        try {
+            if (job.replacedFilename != null && !job.replacedFilename.equals(job.indexedFilename)) {
+                duplicateIndex.remove(job.replacedFilename);
+            }
+            duplicateIndex.update(targetDir.resolve(job.indexedFilename));
+        } catch (IOException e) {
+            log.warn("Unable to update duplicate index of \"{}\"", job.indexedFilename, e);
+        }
+    }
+
+    /**
+     * Record in the journal, and in the lease of a worker, that the file is being put to target dir
+     *
+     * @param operation  writing or moving of the file
+     * @param source     file in source dir
+     * @param targetFile file in target dir
+     */
+    private void recordIntent(RunJournal.Operation operation, Path source, Path targetFile) throws IOException {
+        journal.recordIntent(operation, source, targetFile);
+        WorkerLeases leases = this.leases;
+        if (leases != null) {
+            leases.recordTarget(source, targetFile.getFileName().toString());
+        }
+    }
+
+    /**
+     * Delete source file after its formatted copy was written to target dir.
+     * If the source file cannot be deleted, the copy is deleted, so the file is not in both dirs
+     *
+     * @param source     source file
+     * @param targetFile formatted copy of the file
+     */
+    private void deleteSource(Path source, Path targetFile) throws IOException {
+        mover.syncTargetDir(targetFile);
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            Files.deleteIfExists(targetFile);
+            throw e;
+        }
+    }
 
-            if (allowFileMove && !errorFiles.containsKey(path)) {
-                moveFile(newPath, TARGET_PATH);
+    /**
+     * Run a step of processing unless a previous step failed. Error of the step is kept in the job
+     */
+    private static FileJob runStep(FileJob job, FileStep step) {
+        if (job.error == null) {
+            try {
+                step.run();
+            } catch (Exception e) {
+                job.error = e;
             }
+        }
+        return job;
+    }
+
+    private FileResult finish(FileJob job) {
+        if (job.error == null) {
+            Path resultPath = job.isMoved() ? targetDir.resolve(job.targetFilename) : job.newPath;
+            job.event.finish(resultPath, null);
+            return new FileResult(job.path, resultPath, null, job.skipReason, job.newArtists,
+                    !job.alreadyFormatted || job.isMoved());
+        }
+        job.event.finish(job.path, job.error);
+        log.debug("Error while processing file \"{}\"", job.path, job.error);
+        metrics.recordError(job.error.getClass().getSimpleName());
+        return new FileResult(job.path, null, getErrorMessage(job.error), null, job.newArtists, false);
+    }
 
-            // Recheck that file is not in errorTracks because allowFileMove() could add it to that list
-            if (!errorFiles.containsKey(newPath)) {
-                modifiedFiles.add(newPath);
+    /**
+     * Compute formatting of an MP3 file without changing it. Safe to call from several threads at the same time
+     *
+     * @param path full path to file
+     * @return planned processing of the file
+     */
+    private PlannedFile planFile(Path path) {
+        Set<String> newArtists = new LinkedHashSet<>();
+        FileFormatter formatter = new FileFormatter(newArtists, metrics);
+        try {
+            if (manifest.isFormatted(path)) {
+                return new PlannedFile(RunPlan.Entry.of(path, null), newArtists);
             }
+            FileFormatter.Formatting formatting = formatter.plan(path.getFileName().toString());
+            formatter.check(path);
+            return new PlannedFile(RunPlan.Entry.of(path, formatting), newArtists);
         } catch (Exception e) {
-            String errorMessage = switch (e.getClass().getSimpleName()) {
-                case "InvalidAudioFrameException" -> "File corrupted";
-                case "FileSystemException" -> "File in use by another process";
-                case "CannotWriteException" -> "File access denied";
-                default -> e.getMessage();
-            };
-            errorFiles.put(path, errorMessage);
-            log.debug("Error while processing file \"{}\"", path, e);
+            log.debug("Error while planning file \"{}\"", path, e);
+            metrics.recordError(e.getClass().getSimpleName());
+            return new PlannedFile(RunPlan.Entry.failed(path, getErrorMessage(e)), newArtists);
         }
     }
 
     /**
-     * Move file to specified dir
+     * @param e error of file processing
+     * @return message for user
+     */
+    private static String getErrorMessage(Exception e) {
+        return switch (e.getClass().getSimpleName()) {
+            case "InvalidAudioFrameException" -> "File corrupted";
+            case "FileSystemException" -> "File in use by another process";
+            case "CannotWriteException" -> "File access denied";
+            default -> e.getMessage();
+        };
+    }
+
+    /**
+     * Move file to specified dir. A file moved to another disk is checked before it is deleted from the source dir
      *
      * @param file full path to file to be moved
      * @param dir  full path to dir to move file to
+     * @see FileMover
      */
     public void moveFile(Path file, Path dir) throws IOException {
-        Path newFilePath = dir.resolve(file.getFileName());
-        if (Files.exists(newFilePath)) {
-            throw new FileAlreadyExistsException("File already exists in \"%s\"".formatted(dir));
+        moveFileTo(file, dir.resolve(file.getFileName()));
+    }
+
+    /**
+     * Move file to {@code newFilePath}
+     *
+     * @param file        full path to file to be moved
+     * @param newFilePath full path to file in target dir
+     * @throws FileAlreadyExistsException if {@code newFilePath} exists
+     */
+    private void moveFileTo(Path file, Path newFilePath) throws IOException {
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        try {
+            mover.move(file, newFilePath);
+        } catch (IOException e) {
+            event.finish(file, e);
+            throw e;
         }
-        Files.move(file, newFilePath);
+        event.finish(newFilePath, null);
     }
 
     /**
-     * Rename file
+     * Rename file. An existing file is never replaced, e.g. when two files get the same formatted name
      *
      * @param oldName full path to current file
      * @param newName full path to new file with new filename
-     * @throws IOException errors when renaming file
+     * @throws FileAlreadyExistsException if another file has the new name
+     * @throws IOException                errors when renaming file
      */
     public void renameFile(Path oldName, Path newName) throws IOException {
         if (!oldName.equals(newName)) {
-            Files.move(oldName, newName, StandardCopyOption.ATOMIC_MOVE);
+            RenameEvent event = new RenameEvent();
+            event.begin();
+            try {
+                if (Files.exists(newName) && Files.isSameFile(oldName, newName)) {
+                    // Only case of the name is changed in a case-insensitive file system
+                    Files.move(oldName, newName, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    FileMover.publish(oldName, newName);
+                }
+            } catch (IOException e) {
+                event.finish(oldName, e);
+                throw e;
+            }
+            event.finish(newName, null);
+        }
+    }
+
+    /**
+     * Result of processing one MP3 file
+     *
+     * @param path         original path to file
+     * @param newPath      path to formatted file, {@code null} if there was an error
+     * @param errorMessage error message, {@code null} if file was formatted successfully
+     * @param skipReason   why the formatted file was not moved, {@code null} if it was moved or moving was not allowed
+     * @param newArtists   new artists found in filename
+     * @param modified     {@code false} if file was already formatted and was not moved
+     */
+    private record FileResult(Path path, Path newPath, String errorMessage, String skipReason, Set<String> newArtists,
+                              boolean modified) {
+    }
+
+    /**
+     * State of one MP3 file passed from stage to stage. Every stage is run after the previous one finished,
+     * so fields are not accessed at the same time
+     */
+    private static class FileJob {
+        private final Path path;
+        private final boolean allowFileMove;
+
+        /**
+         * Planned processing of the file, {@code null} to format the file from scratch
+         */
+        private final RunPlan.Entry planned;
+
+        private final Set<String> newArtists = new LinkedHashSet<>();
+        private final FileFormatter formatter;
+        private final ProcessFileEvent event = new ProcessFileEvent();
+
+        private boolean alreadyFormatted;
+
+        /**
+         * New tag was written by a killed run, the file only needs to be renamed and moved
+         */
+        private boolean tagWritten;
+
+        private FileFormatter.Formatting formatting;
+        private Id3TagReader.TagFrames oldTag;
+        private Path newPath;
+
+        /**
+         * Name of the file in target dir, {@code null} if the file is not moved
+         */
+        private String targetFilename;
+
+        /**
+         * Name of the file in target dir that is replaced by this file, {@code null} if no file is replaced
+         */
+        private String replacedFilename;
+
+        /**
+         * Why the file is not moved to target dir, {@code null} if it is moved
+         */
+        private String skipReason;
+
+        /**
+         * Name under which the file was added to the duplicate index, {@code null} if it was not added
+         */
+        private String indexedFilename;
+
+        /**
+         * File with new tag was written to target dir, source file is not changed
+         */
+        private boolean writtenToTarget;
+
+        /**
+         * File was put to target dir by a killed run that did not commit it to the journal, its name is not reserved
+         */
+        private boolean putByKilledRun;
+
+        /**
+         * Error of the first failed stage, next stages are skipped
+         */
+        private Exception error;
+
+        private FileResult result;
+
+        /**
+         * @return {@code true} if the file is moved to target dir
+         */
+        boolean isMoved() {
+            return allowFileMove && skipReason == null;
         }
+
+        FileJob(Path path, boolean allowFileMove, RunPlan.Entry planned, RunMetrics metrics) {
+            this.path = path;
+            this.newPath = path;
+            this.allowFileMove = allowFileMove;
+            this.planned = planned;
+            this.formatter = new FileFormatter(newArtists, metrics);
+        }
+    }
+
+    /**
+     * Step of file processing that can fail
+     */
+    @FunctionalInterface
+    private interface FileStep {
+        void run() throws Exception;
+    }
+
+    /**
+     * Result of planning one MP3 file
+     *
+     * @param entry      planned processing of the file
+     * @param newArtists new artists found in filename
+     */
+    private record PlannedFile(RunPlan.Entry entry, Set<String> newArtists) {
     }
 }
@@ -0,0 +1,222 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.config.SyncPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32C;
+
+/**
+ * Moves files to another dir, also on another disk.
+ * <p>
+ * In the same file system a file is renamed. Otherwise, it is copied to a hidden temporary file in target dir:
+ * source is read by chunks into a direct buffer of the thread, and every chunk is added to CRC32C checksum as it is
+ * written to target, so source is read from disk once and target is not read at all. Files are not mapped to memory,
+ * because a mapped file cannot be deleted on Windows until the mapping is garbage collected.
+ * If all data was written and source was not changed while copying, the temporary file is renamed and source is deleted
+ * <p>
+ * An existing file is never replaced, even if another process creates it while the file is moved:
+ * files are put to target dir by {@link #publish(Path, Path)}.
+ * <p>
+ * Several files are copied at the same time by threads of {@link PipelineStage#MOVE} stage
+ *
+ * @see Config#MOVE_SYNC
+ */
+public class FileMover {
+    private static final Logger log = LoggerFactory.getLogger(FileMover.class);
+
+    /**
+     * Size of chunks read from source
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Buffer of every thread of {@link PipelineStage#MOVE} stage, reused for all files it copies
+     */
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
+    private final SyncPolicy syncPolicy;
+
+    public FileMover() {
+        this(Config.MOVE_SYNC);
+    }
+
+    /**
+     * @param syncPolicy what is flushed to disk before source file is deleted
+     */
+    public FileMover(SyncPolicy syncPolicy) {
+        this.syncPolicy = syncPolicy;
+    }
+
+    /**
+     * Move file to {@code targetFile}
+     *
+     * @param source     file to move
+     * @param targetFile new path of the file
+     * @throws FileAlreadyExistsException if {@code targetFile} exists
+     * @throws IOException                if the file cannot be moved
+     */
+    public void move(Path source, Path targetFile) throws IOException {
+        try {
+            publish(source, targetFile);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Target dir is in another file system
+            copyAndDelete(source, targetFile);
+        }
+    }
+
+    /**
+     * Copy file, then delete source file
+     *
+     * @param source     file to move
+     * @param targetFile new path of the file in another file system
+     * @return CRC32C checksum of the copied data
+     * @throws IOException if the file cannot be copied, not all data was written or source was changed while copying
+     */
+    long copyAndDelete(Path source, Path targetFile) throws IOException {
+        BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+        Path targetDir = targetFile.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(targetDir, ".mp3_editor_", ".tmp");
+        long checksum;
+        try {
+            try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                checksum = copy(sourceChannel, tempChannel);
+                if (syncPolicy != SyncPolicy.NONE) {
+                    tempChannel.force(false);
+                }
+            }
+            if (Files.size(tempFile) != sourceAttributes.size()) {
+                throw new IOException("Copy of \"%s\" is damaged".formatted(source.getFileName()));
+            }
+            if (!sourceAttributes.lastModifiedTime().equals(Files.getLastModifiedTime(source))
+                    || Files.size(source) != sourceAttributes.size()) {
+                throw new IOException("File \"%s\" was changed while it was moved".formatted(source.getFileName()));
+            }
+
+            publish(tempFile, targetFile);
+            syncTargetDir(targetFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            // File must not be in both dirs
+            Files.deleteIfExists(targetFile);
+            throw e;
+        }
+        log.debug("\"{}\" is copied to \"{}\", CRC32C {}", source, targetFile, Long.toHexString(checksum));
+        return checksum;
+    }
+
+    /**
+     * Flush entry of a file written to target dir to disk if the sync policy requires it.
+     * Called before the source of the file is deleted, so a power loss cannot lose both of them
+     *
+     * @param targetFile file in target dir
+     */
+    public void syncTargetDir(Path targetFile) {
+        if (syncPolicy == SyncPolicy.FILE_AND_DIR) {
+            syncDir(targetFile.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Rename {@code file} to {@code targetFile} in the same file system, unless {@code targetFile} exists.
+     * <p>
+     * Renaming replaces an existing file on most systems, so a hard link is created instead, which fails if the target
+     * exists, and {@code file} is deleted. If the file system doesn't support hard links, the target name is claimed by
+     * creating an empty file, which also fails if it exists, and {@code file} is renamed over it
+     *
+     * @param file       file to rename
+     * @param targetFile new path of the file
+     * @throws FileAlreadyExistsException     if {@code targetFile} exists
+     * @throws AtomicMoveNotSupportedException if {@code targetFile} is in another file system
+     * @throws IOException                    if the file cannot be renamed
+     */
+    static void publish(Path file, Path targetFile) throws IOException {
+        boolean linked;
+        try {
+            Files.createLink(targetFile, file);
+            linked = true;
+        } catch (FileAlreadyExistsException e) {
+            throw new FileAlreadyExistsException("File already exists in \"%s\"".formatted(targetFile.getParent()));
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // No hard links in the file system, or target is in another file system
+            linked = false;
+        }
+        if (linked) {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                // File must not be in both places
+                Files.deleteIfExists(targetFile);
+                throw e;
+            }
+            return;
+        }
+
+        try {
+            Files.createFile(targetFile);
+        } catch (FileAlreadyExistsException e) {
+            throw new FileAlreadyExistsException("File already exists in \"%s\"".formatted(targetFile.getParent()));
+        }
+        try {
+            Files.move(file, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(targetFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Copy all data of {@code source} to {@code target}
+     *
+     * @return CRC32C checksum of copied data
+     */
+    private static long copy(FileChannel source, FileChannel target) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = buffers.get();
+        while (source.read(buffer.clear()) >= 0) {
+            buffer.flip();
+            // Checksum of exactly the bytes that are written
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @return CRC32C checksum of the whole file
+     */
+    static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = buffers.get();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) >= 0) {
+                crc.update(buffer.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Flush entries of dir to disk. Not supported on Windows, where it is skipped
+     */
+    private static void syncDir(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to flush dir \"{}\"", dir, e);
+        }
+    }
+}
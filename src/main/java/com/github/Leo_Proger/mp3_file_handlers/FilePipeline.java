@@ -0,0 +1,148 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Processes files in stages, each stage on its own pool of threads with a bounded queue.
+ * <p>
+ * When the queue of a stage is full, threads of the previous stage wait until there is space in it.
+ * So a slow stage, e.g. moving to a slow target disk, slows down taking of new files
+ * instead of collecting files waiting for it in memory.
+ * <p>
+ * Results are passed to the sink in the order items were submitted
+ *
+ * @param <T> state of one file passed from stage to stage
+ * @see PipelineStage
+ */
+public class FilePipeline<T> implements AutoCloseable {
+    private final Map<PipelineStage, ThreadPoolExecutor> executors = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, Executor> recordingExecutors = new EnumMap<>(PipelineStage.class);
+    private final Map<PipelineStage, UnaryOperator<T>> steps;
+
+    /**
+     * Maximum number of items that are submitted, but not passed to the sink yet
+     */
+    private final int maxPendingResults;
+
+    /**
+     * @param settings threads and queue capacity of every stage
+     * @param steps    processing of an item by every stage, safe to call from several threads at the same time.
+     *                 Steps must not throw, errors are kept in the item
+     * @param metrics  metrics to record depth of queues to
+     */
+    public FilePipeline(Map<PipelineStage, StageSettings> settings, Map<PipelineStage, UnaryOperator<T>> steps, RunMetrics metrics) {
+        this.steps = steps;
+        int maxPendingResults = 0;
+        for (PipelineStage stage : PipelineStage.values()) {
+            StageSettings stageSettings = settings.get(stage);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(stageSettings.threads(), stageSettings.threads(),
+                    0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(stageSettings.queueCapacity()),
+                    createThreadFactory(stage), FilePipeline::waitForSpace);
+            executors.put(stage, executor);
+            recordingExecutors.put(stage, task -> {
+                executor.execute(task);
+                metrics.recordQueueDepth(stage.name(), executor.getQueue().size(), stageSettings.queueCapacity());
+            });
+            maxPendingResults += stageSettings.threads() + stageSettings.queueCapacity();
+        }
+        this.maxPendingResults = maxPendingResults;
+    }
+
+    /**
+     * Settings where every stage has {@code threads} threads and a queue of {@code 2 * threads} items
+     *
+     * @param threads number of threads of every stage
+     * @return settings of all stages
+     */
+    public static Map<PipelineStage, StageSettings> defaultStages(int threads) {
+        Map<PipelineStage, StageSettings> settings = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            settings.put(stage, new StageSettings(threads, threads * 2));
+        }
+        return Collections.unmodifiableMap(settings);
+    }
+
+    /**
+     * Pass all items through the stages and give results to {@code sink}.
+     * <p>
+     * Waits while the first stage is full or while the oldest item is not processed yet
+     *
+     * @param items items to process
+     * @param sink  receiver of processed items, called from the current thread only
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws ExecutionException   if a step threw an exception
+     */
+    public void run(Iterator<T> items, Consumer<T> sink) throws InterruptedException, ExecutionException {
+        Deque<Future<T>> pendingResults = new ArrayDeque<>();
+        while (items.hasNext()) {
+            pendingResults.add(submit(items.next()));
+
+            if (pendingResults.size() >= maxPendingResults) {
+                sink.accept(pendingResults.poll().get());
+            }
+        }
+        while (!pendingResults.isEmpty()) {
+            sink.accept(pendingResults.poll().get());
+        }
+    }
+
+    /**
+     * Wait until all submitted items are processed and stop threads
+     */
+    @Override
+    public void close() {
+        executors.values().forEach(ExecutorService::close);
+    }
+
+    private CompletableFuture<T> submit(T item) {
+        CompletableFuture<T> future = CompletableFuture.completedFuture(item);
+        for (PipelineStage stage : PipelineStage.values()) {
+            // Next stage is submitted by the thread that finished the previous one, so it waits if the queue is full
+            future = future.thenApplyAsync(steps.get(stage), recordingExecutors.get(stage));
+        }
+        return future;
+    }
+
+    /**
+     * Put rejected task to the full queue, waiting until there is space in it
+     */
+    private static void waitForSpace(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Pipeline is closed");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for space in queue", e);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(PipelineStage stage) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        String prefix = "pipeline-" + stage.name().toLowerCase(Locale.ROOT).replace('_', '-') + "-";
+        return task -> {
+            Thread thread = new Thread(task, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Threads and queue of one stage
+     *
+     * @param threads       number of items processed by the stage at the same time
+     * @param queueCapacity number of items that can wait for the stage
+     */
+    public record StageSettings(int threads, int queueCapacity) {
+        public StageSettings {
+            if (threads < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("Number of threads and queue capacity must be positive");
+            }
+        }
+    }
+}
@@ -1,136 +1,74 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
 import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.events.FilenameFormatEvent;
 import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
 
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.*;
 
-import static com.github.Leo_Proger.config.Config.*;
-import static com.github.Leo_Proger.mp3_file_handlers.FileFormatter.isValidMp3Filename;
+import static com.github.Leo_Proger.config.Config.FILENAME_RULES;
 
 public class FilenameFormatter {
-    private static final Set<String> newArtists = new LinkedHashSet<>();
     /**
-     * Formatting performs on it
+     * Artists that are not in CORRECT_ARTISTS_NAMES, in order of their appearance.
+     * Shared by all formatters, so it is synchronized
      */
-    private String formattedFilename;
-
-    public static Set<String> getNewArtists() {
-        return newArtists;
-    }
+    private static final Set<String> newArtists = Collections.synchronizedSet(new LinkedHashSet<>());
 
     /**
-     * Main method that runs all other methods
-     *
-     * @param filename filename to format
-     * @return formatted filename
-     * @throws Mp3FileFormattingException if {@code filename} is not a filename, or it does not match the template of MP3 file
-     * @see Config#FILENAME_FORMAT
+     * Where found new artists are added to
      */
-    public String run(String filename) throws Mp3FileFormattingException {
-        formattedFilename = filename;
-
-        replaceInvalidCharacters();
-        removeAds();
-        replaceSpacesAndFixCommas();
-        replaceArtistSeparatorsWithComma();
-        correctArtistNames();
-
-        return formattedFilename;
-    }
+    private final Set<String> newArtistsSink;
 
     /**
-     * Replace characters
-     *
-     * @see Config#CHARACTERS_TO_REPLACE
+     * Formatting performs on them. Reused between runs
      */
-    private void replaceInvalidCharacters() {
-        StringBuilder result = new StringBuilder();
-        for (char c : formattedFilename.toCharArray()) {
-            result.append(CHARACTERS_TO_REPLACE.getOrDefault(String.valueOf(c), String.valueOf(c)));
-        }
-        formattedFilename = result.toString();
-    }
+    private final StringBuilder buffer = new StringBuilder();
+    private final StringBuilder secondBuffer = new StringBuilder();
 
     /**
-     * Remove ads found in BLACKLIST from filename
+     * Create formatter that adds new artists to the shared set
      *
-     * @see Config#BLACKLIST
+     * @see #getNewArtists()
      */
-    private void removeAds() {
-        formattedFilename = BLACKLIST.stream()
-                .reduce(formattedFilename, (str, ad) -> str.replaceAll("(?i)" + Pattern.quote(ad), ""))
-                .trim()
-                .replaceAll("(?i)[ _-]+\\.mp3$", ".mp3");
+    public FilenameFormatter() {
+        this(newArtists);
     }
 
     /**
-     * Replace all spaces with underscores and correct commas
-     */
-    private void replaceSpacesAndFixCommas() {
-        formattedFilename = formattedFilename
-                .replaceAll(" ", "_")
-                .replaceAll("[\\s_]*,[\\s_]*", ", ");
-    }
-
-    /**
-     * Replace all separators listed in ARTIST_SEPARATORS with commas
+     * Create formatter that adds new artists to {@code newArtistsSink} instead of the shared set.
+     * <p>
+     * Used by parallel processing to collect artists per file and merge them in the original order
      *
-     * @throws Mp3FileFormattingException if filename does not contain "_-_"
-     * @see Config#ARTIST_SEPARATORS
+     * @param newArtistsSink set to add new artists to
      */
-    private void replaceArtistSeparatorsWithComma() throws Mp3FileFormattingException {
-        // Checking that filename contains artists and track title separated by "_-_"
-        if (!formattedFilename.contains("_-_")) {
-            throw new Mp3FileFormattingException("Invalid filename format");
-        }
-
-        // Divide into parts with artists and track title
-        String[] parts = formattedFilename.split("_-_");
-        String left = parts[0];
-        String right = parts[1];
-
-        // Replace separators with comma
-        for (String artistSeparator : ARTIST_SEPARATORS) {
-            String escapedSeparator = Pattern.quote(artistSeparator);
-            left = left.replaceAll("(?i)" + escapedSeparator, ", ");
-        }
-        formattedFilename = left + "_-_" + right;
+    public FilenameFormatter(Set<String> newArtistsSink) {
+        this.newArtistsSink = newArtistsSink;
     }
 
+    public static Set<String> getNewArtists() {
+        return newArtists;
+    }
 
     /**
-     * Search for keys in filename (incorrect names of artists) and replace it with values (correct names of artists)
+     * Main method that runs all formatting rules
      *
-     * @throws Mp3FileFormattingException if filename is incorrect
-     * @see Config#CORRECT_ARTISTS_NAMES
+     * @param filename filename to format
+     * @return formatted filename
+     * @throws Mp3FileFormattingException if {@code filename} is not a filename, or it does not match the template of MP3 file
+     * @see Config#FILENAME_FORMAT
+     * @see FilenameRules
      */
-    private void correctArtistNames() throws Mp3FileFormattingException {
-        if (!isValidMp3Filename(formattedFilename)) {
-            throw new Mp3FileFormattingException("Invalid filename format");
-        }
-
-        // Divide into part with artists and part with track title
-        String[] parts = formattedFilename.split("_-_");
-        String left = parts[0];
-        String right = parts[1];
-
-        // Replace name of artists with correct ones
-        List<String> leftWithCorrectedArtistNames = new ArrayList<>();
-        for (String artist : left.split(", ")) {
-            if (CORRECT_ARTISTS_NAMES.containsKey(artist.toLowerCase())) {
-                leftWithCorrectedArtistNames.add(
-                        CORRECT_ARTISTS_NAMES.getOrDefault(artist.toLowerCase(), artist.trim())
-                );
-            } else {
-                leftWithCorrectedArtistNames.add(artist);
-                newArtists.add(artist);
-            }
+    public String run(String filename) throws Mp3FileFormattingException {
+        FilenameFormatEvent event = new FilenameFormatEvent();
+        event.begin();
+        try {
+            String formatted = FILENAME_RULES.apply(filename, buffer, secondBuffer, newArtistsSink);
+            event.finish(filename, null);
+            return formatted;
+        } catch (Mp3FileFormattingException | RuntimeException e) {
+            event.finish(filename, e);
+            throw e;
         }
-        formattedFilename = String.join(", ", leftWithCorrectedArtistNames) + "_-_" + right;
     }
 }
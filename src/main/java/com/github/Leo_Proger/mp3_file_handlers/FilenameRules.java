@@ -0,0 +1,312 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import com.github.Leo_Proger.utils.ArtistDictionary;
+import com.github.Leo_Proger.utils.MultiPatternMatcher;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.github.Leo_Proger.mp3_file_handlers.FileFormatter.isValidMp3Filename;
+
+/**
+ * Filename formatting rules compiled once into an immutable program.
+ * <p>
+ * The program performs all steps of {@link FilenameFormatter} without regular expressions and
+ * without intermediate strings: every step reads one buffer and writes the other one.
+ * Buffers are passed in by the caller, so they can be reused between files.
+ * <p>
+ * Steps:
+ * <p>
+ * 1. Replace characters (CHARACTERS_TO_REPLACE)
+ * <p>
+ * 2. Remove ads (BLACKLIST), trim and remove {@code [ _-]} characters before ".mp3"
+ * <p>
+ * 3. Replace spaces with underscores and fix spacing around commas
+ * <p>
+ * 4. Replace artist separators with commas (ARTIST_SEPARATORS)
+ * <p>
+ * 5. Correct names of artists (CORRECT_ARTISTS_NAMES)
+ * <p>
+ * Safe to use from several threads at the same time
+ *
+ * @see Config#loadDataFromJsons()
+ */
+public final class FilenameRules {
+    private static final String ARTISTS_AND_TITLE_SEPARATOR = "_-_";
+    private static final String ARTISTS_SEPARATOR = ", ";
+    private static final String EXTENSION = ".mp3";
+
+    /**
+     * Bitmap of characters that have a replacement, used to skip lookup for all other characters
+     */
+    private final long[] replacedCharsBitmap = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+
+    /**
+     * Sorted characters that have a replacement and their replacements with the same indexes
+     */
+    private final char[] replacedChars;
+    private final String[] replacements;
+
+    private final MultiPatternMatcher blacklistMatcher;
+    private final MultiPatternMatcher artistSeparatorsMatcher;
+    private final ArtistDictionary correctArtistsNames;
+
+    /**
+     * @param charactersToReplace     characters to replace in filename
+     * @param blacklistMatcher        ads to remove from filename
+     * @param artistSeparatorsMatcher separators between artists to replace with comma
+     * @param correctArtistsNames     correct names of artists
+     */
+    public FilenameRules(Map<String, String> charactersToReplace,
+                         MultiPatternMatcher blacklistMatcher,
+                         MultiPatternMatcher artistSeparatorsMatcher,
+                         ArtistDictionary correctArtistsNames) {
+        // Filename is replaced char by char, so keys longer than one char never match
+        TreeMap<Character, String> singleChars = new TreeMap<>();
+        charactersToReplace.forEach((key, value) -> {
+            if (key.length() == 1) {
+                singleChars.put(key.charAt(0), value);
+            }
+        });
+        replacedChars = new char[singleChars.size()];
+        replacements = new String[singleChars.size()];
+        int i = 0;
+        for (Map.Entry<Character, String> entry : singleChars.entrySet()) {
+            char c = entry.getKey();
+            replacedChars[i] = c;
+            replacements[i] = entry.getValue();
+            replacedCharsBitmap[c >>> 6] |= 1L << c;
+            i++;
+        }
+
+        this.blacklistMatcher = blacklistMatcher;
+        this.artistSeparatorsMatcher = artistSeparatorsMatcher;
+        this.correctArtistsNames = correctArtistsNames;
+    }
+
+    /**
+     * Run the program
+     *
+     * @param filename       filename to format
+     * @param buffer         buffer for intermediate results, its content is overwritten
+     * @param secondBuffer   another buffer for intermediate results, its content is overwritten
+     * @param newArtistsSink where to add artists that are not in the list of correct names
+     * @return formatted filename
+     * @throws Mp3FileFormattingException if filename does not match the template of MP3 file
+     * @see Config#FILENAME_FORMAT
+     */
+    public String apply(String filename, StringBuilder buffer, StringBuilder secondBuffer, Set<String> newArtistsSink)
+            throws Mp3FileFormattingException {
+        StringBuilder current = buffer;
+        StringBuilder next = secondBuffer;
+
+        current.setLength(0);
+        replaceCharacters(filename, current);
+
+        next.setLength(0);
+        blacklistMatcher.replaceAll(current, "", next);
+        removeAdsLeftovers(next);
+
+        current.setLength(0);
+        replaceSpacesAndFixCommas(next, current);
+
+        // Divide into parts with artists and track title
+        int separatorIndex = indexOf(current, ARTISTS_AND_TITLE_SEPARATOR, 0);
+        if (separatorIndex < 0) {
+            throw new Mp3FileFormattingException("Invalid filename format");
+        }
+        int titleStart = separatorIndex + ARTISTS_AND_TITLE_SEPARATOR.length();
+        int titleEnd = indexOf(current, ARTISTS_AND_TITLE_SEPARATOR, titleStart);
+        if (titleEnd < 0) {
+            titleEnd = current.length();
+        }
+        if (titleStart == titleEnd) {
+            throw new Mp3FileFormattingException("Invalid filename format");
+        }
+
+        next.setLength(0);
+        artistSeparatorsMatcher.replaceAll(current.subSequence(0, separatorIndex), ARTISTS_SEPARATOR, next);
+        int artistsEnd = next.length();
+        next.append(ARTISTS_AND_TITLE_SEPARATOR).append(current, titleStart, titleEnd);
+
+        if (!isValidMp3Filename(next)) {
+            throw new Mp3FileFormattingException("Invalid filename format");
+        }
+
+        current.setLength(0);
+        correctArtistNames(next, artistsEnd, current, newArtistsSink);
+        current.append(next, artistsEnd, next.length());
+        return current.toString();
+    }
+
+    /**
+     * Replace characters listed in CHARACTERS_TO_REPLACE
+     */
+    private void replaceCharacters(String filename, StringBuilder output) {
+        for (int i = 0; i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            if ((replacedCharsBitmap[c >>> 6] & (1L << c)) != 0) {
+                output.append(replacements[Arrays.binarySearch(replacedChars, c)]);
+            } else {
+                output.append(c);
+            }
+        }
+    }
+
+    /**
+     * Trim filename and replace {@code [ _-]+\.mp3} at its end with ".mp3" (extension is compared ignoring case)
+     */
+    private void removeAdsLeftovers(StringBuilder filename) {
+        // Same as String#trim()
+        int end = filename.length();
+        while (end > 0 && filename.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int start = 0;
+        while (start < end && filename.charAt(start) <= ' ') {
+            start++;
+        }
+        filename.setLength(end);
+        filename.delete(0, start);
+
+        // "$" in regular expression also matches before the final line terminator
+        int length = filename.length();
+        if (length > 0 && isLineTerminator(filename.charAt(length - 1))) {
+            length--;
+        }
+        int extensionStart = length - EXTENSION.length();
+        if (extensionStart < 1 || !regionMatchesIgnoreCase(filename, extensionStart, EXTENSION)) {
+            return;
+        }
+        int junkStart = extensionStart;
+        while (junkStart > 0 && isAdsLeftover(filename.charAt(junkStart - 1))) {
+            junkStart--;
+        }
+        if (junkStart < extensionStart) {
+            filename.replace(junkStart, length, EXTENSION);
+        }
+    }
+
+    /**
+     * Replace spaces with underscores and replace commas with surrounding whitespaces and underscores with ", "
+     */
+    private void replaceSpacesAndFixCommas(CharSequence filename, StringBuilder output) {
+        // Characters before this index were written as part of ", " and cannot be removed
+        int fixedLength = 0;
+
+        for (int i = 0; i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            if (c != ',') {
+                output.append(c == ' ' ? '_' : c);
+                continue;
+            }
+            // Remove whitespaces and underscores before comma
+            int length = output.length();
+            while (length > fixedLength && isWhitespaceOrUnderscore(output.charAt(length - 1))) {
+                length--;
+            }
+            output.setLength(length);
+            output.append(ARTISTS_SEPARATOR);
+            fixedLength = output.length();
+
+            // Skip whitespaces and underscores after comma
+            while (i + 1 < filename.length() && isWhitespaceOrUnderscore(filename.charAt(i + 1))) {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Replace names of artists with correct ones and collect artists that are not in CORRECT_ARTISTS_NAMES
+     *
+     * @param filename   filename with artists at the beginning
+     * @param artistsEnd index where artists end
+     * @param output     where to write corrected artists
+     */
+    private void correctArtistNames(CharSequence filename, int artistsEnd, StringBuilder output, Set<String> newArtistsSink) {
+        // Same as String#split(", "): trailing empty artists are dropped
+        int lastArtistEnd = artistsEnd;
+        while (lastArtistEnd >= ARTISTS_SEPARATOR.length()
+                && regionMatches(filename, lastArtistEnd - ARTISTS_SEPARATOR.length(), ARTISTS_SEPARATOR)) {
+            lastArtistEnd -= ARTISTS_SEPARATOR.length();
+        }
+
+        int start = 0;
+        while (true) {
+            int end = indexOf(filename, ARTISTS_SEPARATOR, start);
+            if (end < 0 || end > lastArtistEnd) {
+                end = lastArtistEnd;
+            }
+            int entry = correctArtistsNames.find(filename, start, end);
+            if (entry >= 0) {
+                correctArtistsNames.appendName(entry, output);
+            } else {
+                String artist = filename.subSequence(start, end).toString();
+                output.append(artist);
+                newArtistsSink.add(artist);
+            }
+
+            if (end >= lastArtistEnd) {
+                break;
+            }
+            output.append(ARTISTS_SEPARATOR);
+            start = end + ARTISTS_SEPARATOR.length();
+        }
+    }
+
+    private static int indexOf(CharSequence text, String substring, int fromIndex) {
+        for (int i = fromIndex; i <= text.length() - substring.length(); i++) {
+            if (regionMatches(text, i, substring)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence text, int offset, String substring) {
+        for (int i = 0; i < substring.length(); i++) {
+            if (text.charAt(offset + i) != substring.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence text, int offset, String lowercaseSubstring) {
+        for (int i = 0; i < lowercaseSubstring.length(); i++) {
+            char c = text.charAt(offset + i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != lowercaseSubstring.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@code [ _-]} in regular expression
+     */
+    private static boolean isAdsLeftover(char c) {
+        return c == ' ' || c == '_' || c == '-';
+    }
+
+    /**
+     * Same as {@code [\s_]} in regular expression
+     */
+    private static boolean isWhitespaceOrUnderscore(char c) {
+        return c == '_' || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Line terminators that are left after {@link String#trim()}
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP service on localhost for other tools, e.g. downloaders, that format files often.
+ * The program is started once, so requests don't pay for start of JVM and loading of config.
+ * <p>
+ * Every request is a POST with one filename or path per line of the body, every response line is a JSON object:
+ * <p>
+ * {@code /normalize} - formatted filename, artist and title of every filename, files are not touched
+ * <p>
+ * {@code /format} and {@code /format-batch} - format one or several MP3 files like "watch" mode does and return
+ * their results. With {@code ?move=true} files are moved to TARGET_PATH
+ * <p>
+ * Files are formatted by one request at a time, filenames are normalized in parallel
+ * <p>
+ * The service has no authentication, so requests that web pages can send are rejected: requests with
+ * {@code Origin} header and requests with Content-Type a browser sends without asking the server first
+ *
+ * @see Config#SERVICE_PORT
+ * @see ResultLog.Entry
+ */
+public class FormatService {
+    private static final Logger log = LoggerFactory.getLogger(FormatService.class);
+
+    private static final String JSON_LINES = "application/x-ndjson; charset=utf-8";
+
+    /**
+     * Max size of request body in bytes
+     */
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    /**
+     * Content types of requests that web pages can send to any site without CORS preflight
+     */
+    private static final Set<String> SIMPLE_CONTENT_TYPES =
+            Set.of("application/x-www-form-urlencoded", "multipart/form-data", "text/plain");
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final FileManager fileManager;
+    private final Path resultsFile;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param fileManager manager that formats files
+     * @param port        port on localhost, {@code 0} to choose a free port
+     * @param resultsFile file results of formatted files are added to
+     * @throws IOException if the port cannot be used
+     */
+    public FormatService(FileManager fileManager, int port, Path resultsFile) throws IOException {
+        this.fileManager = fileManager;
+        this.resultsFile = resultsFile;
+        // Only local tools can use the service, it can change any file the program can
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/normalize", exchange -> handle(exchange, this::normalize));
+        server.createContext("/format", exchange -> handle(exchange, lines -> format(exchange, lines, true)));
+        server.createContext("/format-batch", exchange -> handle(exchange, lines -> format(exchange, lines, false)));
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "service");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Service listens on http://localhost:{}", getPort());
+    }
+
+    /**
+     * Stop accepting requests and wait for running requests up to one second
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Format filenames without touching files
+     *
+     * @param filenames names of MP3 files
+     * @return formatted filename, artist and title, or error of every filename
+     */
+    private List<String> normalize(List<String> filenames) throws IOException {
+        FileFormatter formatter = new FileFormatter();
+        List<String> lines = new ArrayList<>(filenames.size());
+        for (String filename : filenames) {
+            Map<String, String> result = new LinkedHashMap<>();
+            result.put("source", filename);
+            try {
+                FileFormatter.Formatting formatting = formatter.plan(filename);
+                result.put("filename", formatting.newFilename());
+                result.put("artist", formatting.metadata().artist());
+                result.put("title", formatting.metadata().title());
+            } catch (Mp3FileFormattingException e) {
+                result.put("error", e.getMessage());
+            }
+            lines.add(objectMapper.writeValueAsString(result));
+        }
+        return lines;
+    }
+
+    /**
+     * Format files and return their results
+     *
+     * @param exchange request, its query tells whether files are moved
+     * @param paths    paths to MP3 files
+     * @param single   {@code true} if exactly one file must be given
+     * @return lines added to results file by the run
+     */
+    private List<String> format(HttpExchange exchange, List<String> paths, boolean single) throws IOException {
+        if (single && paths.size() != 1) {
+            throw new IllegalArgumentException("Exactly one file is expected, use /format-batch for several files");
+        }
+        List<Path> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            try {
+                files.add(Path.of(path));
+            } catch (InvalidPathException e) {
+                throw new IllegalArgumentException("Invalid path \"%s\"".formatted(path));
+            }
+        }
+        boolean allowFileMove = "move=true".equals(exchange.getRequestURI().getQuery());
+        // Runs of the manager cannot overlap
+        synchronized (fileManager) {
+            // Results are appended to results of previous requests
+            long start = Files.exists(resultsFile) ? Files.size(resultsFile) : 0;
+            fileManager.run(files, allowFileMove, resultsFile);
+            return readLinesFrom(resultsFile, start);
+        }
+    }
+
+    private static List<String> readLinesFrom(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(Channels.newReader(channel.position(position), StandardCharsets.UTF_8))) {
+            return reader.lines().toList();
+        }
+    }
+
+    private void handle(HttpExchange exchange, RequestHandler handler) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, List.of(error("Only POST is supported")));
+                return;
+            }
+            if (exchange.getRequestHeaders().containsKey("Origin")) {
+                send(exchange, 403, List.of(error("Requests of web pages are not allowed")));
+                return;
+            }
+            if (!isAllowedContentType(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                send(exchange, 415, List.of(error("Content-Type must be set, e.g. to application/octet-stream")));
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_SIZE + 1);
+            if (body.length > MAX_BODY_SIZE) {
+                send(exchange, 413, List.of(error("Request is larger than %d bytes".formatted(MAX_BODY_SIZE))));
+                return;
+            }
+            List<String> lines = new String(body, StandardCharsets.UTF_8).lines()
+                    .filter(line -> !line.isBlank())
+                    .toList();
+            try {
+                send(exchange, 200, handler.handle(lines));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, List.of(error(e.getMessage())));
+            } catch (Exception e) {
+                log.error("Request \"{}\" failed", exchange.getRequestURI(), e);
+                send(exchange, 500, List.of(error(e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * @param contentType value of Content-Type header, {@code null} if it is not set
+     * @return {@code true} if a web page cannot send a request with such content type without CORS preflight
+     */
+    private static boolean isAllowedContentType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = contentType.split(";", 2)[0].strip().toLowerCase(Locale.ROOT);
+        return !mediaType.isEmpty() && !SIMPLE_CONTENT_TYPES.contains(mediaType);
+    }
+
+    private static void send(HttpExchange exchange, int status, List<String> lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        lines.forEach(line -> text.append(line).append('\n'));
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_LINES);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    private static String error(String message) throws IOException {
+        return objectMapper.writeValueAsString(Map.of("error", String.valueOf(message)));
+    }
+
+    /**
+     * Operation of the service
+     */
+    @FunctionalInterface
+    private interface RequestHandler {
+        List<String> handle(List<String> lines) throws Exception;
+    }
+}
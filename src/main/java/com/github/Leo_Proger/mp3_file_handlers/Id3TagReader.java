@@ -0,0 +1,278 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
+import org.jaudiotagger.tag.TagException;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads ID3v2 tag from the beginning of MP3 file without parsing audio data.
+ * <p>
+ * Only the tag and the beginning of audio data are read: it is checked for an MPEG audio frame header,
+ * so files that are not MP3 are still rejected. Bitrate, length and other audio properties are not computed.
+ * <p>
+ * {@link #readFrames(Path, Set)} reads only headers of frames, so frames like artwork are found without
+ * loading them to memory
+ */
+public class Id3TagReader {
+    /**
+     * Number of bytes after the tag searched for the first audio frame. Some programs write padding
+     * that is not counted in the tag size
+     */
+    static final int FRAME_SEARCH_LENGTH = 64 * 1024;
+
+    private static final int FRAME_HEADER_LENGTH = 4;
+    private static final int CHUNK_LENGTH = 4096;
+
+    private static final int TAG_HEADER_LENGTH = 10;
+    private static final int TAG_FRAME_HEADER_LENGTH = 10;
+
+    /**
+     * Frames of ID3v2.3 that are not allowed in ID3v2.4
+     */
+    private static final Set<String> ID3V23_ONLY_FRAMES = Set.of("EQUA", "IPLS", "RVAD", "TDAT", "TIME", "TORY", "TRDA", "TSIZ", "TYER");
+
+    /**
+     * Read tag of MP3 file
+     *
+     * @param tag       ID3v2 tag, {@code null} if the file has no ID3v2 tag
+     * @param bytesRead number of bytes read from disk
+     */
+    public record Result(AbstractID3v2Tag tag, long bytesRead) {
+    }
+
+    /**
+     * Frames of ID3v2 tag found by {@link #readFrames(Path, Set)}
+     *
+     * @param tagSize    size of the whole tag, {@code 0} if the file has no ID3v2 tag
+     * @param frames     frames with requested ids in order of the tag, empty if {@code decodedTag} is used
+     * @param decodedTag whole decoded tag if frames cannot be copied to ID3v2.4 tag as they are:
+     *                   ID3v2.2 tag, unsynchronisation, extended header or compressed ID3v2.3 frames.
+     *                   {@code null} otherwise
+     * @param bytesRead  number of bytes read from disk
+     */
+    public record TagFrames(long tagSize, List<RawFrame> frames, AbstractID3v2Tag decodedTag, long bytesRead) {
+    }
+
+    /**
+     * Frame of ID3v2 tag that is not decoded
+     *
+     * @param id           frame id, e.g. "APIC"
+     * @param bodyPosition position of frame data after frame header in the file
+     * @param bodySize     size of frame data
+     * @param flags        frame flags in ID3v2.4 format
+     */
+    public record RawFrame(String id, long bodyPosition, int bodySize, short flags) {
+    }
+
+    /**
+     * Read ID3v2 tag of {@code mp3File}
+     *
+     * @param mp3File path to MP3 file
+     * @return tag and number of read bytes
+     * @throws IOException                if the file cannot be read
+     * @throws TagException               if the tag is damaged
+     * @throws InvalidAudioFrameException if there is no audio frame after the tag
+     */
+    public Result read(Path mp3File) throws IOException, TagException, InvalidAudioFrameException {
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            long tagSize = Id3TagWriter.readTagSize(channel);
+            AbstractID3v2Tag tag = null;
+            if (tagSize > 0) {
+                if (tagSize > Integer.MAX_VALUE) {
+                    throw new TagException("Tag of \"%s\" is too big".formatted(mp3File));
+                }
+                tag = parse(readFully(channel, 0, (int) tagSize), mp3File);
+            }
+
+            return new Result(tag, tagSize + findFrameHeader(channel, tagSize, mp3File));
+        }
+    }
+
+    /**
+     * Find frames of ID3v2.3 or ID3v2.4 tag of {@code mp3File} by reading only their headers.
+     * Tags that cannot be copied by frames are decoded as by {@link #read(Path)}
+     *
+     * @param mp3File path to MP3 file
+     * @param ids     ids of frames to find
+     * @return found frames
+     * @throws IOException                if the file cannot be read
+     * @throws TagException               if the tag is damaged
+     * @throws InvalidAudioFrameException if there is no audio frame after the tag
+     */
+    public TagFrames readFrames(Path mp3File, Set<String> ids) throws IOException, TagException, InvalidAudioFrameException {
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            long tagSize = Id3TagWriter.readTagSize(channel);
+            if (tagSize == 0) {
+                return new TagFrames(0, List.of(), null, findFrameHeader(channel, 0, mp3File));
+            }
+            if (tagSize > Integer.MAX_VALUE) {
+                throw new TagException("Tag of \"%s\" is too big".formatted(mp3File));
+            }
+            List<RawFrame> frames = new ArrayList<>();
+            int readHeaders = findFrames(channel, readFully(channel, 0, TAG_HEADER_LENGTH), tagSize, ids, frames);
+            if (readHeaders < 0) {
+                AbstractID3v2Tag tag = parse(readFully(channel, 0, (int) tagSize), mp3File);
+                return new TagFrames(tagSize, List.of(), tag, tagSize + findFrameHeader(channel, tagSize, mp3File));
+            }
+            long bytesRead = TAG_HEADER_LENGTH + (long) readHeaders * TAG_FRAME_HEADER_LENGTH;
+            return new TagFrames(tagSize, frames, null, bytesRead + findFrameHeader(channel, tagSize, mp3File));
+        }
+    }
+
+    /**
+     * Walk through frame headers of the tag
+     *
+     * @param header header of the tag
+     * @param frames list to add frames with {@code ids} to
+     * @return number of read frame headers, {@code -1} if the tag must be decoded
+     */
+    private static int findFrames(FileChannel channel, ByteBuffer header, long tagSize, Set<String> ids,
+                                  List<RawFrame> frames) throws IOException {
+        int version = header.get(3);
+        int tagFlags = header.get(5) & 0xFF;
+        // Unsynchronisation and extended header
+        if ((version != 3 && version != 4) || (tagFlags & 0xC0) != 0) {
+            return -1;
+        }
+        long end = tagSize - (version == 4 && (tagFlags & 0x10) != 0 ? TAG_HEADER_LENGTH : 0);
+        int readHeaders = 0;
+        long position = TAG_HEADER_LENGTH;
+        while (position + TAG_FRAME_HEADER_LENGTH <= end) {
+            ByteBuffer frameHeader = readFully(channel, position, TAG_FRAME_HEADER_LENGTH);
+            readHeaders++;
+            if (frameHeader.get(0) == 0) {
+                // Padding
+                break;
+            }
+            String id = readFrameId(frameHeader);
+            int size = frameHeader.getInt(4);
+            if (version == 4) {
+                if ((size & 0x80808080) != 0) {
+                    // Size is not synchsafe, as written by some old programs
+                    return -1;
+                }
+                size = (size & 0x7F) | (size & 0x7F00) >> 1 | (size & 0x7F0000) >> 2 | (size & 0x7F000000) >> 3;
+            }
+            if (id == null || size < 0 || position + TAG_FRAME_HEADER_LENGTH + size > end) {
+                return -1;
+            }
+
+            if (ids.contains(id) && !(version == 3 && ID3V23_ONLY_FRAMES.contains(id))) {
+                short flags;
+                if (version == 4) {
+                    flags = frameHeader.getShort(8);
+                } else if (frameHeader.get(9) != 0) {
+                    // Compression, encryption and grouping are stored differently in ID3v2.3
+                    return -1;
+                } else {
+                    // Status flags are moved one bit to the right in ID3v2.4
+                    flags = (short) ((frameHeader.get(8) & 0xE0) << 7);
+                }
+                frames.add(new RawFrame(id, position + TAG_FRAME_HEADER_LENGTH, size, flags));
+            }
+            position += TAG_FRAME_HEADER_LENGTH + size;
+        }
+        return readHeaders;
+    }
+
+    /**
+     * @return id of frame, {@code null} if it is not made of capital letters and digits
+     */
+    private static String readFrameId(ByteBuffer frameHeader) {
+        char[] id = new char[4];
+        for (int i = 0; i < id.length; i++) {
+            id[i] = (char) frameHeader.get(i);
+            if (!(id[i] >= 'A' && id[i] <= 'Z' || id[i] >= '0' && id[i] <= '9')) {
+                return null;
+            }
+        }
+        return new String(id);
+    }
+
+    /**
+     * Read the beginning of audio data by small chunks until a frame header is found
+     *
+     * @param audioStart position after the tag
+     * @return number of read bytes
+     * @throws InvalidAudioFrameException if there is no frame header in {@link #FRAME_SEARCH_LENGTH} bytes
+     */
+    private static long findFrameHeader(FileChannel channel, long audioStart, Path mp3File) throws IOException, InvalidAudioFrameException {
+        long searchEnd = Math.min(audioStart + FRAME_SEARCH_LENGTH, channel.size());
+        for (long position = audioStart; position < searchEnd; position += CHUNK_LENGTH) {
+            // Chunks overlap, so a header on the border of chunks is found too
+            int length = (int) Math.min(CHUNK_LENGTH + FRAME_HEADER_LENGTH - 1, searchEnd - position);
+            if (containsFrameHeader(readFully(channel, position, length))) {
+                return position + length - audioStart;
+            }
+        }
+        throw new InvalidAudioFrameException("No audio frame found in \"%s\"".formatted(mp3File));
+    }
+
+    /**
+     * Create tag of the version written in its header
+     *
+     * @param buffer whole tag including header
+     */
+    private static AbstractID3v2Tag parse(ByteBuffer buffer, Path mp3File) throws TagException {
+        String filename = mp3File.getFileName().toString();
+        return switch (buffer.get(3)) {
+            case 2 -> new ID3v22Tag(buffer, filename);
+            case 3 -> new ID3v23Tag(buffer, filename);
+            case 4 -> new ID3v24Tag(buffer, filename);
+            default -> throw new TagException("Unsupported ID3v2 version %d in \"%s\"".formatted(buffer.get(3), mp3File));
+        };
+    }
+
+    /**
+     * Check that buffer contains header of MPEG audio frame: sync bits and valid version, layer, bitrate and sample rate
+     */
+    static boolean containsFrameHeader(ByteBuffer buffer) {
+        return indexOfFrameHeader(buffer) >= 0;
+    }
+
+    /**
+     * Find the first header of MPEG audio frame in buffer
+     *
+     * @return index of the header, {@code -1} if there is no header
+     * @see #containsFrameHeader(ByteBuffer)
+     */
+    static int indexOfFrameHeader(ByteBuffer buffer) {
+        for (int i = 0; i + FRAME_HEADER_LENGTH <= buffer.limit(); i++) {
+            if ((buffer.get(i) & 0xFF) != 0xFF) {
+                continue;
+            }
+            int versionAndLayer = buffer.get(i + 1) & 0xFF;
+            int bitrateAndSampleRate = buffer.get(i + 2) & 0xFF;
+            if ((versionAndLayer & 0xE0) == 0xE0
+                    && (versionAndLayer & 0x18) != 0x08
+                    && (versionAndLayer & 0x06) != 0
+                    && (bitrateAndSampleRate & 0xF0) != 0xF0
+                    && (bitrateAndSampleRate & 0x0C) != 0x0C) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(length, 0));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,270 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.Config;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writes ID3v2 tag to MP3 file without rewriting the whole file when possible.
+ * <p>
+ * If the new tag fits into the space of the existing ID3v2 tag (including its padding), only the tag region is
+ * overwritten and audio data stays in place. Otherwise, the file is rewritten once with the new tag followed by
+ * TAG_PADDING bytes of padding, so the next updates fit in place.
+ * <p>
+ * ID3v1 tag at the end of the file is removed in both cases.
+ * <p>
+ * {@link #writeTo(Path, AbstractID3v2Tag, Path)} writes the file with the new tag to another dir in one pass.
+ * <p>
+ * Methods that take {@link RawId3v24Tag} copy frames of the old tag without decoding them
+ *
+ * @see Config#TAG_PADDING
+ */
+public class Id3TagWriter {
+    private static final int HEADER_LENGTH = 10;
+    private static final int FOOTER_LENGTH = 10;
+    private static final int ID3V1_LENGTH = 128;
+
+    private final int padding;
+
+    public Id3TagWriter() {
+        this(Config.TAG_PADDING);
+    }
+
+    /**
+     * @param padding free space in bytes reserved when the file has to be rewritten
+     */
+    public Id3TagWriter(int padding) {
+        this.padding = padding;
+    }
+
+    /**
+     * Replace all tags of {@code mp3File} with {@code tag}
+     *
+     * @param mp3File path to MP3 file
+     * @param tag     new ID3v2 tag
+     * @return number of bytes written to disk
+     * @throws IOException if the file cannot be read or written
+     */
+    public long write(Path mp3File, AbstractID3v2Tag tag) throws IOException {
+        byte[] tagWithoutPadding = serialize(tag, 0);
+        long existingTagSize;
+        long audioEnd;
+
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            existingTagSize = readTagSize(channel);
+            audioEnd = Math.max(existingTagSize, hasId3v1Tag(channel) ? channel.size() - ID3V1_LENGTH : channel.size());
+
+            if (existingTagSize > 0 && existingTagSize <= Integer.MAX_VALUE && tagWithoutPadding.length <= existingTagSize) {
+                // Pad the new tag to the size of the old one, so audio data does not move
+                writeFully(channel, ByteBuffer.wrap(serialize(tag, (int) existingTagSize)), 0);
+                channel.truncate(audioEnd);
+                return existingTagSize;
+            }
+        }
+        // File is closed before it is replaced, otherwise replacing fails on Windows
+        byte[] paddedTag = serialize(tag, tagWithoutPadding.length + padding);
+        copyWithTag(mp3File, toTagWrite(paddedTag), existingTagSize, audioEnd, mp3File, true);
+        return paddedTag.length + audioEnd - existingTagSize;
+    }
+
+    /**
+     * Replace all tags of {@code mp3File} with {@code tag}, copying frames of the old tag from the file
+     *
+     * @param mp3File path to MP3 file the frames of {@code tag} were read from
+     * @param tag     new ID3v2.4 tag
+     * @return number of bytes written to disk
+     * @throws IOException if the file cannot be read or written, or its tag was changed after it was read
+     */
+    public long write(Path mp3File, RawId3v24Tag tag) throws IOException {
+        long existingTagSize;
+        long audioEnd;
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            existingTagSize = readTagSize(channel, tag, mp3File);
+            audioEnd = Math.max(existingTagSize, hasId3v1Tag(channel) ? channel.size() - ID3V1_LENGTH : channel.size());
+
+            if (existingTagSize > 0 && tag.size() <= existingTagSize) {
+                tag.write(channel, channel, existingTagSize);
+                channel.truncate(audioEnd);
+                return existingTagSize;
+            }
+        }
+        long paddedSize = tag.size() + padding;
+        copyWithTag(mp3File, (source, target) -> tag.write(source, target, paddedSize), existingTagSize, audioEnd,
+                mp3File, true);
+        return paddedSize + audioEnd - existingTagSize;
+    }
+
+    /**
+     * Write {@code tag} and audio data of {@code mp3File} to {@code targetFile} in one pass, copying frames
+     * of the old tag from {@code mp3File}. The source file is not changed
+     *
+     * @param mp3File    path to source MP3 file the frames of {@code tag} were read from
+     * @param tag        new ID3v2.4 tag
+     * @param targetFile path to new MP3 file
+     * @return number of bytes written to disk
+     * @throws FileAlreadyExistsException if {@code targetFile} exists
+     * @throws IOException                if the file cannot be read or written, or its tag was changed after it was read
+     * @see #writeTo(Path, AbstractID3v2Tag, Path)
+     */
+    public long writeTo(Path mp3File, RawId3v24Tag tag, Path targetFile) throws IOException {
+        long existingTagSize;
+        long audioEnd;
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            existingTagSize = readTagSize(channel, tag, mp3File);
+            audioEnd = Math.max(existingTagSize, hasId3v1Tag(channel) ? channel.size() - ID3V1_LENGTH : channel.size());
+        }
+        long paddedSize = tag.size() + padding;
+        copyWithTag(mp3File, (source, target) -> tag.write(source, target, paddedSize), existingTagSize, audioEnd, targetFile, false);
+        return paddedSize + audioEnd - existingTagSize;
+    }
+
+    /**
+     * Write {@code tag} and audio data of {@code mp3File} to {@code targetFile} in one pass.
+     * The source file is not changed.
+     * <p>
+     * Data is written to a hidden temporary file in the dir of {@code targetFile} that is renamed when it is complete,
+     * so an interrupted write does not leave a damaged MP3 file in the target dir. An existing file is never replaced,
+     * even if it is created by another process while the file is written
+     *
+     * @param mp3File    path to source MP3 file
+     * @param tag        new ID3v2 tag
+     * @param targetFile path to new MP3 file
+     * @return number of bytes written to disk
+     * @throws FileAlreadyExistsException if {@code targetFile} exists
+     * @throws IOException                if the file cannot be read or written
+     */
+    public long writeTo(Path mp3File, AbstractID3v2Tag tag, Path targetFile) throws IOException {
+        long existingTagSize;
+        long audioEnd;
+        try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ)) {
+            existingTagSize = readTagSize(channel);
+            audioEnd = Math.max(existingTagSize, hasId3v1Tag(channel) ? channel.size() - ID3V1_LENGTH : channel.size());
+        }
+        byte[] paddedTag = serialize(tag, serialize(tag, 0).length + padding);
+        copyWithTag(mp3File, toTagWrite(paddedTag), existingTagSize, audioEnd, targetFile, false);
+        return paddedTag.length + audioEnd - existingTagSize;
+    }
+
+    /**
+     * Write new tag and audio data to a temporary file and rename it to {@code targetFile}
+     *
+     * @param mp3File    path to MP3 file
+     * @param tag        writing of the new tag to the beginning of the temporary file
+     * @param audioStart position where audio data starts in the original file
+     * @param audioEnd   position where audio data ends in the original file
+     * @param targetFile path to file with the new tag, can be {@code mp3File}
+     * @param replace    {@code true} to replace {@code targetFile}, {@code false} to fail if it exists
+     * @throws FileAlreadyExistsException if {@code targetFile} exists and {@code replace} is {@code false}
+     */
+    private static void copyWithTag(Path mp3File, TagWrite tag, long audioStart, long audioEnd, Path targetFile,
+                                    boolean replace) throws IOException {
+        Path tempFile = Files.createTempFile(targetFile.toAbsolutePath().getParent(), ".mp3_editor_", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(mp3File, StandardOpenOption.READ);
+                 FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                tag.write(channel, tempChannel);
+                tempChannel.position(tempChannel.size());
+
+                long position = audioStart;
+                while (position < audioEnd) {
+                    position += channel.transferTo(position, audioEnd - position, tempChannel);
+                }
+                tempChannel.force(false);
+            }
+            if (replace) {
+                Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                FileMover.publish(tempFile, targetFile);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static TagWrite toTagWrite(byte[] tag) {
+        return (source, target) -> writeFully(target, ByteBuffer.wrap(tag), 0);
+    }
+
+    /**
+     * Read size of the tag and check that it is the tag the frames of {@code tag} were read from
+     */
+    private static long readTagSize(FileChannel channel, RawId3v24Tag tag, Path mp3File) throws IOException {
+        long tagSize = readTagSize(channel);
+        if (tagSize != tag.oldTagSize()) {
+            throw new IOException("Tag of \"%s\" was changed after it was read".formatted(mp3File.getFileName()));
+        }
+        return tagSize;
+    }
+
+    /**
+     * Serialize tag with header
+     *
+     * @param tag  tag to serialize
+     * @param size total size of the tag including padding; if the tag is bigger or size is {@code 0}, no padding is added
+     * @return bytes of the tag
+     */
+    private static byte[] serialize(AbstractID3v2Tag tag, int size) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        tag.write(stream, size);
+        return stream.toByteArray();
+    }
+
+    /**
+     * Read size of ID3v2 tag at the beginning of the file
+     *
+     * @param channel channel of MP3 file
+     * @return total size of the tag including header, padding and footer, {@code 0} if there is no tag
+     */
+    static long readTagSize(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (channel.read(header, 0) < HEADER_LENGTH) {
+            return 0;
+        }
+        byte[] bytes = header.array();
+        if (bytes[0] != 'I' || bytes[1] != 'D' || bytes[2] != '3' || (bytes[3] & 0xFF) == 0xFF) {
+            return 0;
+        }
+        long size = 0;
+        for (int i = 6; i < HEADER_LENGTH; i++) {
+            if ((bytes[i] & 0x80) != 0) {
+                return 0;
+            }
+            size = (size << 7) | bytes[i];
+        }
+        boolean hasFooter = bytes[3] == 4 && (bytes[5] & 0x10) != 0;
+        return Math.min(HEADER_LENGTH + size + (hasFooter ? FOOTER_LENGTH : 0), channel.size());
+    }
+
+    private static boolean hasId3v1Tag(FileChannel channel) throws IOException {
+        if (channel.size() < ID3V1_LENGTH) {
+            return false;
+        }
+        ByteBuffer marker = ByteBuffer.allocate(3);
+        channel.read(marker, channel.size() - ID3V1_LENGTH);
+        return new String(marker.array(), StandardCharsets.ISO_8859_1).equals("TAG");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writing of a tag to the beginning of a new file
+     */
+    @FunctionalInterface
+    private interface TagWrite {
+        /**
+         * @param source channel of the original MP3 file
+         * @param target channel of the new file
+         */
+        void write(FileChannel source, FileChannel target) throws IOException;
+    }
+}
@@ -1,14 +1,15 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
 import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.events.TagReadEvent;
+import com.github.Leo_Proger.events.TagWriteEvent;
 import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
-import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.exceptions.CannotReadException;
 import org.jaudiotagger.audio.exceptions.CannotWriteException;
 import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
 import org.jaudiotagger.audio.exceptions.ReadOnlyFileException;
 import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
 import org.jaudiotagger.tag.TagException;
 import org.jaudiotagger.tag.id3.ID3v24Tag;
 import org.jaudiotagger.tag.images.Artwork;
@@ -22,6 +23,21 @@ import static com.github.Leo_Proger.config.Config.ARTISTS_EXCLUSIONS;
 import static com.github.Leo_Proger.mp3_file_handlers.FileFormatter.isValidMp3Filename;
 
 public class MetadataFormatter {
+    private final Id3TagReader tagReader = new Id3TagReader();
+    private final Id3TagWriter tagWriter = new Id3TagWriter();
+    private final RunMetrics metrics;
+
+    public MetadataFormatter() {
+        this(new RunMetrics());
+    }
+
+    /**
+     * @param metrics metrics to record time of reading and writing tags to
+     */
+    public MetadataFormatter(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Add metadata (track title and artists) to MP3 file.
      * Formatting performs according to the following rules:
@@ -43,14 +59,90 @@ public class MetadataFormatter {
      * @see Config#ARTISTS_DELIMITER_IN_METADATA
      */
     public void run(Path mp3File, String filenameToParse) throws IOException, CannotReadException, TagException, InvalidAudioFrameException, ReadOnlyFileException, CannotWriteException, Mp3FileFormattingException {
+        write(mp3File, plan(filenameToParse));
+    }
+
+    /**
+     * Compute metadata from formatted filename. Files are not read or written
+     *
+     * @param filenameToParse Filename for metadata formatting
+     * @return Metadata to write
+     * @throws Mp3FileFormattingException If the filenameToParse does not match the pattern
+     * @see #run(Path, String)
+     */
+    public Metadata plan(String filenameToParse) throws Mp3FileFormattingException {
         validateFilename(filenameToParse);
 
-        AudioFile audioFile = AudioFileIO.read(mp3File.toFile());
         String[] parts = splitFilename(filenameToParse);
-        String formattedArtists = formatArtists(parts[0]);
-        String formattedTitle = formatTitle(parts[1]);
+        return new Metadata(formatArtists(parts[0]), formatTitle(parts[1]));
+    }
+
+    /**
+     * Replace tags of MP3 file with {@code metadata}, keeping frames of KEPT_FRAMES
+     *
+     * @param mp3File  Path to MP3 file
+     * @param metadata Metadata computed by {@link #plan(String)}
+     * @throws IOException                In case of input-output errors
+     * @throws TagException               In case of tag operations errors
+     * @throws InvalidAudioFrameException In case of incorrect audio frame
+     */
+    public void write(Path mp3File, Metadata metadata) throws IOException, TagException, InvalidAudioFrameException {
+        write(mp3File, readFrames(mp3File), metadata);
+    }
 
-        updateTags(audioFile, formattedArtists, formattedTitle);
+    /**
+     * Replace tags of MP3 file with {@code metadata}, keeping frames of the already read tag
+     *
+     * @param mp3File  Path to MP3 file
+     * @param oldTag   Frames read by {@link #readFrames(Path)}
+     * @param metadata Metadata computed by {@link #plan(String)}
+     * @throws IOException  In case of input-output errors
+     * @throws TagException In case of tag operations errors
+     */
+    public void write(Path mp3File, Id3TagReader.TagFrames oldTag, Metadata metadata) throws IOException, TagException {
+        updateTags(mp3File, oldTag, metadata.artist(), metadata.title(), null);
+    }
+
+    /**
+     * Write MP3 file with {@code metadata} and audio data of {@code mp3File} to {@code targetFile}.
+     * Frames of the already read tag are kept, {@code mp3File} is not changed
+     *
+     * @param mp3File    Path to source MP3 file
+     * @param oldTag     Frames read by {@link #readFrames(Path)}
+     * @param metadata   Metadata computed by {@link #plan(String)}
+     * @param targetFile Path to new MP3 file
+     * @throws IOException  In case of input-output errors or if {@code targetFile} exists
+     * @throws TagException In case of tag operations errors
+     * @see Id3TagWriter#writeTo(Path, org.jaudiotagger.tag.id3.AbstractID3v2Tag, Path)
+     */
+    public void writeTo(Path mp3File, Id3TagReader.TagFrames oldTag, Metadata metadata, Path targetFile) throws IOException, TagException {
+        updateTags(mp3File, oldTag, metadata.artist(), metadata.title(), targetFile);
+    }
+
+    /**
+     * Find frames of existing ID3v2 tag that are kept when the tag is replaced. Only headers of frames are read
+     *
+     * @param mp3File Path to MP3 file
+     * @return Kept frames and number of read bytes
+     * @throws IOException                In case of input-output errors
+     * @throws TagException               If the tag is damaged
+     * @throws InvalidAudioFrameException If the file has no audio frames
+     * @see Config#KEPT_FRAMES
+     */
+    public Id3TagReader.TagFrames readFrames(Path mp3File) throws IOException, TagException, InvalidAudioFrameException {
+        long startTime = System.nanoTime();
+        TagReadEvent event = new TagReadEvent();
+        event.begin();
+        Id3TagReader.TagFrames frames;
+        try {
+            frames = tagReader.readFrames(mp3File, Config.KEPT_FRAMES);
+        } catch (Exception e) {
+            event.finish(mp3File, e);
+            throw e;
+        }
+        event.finish(mp3File, null);
+        metrics.record(RunMetrics.Stage.TAG_READ, startTime, frames.bytesRead());
+        return frames;
     }
 
     /**
@@ -105,26 +197,58 @@ public class MetadataFormatter {
     }
 
     /**
-     * Update audio file's tags
+     * Update audio file's tags.
+     * <p>
+     * New tag has only title and artists, kept frames are copied from the old tag without decoding.
+     * Tags that cannot be copied by frames are decoded, and only their artwork and lyrics are kept
      *
-     * @param audioFile AudioFile object
-     * @param artist    Formatted artist string
-     * @param title     Formatted track title
+     * @param mp3File    Path to MP3 file
+     * @param oldTag     Kept frames of existing ID3v2 tag of the file
+     * @param artist     Formatted artist string
+     * @param title      Formatted track title
+     * @param targetFile Path to new file with new tag, {@code null} to change {@code mp3File}
      * @throws TagException In case of tag operations errors
+     * @throws IOException  If the file cannot be written to
+     * @see Id3TagWriter
      */
-    private void updateTags(AudioFile audioFile, String artist, String title) throws TagException, CannotWriteException, CannotReadException {
+    private void updateTags(Path mp3File, Id3TagReader.TagFrames oldTag, String artist, String title, Path targetFile) throws TagException, IOException {
+        if (oldTag.decodedTag() != null) {
+            updateDecodedTags(mp3File, oldTag.decodedTag(), artist, title, targetFile);
+            return;
+        }
+        RawId3v24Tag newTag = new RawId3v24Tag(oldTag);
+        newTag.addTextFrame("TIT2", title);
+        newTag.addTextFrame("TPE1", artist);
+
+        long startTime = System.nanoTime();
+        TagWriteEvent event = new TagWriteEvent();
+        event.begin();
+        long writtenBytes;
+        try {
+            writtenBytes = targetFile == null ? tagWriter.write(mp3File, newTag) : tagWriter.writeTo(mp3File, newTag, targetFile);
+        } catch (IOException e) {
+            event.finish(mp3File, e);
+            throw e;
+        }
+        event.finish(mp3File, null);
+        metrics.record(RunMetrics.Stage.TAG_WRITE, startTime, writtenBytes);
+    }
+
+    /**
+     * Update tags of audio file whose old tag was decoded
+     *
+     * @see #updateTags(Path, Id3TagReader.TagFrames, String, String, Path)
+     */
+    private void updateDecodedTags(Path mp3File, Tag oldTag, String artist, String title, Path targetFile) throws TagException, IOException {
         // Preserve artwork and lyrics from original file if available
         Artwork artwork = null;
-        if (audioFile.getTag() != null && audioFile.getTag().getFirstArtwork() != null) {
-            artwork = audioFile.getTag().getFirstArtwork();
+        if (oldTag != null && oldTag.getFirstArtwork() != null) {
+            artwork = oldTag.getFirstArtwork();
         }
         String lyrics = "";
-        if (audioFile.getTag() != null && audioFile.getTag().getFirstField(FieldKey.LYRICS) != null) {
-            lyrics = audioFile.getTag().getFirst(FieldKey.LYRICS);
+        if (oldTag != null && oldTag.getFirstField(FieldKey.LYRICS) != null) {
+            lyrics = oldTag.getFirst(FieldKey.LYRICS);
         }
-        // Delete other tags
-        audioFile.delete();
-
         // Create new ID3v24 tag and set appropriate fields
         ID3v24Tag newTag = new ID3v24Tag();
         newTag.setField(FieldKey.TITLE, title);
@@ -134,10 +258,27 @@ public class MetadataFormatter {
         if (artwork != null) {
             newTag.setField(artwork);
         }
-        // Set new tag
-        audioFile.setTag(newTag);
+        // Replace all tags with the new one, in place if it fits into the old tag
+        long startTime = System.nanoTime();
+        TagWriteEvent event = new TagWriteEvent();
+        event.begin();
+        long writtenBytes;
+        try {
+            writtenBytes = targetFile == null ? tagWriter.write(mp3File, newTag) : tagWriter.writeTo(mp3File, newTag, targetFile);
+        } catch (IOException e) {
+            event.finish(mp3File, e);
+            throw e;
+        }
+        event.finish(mp3File, null);
+        metrics.record(RunMetrics.Stage.TAG_WRITE, startTime, writtenBytes);
+    }
 
-        // Save changes
-        audioFile.commit();
+    /**
+     * Metadata of MP3 file computed from its filename
+     *
+     * @param artist Formatted artists
+     * @param title  Formatted track title
+     */
+    public record Metadata(String artist, String title) {
     }
 }
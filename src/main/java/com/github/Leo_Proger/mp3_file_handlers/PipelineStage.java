@@ -0,0 +1,23 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+/**
+ * Stages of {@link FilePipeline} in the order every file passes them
+ */
+public enum PipelineStage {
+    /**
+     * Formatting of filename and metadata. Only uses CPU
+     */
+    NORMALIZE,
+    /**
+     * Reading of existing tag from source disk
+     */
+    TAG_READ,
+    /**
+     * Writing of new tag to source disk
+     */
+    TAG_WRITE,
+    /**
+     * Renaming and moving to target dir
+     */
+    MOVE
+}
@@ -0,0 +1,52 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.CollisionPolicy;
+import com.github.Leo_Proger.config.Config;
+
+import java.util.Map;
+
+/**
+ * How {@link FileManager} processes files and puts them to target dir
+ *
+ * @param stages          threads and queues of processing stages, used if more than 1 file is processed at a time
+ * @param writeToTarget   {@code true} - formatted files that are moved are written directly to target dir
+ *                        and deleted from source dir
+ * @param checkDuplicates {@code true} - files are not moved if their audio data is already in target dir
+ * @param collisionPolicy what is done with a file if a file with the same name is in target dir
+ */
+public record ProcessingOptions(Map<PipelineStage, FilePipeline.StageSettings> stages, boolean writeToTarget,
+                                boolean checkDuplicates, CollisionPolicy collisionPolicy) {
+    /**
+     * Options set by environment variables
+     *
+     * @see Config#PIPELINE_STAGES
+     * @see Config#WRITE_TO_TARGET
+     * @see Config#DUPLICATE_CHECK
+     * @see Config#COLLISION_POLICY
+     */
+    public static ProcessingOptions fromConfig() {
+        return new ProcessingOptions(Config.PIPELINE_STAGES, Config.WRITE_TO_TARGET, Config.DUPLICATE_CHECK,
+                Config.COLLISION_POLICY);
+    }
+
+    /**
+     * Options where files are changed in source dir and moved, duplicates are not checked
+     * and collisions of names are errors
+     *
+     * @param threads number of threads of every processing stage
+     */
+    public static ProcessingOptions defaults(int threads) {
+        return new ProcessingOptions(FilePipeline.defaultStages(threads), false, false, CollisionPolicy.ERROR);
+    }
+
+    /**
+     * Options for {@link FileManager#runWorker(WorkerLeases)}: files are written directly to target dir,
+     * so they are never renamed in source dir that is shared by workers.
+     * Duplicates are not checked, because every worker would append to the same index file
+     *
+     * @return copy of these options
+     */
+    public ProcessingOptions forWorkers() {
+        return new ProcessingOptions(stages, true, false, collisionPolicy);
+    }
+}
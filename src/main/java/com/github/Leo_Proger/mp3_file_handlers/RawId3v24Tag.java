@@ -0,0 +1,154 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ID3v2.4 tag made of new text frames and frames of the old tag that are copied as they are.
+ * <p>
+ * Copied frames, e.g. artwork of several megabytes, are never decoded: their data is transferred from the old file
+ * by the file system. Copied frames are written first, so when the tag is written in place of the old tag,
+ * every frame moves only towards the beginning of the file and is not overwritten before it is copied.
+ * A tag written by this class has its copied frames at the beginning already, so they don't move at all
+ */
+public class RawId3v24Tag {
+    private static final int HEADER_LENGTH = 10;
+    private static final int FRAME_HEADER_LENGTH = 10;
+    private static final byte UTF_8_ENCODING = 3;
+
+    /**
+     * Maximum tag size that can be written in the header
+     */
+    private static final int MAX_SIZE = (1 << 28) - 1 + HEADER_LENGTH;
+
+    private static final int COPY_BUFFER_LENGTH = 64 * 1024;
+
+    private final long oldTagSize;
+    private final List<Id3TagReader.RawFrame> copiedFrames;
+    private final List<byte[]> newFrames = new ArrayList<>();
+
+    /**
+     * @param oldFrames frames of the old tag that are copied to this tag
+     */
+    public RawId3v24Tag(Id3TagReader.TagFrames oldFrames) {
+        this.oldTagSize = oldFrames.tagSize();
+        this.copiedFrames = oldFrames.frames();
+    }
+
+    /**
+     * Add text frame encoded in UTF-8
+     *
+     * @param id   frame id, e.g. "TIT2"
+     * @param text value of the frame
+     */
+    public void addTextFrame(String id, String text) {
+        byte[] value = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + 1 + value.length);
+        frame.put(id.getBytes(StandardCharsets.ISO_8859_1));
+        frame.putInt(toSynchsafe(1 + value.length));
+        frame.putShort((short) 0);
+        frame.put(UTF_8_ENCODING);
+        frame.put(value);
+        newFrames.add(frame.array());
+    }
+
+    /**
+     * @return size of the tag without padding
+     */
+    public long size() {
+        long size = HEADER_LENGTH;
+        for (Id3TagReader.RawFrame frame : copiedFrames) {
+            size += FRAME_HEADER_LENGTH + frame.bodySize();
+        }
+        for (byte[] frame : newFrames) {
+            size += frame.length;
+        }
+        return size;
+    }
+
+    /**
+     * @return size of the tag of the file the frames were read from
+     */
+    public long oldTagSize() {
+        return oldTagSize;
+    }
+
+    /**
+     * Write the tag to the beginning of {@code target}
+     *
+     * @param source    file the copied frames were read from, can be the same as {@code target}
+     * @param target    file to write the tag to
+     * @param totalSize size of the tag with padding, not less than {@link #size()}
+     * @throws IOException if the files cannot be read or written, or the tag is too big
+     */
+    public void write(FileChannel source, FileChannel target, long totalSize) throws IOException {
+        if (totalSize > MAX_SIZE) {
+            throw new IOException("Tag of %d bytes is too big".formatted(totalSize));
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(new byte[]{'I', 'D', '3', 4, 0, 0});
+        header.putInt(toSynchsafe((int) totalSize - HEADER_LENGTH));
+        long position = write(target, header.flip(), 0);
+
+        for (Id3TagReader.RawFrame frame : copiedFrames) {
+            ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+            frameHeader.put(frame.id().getBytes(StandardCharsets.ISO_8859_1));
+            frameHeader.putInt(toSynchsafe(frame.bodySize()));
+            frameHeader.putShort(frame.flags());
+            position = write(target, frameHeader.flip(), position);
+            position = copy(source, frame.bodyPosition(), target, position, frame.bodySize());
+        }
+        for (byte[] frame : newFrames) {
+            position = write(target, ByteBuffer.wrap(frame), position);
+        }
+        ByteBuffer padding = ByteBuffer.allocate((int) Math.min(COPY_BUFFER_LENGTH, totalSize - position));
+        while (position < totalSize) {
+            padding.clear().limit((int) Math.min(padding.capacity(), totalSize - position));
+            position = write(target, padding, position);
+        }
+    }
+
+    /**
+     * Copy data of a frame. Target position is never after source position in the same file
+     */
+    private static long copy(FileChannel source, long sourcePosition, FileChannel target, long targetPosition, long length) throws IOException {
+        if (source != target) {
+            long copied = 0;
+            target.position(targetPosition);
+            while (copied < length) {
+                copied += source.transferTo(sourcePosition + copied, length - copied, target);
+            }
+            return targetPosition + length;
+        }
+        if (sourcePosition == targetPosition) {
+            return targetPosition + length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(COPY_BUFFER_LENGTH, length));
+        for (long copied = 0; copied < length; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - copied));
+            while (buffer.hasRemaining()) {
+                if (source.read(buffer, sourcePosition + copied + buffer.position()) < 0) {
+                    throw new IOException("File ended before the end of its tag");
+                }
+            }
+            write(target, buffer.flip(), targetPosition + copied);
+            copied += buffer.limit();
+        }
+        return targetPosition + length;
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    private static int toSynchsafe(int size) {
+        return (size & 0x7F) | (size & 0x3F80) << 1 | (size & 0x1FC000) << 2 | (size & 0xFE00000) << 3;
+    }
+}
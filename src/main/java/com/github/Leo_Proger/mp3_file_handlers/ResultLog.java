@@ -0,0 +1,219 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.Leo_Proger.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of processed files, written to a JSON lines file as soon as every file is processed.
+ * <p>
+ * Only counters are kept in memory, so memory use doesn't depend on number of files in a run.
+ * The first {@link #CONSOLE_LINES} results of every outcome are also printed to the console,
+ * the rest are only logged at debug level, which goes to the log file
+ *
+ * @see Config#RESULTS_PATH
+ */
+public class ResultLog {
+    private static final Logger log = LoggerFactory.getLogger(ResultLog.class);
+
+    static final int CONSOLE_LINES = 100;
+
+    /**
+     * Number of different error messages that are counted separately, other errors are counted together
+     */
+    static final int MAX_ERROR_MESSAGES = 20;
+
+    private static final String OTHER_ERRORS = "Other errors";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Result of processing of one file
+     */
+    public enum Outcome {
+        /**
+         * File was formatted or moved
+         */
+        MODIFIED,
+        /**
+         * File was already formatted and was not moved
+         */
+        UNCHANGED,
+        /**
+         * File was formatted, but not moved to target dir
+         */
+        SKIPPED,
+        /**
+         * File could not be processed
+         */
+        ERROR
+    }
+
+    private final Path resultsFile;
+
+    /**
+     * {@code null} if the file cannot be written, then results are only logged
+     */
+    private final BufferedWriter writer;
+
+    private final Map<Outcome, AtomicLong> counts = new EnumMap<>(Outcome.class);
+    private final Map<String, LongAdder> errorsByMessage = new ConcurrentHashMap<>();
+
+    private ResultLog(Path resultsFile, BufferedWriter writer) {
+        this.resultsFile = resultsFile;
+        this.writer = writer;
+        for (Outcome outcome : Outcome.values()) {
+            counts.put(outcome, new AtomicLong());
+        }
+    }
+
+    /**
+     * Start results of a run
+     *
+     * @param resultsFile JSON lines file to write results to
+     * @param append      {@code true} to add results after results of previous runs in {@code resultsFile},
+     *                    e.g. for runs of a few files in watch mode, {@code false} to replace them
+     * @return started results
+     */
+    public static ResultLog open(Path resultsFile, boolean append) {
+        BufferedWriter writer = null;
+        try {
+            Files.createDirectories(resultsFile.toAbsolutePath().getParent());
+            writer = append
+                    ? Files.newBufferedWriter(resultsFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : Files.newBufferedWriter(resultsFile);
+        } catch (IOException e) {
+            log.warn("Unable to write results to \"{}\", they are only logged", resultsFile, e);
+        }
+        return new ResultLog(resultsFile, writer);
+    }
+
+    /**
+     * Write result of a processed file and print it
+     *
+     * @param outcome result of processing
+     * @param file    path to the file before processing
+     * @param newFile path to the file after processing, {@code null} if it failed
+     * @param message why the file was skipped or failed, {@code null} otherwise
+     */
+    public void add(Outcome outcome, Path file, Path newFile, String message) {
+        long number = counts.get(outcome).incrementAndGet();
+        boolean toConsole = number <= CONSOLE_LINES;
+        switch (outcome) {
+            case MODIFIED -> {
+                if (toConsole) {
+                    log.info("{}. \"{}\"", number, newFile.getFileName());
+                } else {
+                    log.debug("{}. \"{}\"", number, newFile.getFileName());
+                }
+            }
+            case SKIPPED -> {
+                if (toConsole) {
+                    log.warn("{}. {} - not moved: {}", number, file.getFileName(), message);
+                } else {
+                    log.debug("{}. {} - not moved: {}", number, file.getFileName(), message);
+                }
+            }
+            case ERROR -> {
+                countError(message);
+                if (toConsole) {
+                    log.error("{}. {} - {}", number, file.getFileName(), message);
+                } else {
+                    log.debug("{}. {} - {}", number, file.getFileName(), message);
+                }
+            }
+            case UNCHANGED -> {
+            }
+        }
+        write(new Entry(outcome, file.toString(), newFile == null ? null : newFile.toString(), message));
+    }
+
+    /**
+     * @param outcome result of processing
+     * @return number of files with this result
+     */
+    public long count(Outcome outcome) {
+        return counts.get(outcome).get();
+    }
+
+    /**
+     * Finish writing results and print numbers of files by result and most common errors
+     */
+    public void close() {
+        if (writer != null) {
+            synchronized (this) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.warn("Unable to write results to \"{}\"", resultsFile, e);
+                }
+            }
+        }
+
+        List<Map.Entry<String, LongAdder>> errors = new ArrayList<>(errorsByMessage.entrySet());
+        errors.sort(Map.Entry.comparingByValue((first, second) -> Long.compare(second.sum(), first.sum())));
+        for (Map.Entry<String, LongAdder> error : errors) {
+            log.error("{} files - {}", error.getValue().sum(), error.getKey());
+        }
+        log.info("Modified files: {}", count(Outcome.MODIFIED));
+        if (count(Outcome.SKIPPED) > 0) {
+            log.info("Not moved files: {}", count(Outcome.SKIPPED));
+        }
+        if (count(Outcome.UNCHANGED) > 0) {
+            log.info("Already formatted files: {}", count(Outcome.UNCHANGED));
+        }
+        log.info("Error files: {}", count(Outcome.ERROR));
+        if (writer != null && counts.values().stream().anyMatch(count -> count.get() > CONSOLE_LINES)) {
+            log.info("Results of all files are written to \"{}\"", resultsFile);
+        }
+    }
+
+    private void countError(String message) {
+        String key = message == null ? OTHER_ERRORS : message;
+        LongAdder count = errorsByMessage.get(key);
+        if (count == null) {
+            // Messages can contain details of every file, so their number is limited
+            count = errorsByMessage.size() < MAX_ERROR_MESSAGES
+                    ? errorsByMessage.computeIfAbsent(key, k -> new LongAdder())
+                    : errorsByMessage.computeIfAbsent(OTHER_ERRORS, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    private synchronized void write(Entry entry) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(objectMapper.writeValueAsString(entry));
+            writer.newLine();
+        } catch (IOException e) {
+            log.warn("Unable to write result of \"{}\" to \"{}\"", entry.file(), resultsFile, e);
+        }
+    }
+
+    /**
+     * Line of the results file
+     *
+     * @param outcome result of processing
+     * @param file    path to the file before processing
+     * @param newFile path to the file after processing
+     * @param message why the file was skipped or failed
+     */
+    public record Entry(Outcome outcome, String file, String newFile, String message) {
+    }
+}
@@ -0,0 +1,414 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal of finished operations with files of a run, kept in source dir until the run is finished.
+ * <p>
+ * If the program is killed, the next run reads the journal and continues where the killed run stopped:
+ * files whose tags were written are only renamed and moved, renamed files are treated as formatted, and source files
+ * that were already written to target dir are deleted. A file is trusted only if its size and modification time
+ * are the same as when its operation was recorded.
+ * <p>
+ * Records of finished operations are committed in groups: they are written and flushed to disk by one call when
+ * {@link #GROUP_SIZE} records are collected or every {@link #COMMIT_INTERVAL_MS}. All operations can be repeated safely,
+ * so records lost with the last group only mean that some work is done again.
+ * <p>
+ * Operations that take a name in target dir are recorded with the resolved target path before they start.
+ * If the program is killed before the operation is recorded as finished, the next run checks whether the target path
+ * exists, instead of processing the file again and taking another name for it. Such a record can be lost with
+ * the last group too, so after a killed run a file whose target name is taken by the same audio is only deleted
+ * from source dir
+ *
+ * @see #isInterrupted()
+ */
+public class RunJournal {
+    public static final String JOURNAL_FILENAME = ".mp3_editor_journal";
+
+    private static final Logger log = LoggerFactory.getLogger(RunJournal.class);
+
+    static final int GROUP_SIZE = 512;
+    static final long COMMIT_INTERVAL_MS = 100;
+
+    private static final String UNKNOWN = "-";
+
+    /**
+     * Operations with files
+     */
+    public enum Operation {
+        /**
+         * New tag is written to the file in source dir
+         */
+        TAGGED,
+        /**
+         * File is renamed in source dir
+         */
+        RENAMED,
+        /**
+         * Formatted copy of the file is written to target dir, source file is not deleted yet
+         */
+        WRITTEN,
+        /**
+         * File is moved to target dir, or its source is deleted after it was written to target dir
+         */
+        MOVED,
+        /**
+         * Formatted copy of the file is about to be written to target dir
+         */
+        WRITING,
+        /**
+         * File is about to be moved to target dir
+         */
+        MOVING
+    }
+
+    private final Path journalFile;
+    private final boolean interrupted;
+
+    /**
+     * State of files left by a killed run. Key is current path of the file
+     */
+    private final Map<Path, FileState> recovered;
+
+    private final FileChannel channel;
+    private final ScheduledExecutorService committer;
+
+    private final Object commitLock = new Object();
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    private boolean failed;
+
+    private RunJournal(Path journalFile, boolean interrupted, Map<Path, FileState> recovered, FileChannel channel) {
+        this.journalFile = journalFile;
+        this.interrupted = interrupted;
+        this.recovered = recovered;
+        this.channel = channel;
+        if (channel == null) {
+            committer = null;
+            return;
+        }
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_MS, COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read journal left in {@code dir} by a killed run and start a new journal that contains its unfinished files
+     *
+     * @param dir source dir
+     * @return journal of the new run
+     * @throws IOException if the journal cannot be written
+     */
+    public static RunJournal open(Path dir) throws IOException {
+        Path journalFile = dir.resolve(JOURNAL_FILENAME);
+        boolean interrupted = Files.exists(journalFile);
+        Map<Path, FileState> recovered = interrupted ? resolveIntents(read(journalFile)) : new HashMap<>();
+        if (!recovered.isEmpty()) {
+            log.info("Run was interrupted, {} files are continued from \"{}\"", recovered.size(), journalFile);
+        }
+
+        // Only unfinished files are kept, so the journal doesn't grow with every interrupted run
+        StringBuilder lines = new StringBuilder();
+        recovered.forEach((file, state) -> lines.append(state.toLine(file)));
+        Path tempFile = Files.createTempFile(journalFile.toAbsolutePath().getParent(), JOURNAL_FILENAME + ".", ".tmp");
+        try {
+            Files.writeString(tempFile, lines);
+            Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new RunJournal(journalFile, interrupted, recovered, channel);
+    }
+
+    /**
+     * @return journal that records nothing, e.g. when several workers share source dir
+     */
+    public static RunJournal disabled() {
+        return new RunJournal(null, false, Map.of(), null);
+    }
+
+    /**
+     * Record finished operation
+     *
+     * @param operation  finished operation
+     * @param file       path of the file before the operation
+     * @param newFile    path of the file after the operation, {@code null} for {@link Operation#TAGGED}
+     * @param attributes attributes of the file after {@link Operation#TAGGED}, {@code null} for other finished operations
+     */
+    public void record(Operation operation, Path file, Path newFile, BasicFileAttributes attributes) {
+        if (channel == null) {
+            return;
+        }
+        String line = TabSeparatedLine.join(operation.name(), toKey(file).toString(),
+                newFile == null ? UNKNOWN : toKey(newFile).toString(),
+                attributes == null ? UNKNOWN : String.valueOf(attributes.size()),
+                attributes == null ? UNKNOWN : String.valueOf(attributes.lastModifiedTime().toMillis())) + "\n";
+        boolean full;
+        synchronized (this) {
+            pending.append(line);
+            full = ++pendingRecords >= GROUP_SIZE;
+        }
+        if (full) {
+            commit();
+        }
+    }
+
+    /**
+     * Record operation that is about to start. It is committed in a group like finished operations
+     *
+     * @param operation {@link Operation#WRITING} or {@link Operation#MOVING}
+     * @param file      path of the file before the operation
+     * @param newFile   path of the file after the operation
+     * @throws IOException if attributes of the file cannot be read
+     */
+    public void recordIntent(Operation operation, Path file, Path newFile) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        record(operation, file, newFile, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    /**
+     * @return {@code true} if a killed run left its journal, also if none of its records were committed
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * Check that a killed run wrote the new tag of {@code file}, and the file was not changed since
+     *
+     * @param file path to MP3 file in source dir
+     * @return {@code true} if the tag must not be written again
+     */
+    public boolean isTagged(Path file) throws IOException {
+        FileState state = recovered.get(toKey(file));
+        return state != null && state.operation == Operation.TAGGED && state.matches(file);
+    }
+
+    /**
+     * Files renamed by a killed run and not changed since. They are formatted, but were not moved
+     *
+     * @return current paths of the files
+     */
+    public List<Path> getRenamedFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Map.Entry<Path, FileState> entry : recovered.entrySet()) {
+            if (entry.getValue().operation == Operation.RENAMED && entry.getValue().matches(entry.getKey())) {
+                files.add(entry.getKey());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Delete source files that a killed run wrote to target dir but did not delete
+     */
+    public void deleteWrittenSources() {
+        recovered.forEach((file, state) -> {
+            if (state.operation != Operation.WRITTEN || !Files.exists(state.newFile)) {
+                return;
+            }
+            try {
+                if (Files.deleteIfExists(file)) {
+                    record(Operation.MOVED, file, state.newFile, null);
+                }
+            } catch (IOException e) {
+                log.warn("Unable to delete \"{}\" that is already in target dir", file, e);
+            }
+        });
+    }
+
+    /**
+     * Write and flush collected records to disk
+     */
+    public void commit() {
+        synchronized (commitLock) {
+            String lines;
+            synchronized (this) {
+                if (pendingRecords == 0) {
+                    return;
+                }
+                lines = pending.toString();
+                pending.setLength(0);
+                pendingRecords = 0;
+            }
+            try {
+                ByteBuffer data = StandardCharsets.UTF_8.encode(lines);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Processing continues, only resuming after a crash is affected
+                if (!failed) {
+                    log.warn("Unable to write journal \"{}\"", journalFile, e);
+                }
+                failed = true;
+            }
+        }
+    }
+
+    /**
+     * Finish the run: the journal is deleted, because all finished operations are saved elsewhere,
+     * e.g. in the manifest
+     */
+    public void finish() {
+        if (channel == null) {
+            return;
+        }
+        committer.shutdownNow();
+        try {
+            channel.close();
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            log.warn("Unable to delete journal \"{}\"", journalFile, e);
+        }
+    }
+
+    /**
+     * Read records in their order. Damaged lines, e.g. the last one if the program was killed while writing it,
+     * are skipped
+     */
+    private static Map<Path, FileState> read(Path journalFile) throws IOException {
+        Map<Path, FileState> states = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(journalFile)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    String[] fields = TabSeparatedLine.split(line);
+                    if (fields.length != 5) {
+                        continue;
+                    }
+                    apply(states, Operation.valueOf(fields[0]), Path.of(fields[1]),
+                            fields[2].equals(UNKNOWN) ? null : Path.of(fields[2]),
+                            fields[3].equals(UNKNOWN) ? -1 : Long.parseLong(fields[3]),
+                            fields[4].equals(UNKNOWN) ? -1 : Long.parseLong(fields[4]));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Damaged line in \"{}\" is skipped: {}", journalFile, line);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static void apply(Map<Path, FileState> states, Operation operation, Path file, Path newFile, long size, long lastModified) {
+        FileState previous = states.remove(file);
+        switch (operation) {
+            case TAGGED -> states.put(file, new FileState(Operation.TAGGED, null, size, lastModified));
+            case RENAMED -> {
+                // Renaming doesn't change size and modification time of a tagged file
+                if (size >= 0) {
+                    states.put(newFile, new FileState(Operation.RENAMED, null, size, lastModified));
+                } else if (previous != null && previous.operation == Operation.TAGGED) {
+                    states.put(newFile, new FileState(Operation.RENAMED, null, previous.size, previous.lastModified));
+                }
+            }
+            case WRITTEN -> states.put(file, new FileState(Operation.WRITTEN, newFile, -1, -1));
+            case MOVED -> {
+            }
+            case WRITING, MOVING -> states.put(file, new FileState(operation, newFile, size, lastModified));
+        }
+    }
+
+    /**
+     * Find out how far operations that were started but not recorded as finished got, by their new paths.
+     * A file is trusted only if it was not changed since the operation was recorded
+     *
+     * @param states recorded states of files
+     * @return states without started operations
+     */
+    private static Map<Path, FileState> resolveIntents(Map<Path, FileState> states) throws IOException {
+        Map<Path, FileState> resolved = new LinkedHashMap<>();
+        for (Map.Entry<Path, FileState> entry : states.entrySet()) {
+            Path file = entry.getKey();
+            FileState state = entry.getValue();
+            switch (state.operation) {
+                case TAGGED, RENAMED, WRITTEN, MOVED -> resolved.put(file, state);
+                case WRITING, MOVING -> {
+                    if (!state.matches(file)) {
+                        // Source was deleted after it was put to target dir, or it was changed
+                        continue;
+                    }
+                    if (isCopy(file, state.newFile)) {
+                        // Only the source is left to delete
+                        resolved.put(file, new FileState(Operation.WRITTEN, state.newFile, -1, -1));
+                    } else if (state.operation == Operation.MOVING) {
+                        // Files are moved after they are tagged in source dir, they are moved again without renaming
+                        resolved.put(file, new FileState(Operation.TAGGED, null, state.size, state.lastModified));
+                    }
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Check that {@code targetFile} was put to target dir from {@code file} and not by another process
+     * that took its name
+     */
+    static boolean isCopy(Path file, Path targetFile) {
+        if (!Files.exists(targetFile)) {
+            return false;
+        }
+        try {
+            return DuplicateIndex.audioChecksum(file) == DuplicateIndex.audioChecksum(targetFile);
+        } catch (IOException e) {
+            log.debug("Unable to compare \"{}\" with \"{}\"", file, targetFile, e);
+            return false;
+        }
+    }
+
+    private static Path toKey(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Last recorded operation with a file
+     *
+     * @param newFile      path in target dir for {@link Operation#WRITTEN} and started operations
+     * @param size         size of the file after the operation, or before a started operation, {@code -1} if not recorded
+     * @param lastModified modification time after the operation, or before a started operation, in milliseconds,
+     *                     {@code -1} if not recorded
+     */
+    private record FileState(Operation operation, Path newFile, long size, long lastModified) {
+        boolean matches(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        }
+
+        String toLine(Path file) {
+            // Renamed file is written as renamed to itself, with its size and modification time
+            Path recordedNewFile = operation == Operation.RENAMED ? file : newFile;
+            return TabSeparatedLine.join(operation.name(), file.toString(),
+                    recordedNewFile == null ? UNKNOWN : recordedNewFile.toString(),
+                    size < 0 ? UNKNOWN : String.valueOf(size),
+                    lastModified < 0 ? UNKNOWN : String.valueOf(lastModified)) + "\n";
+        }
+    }
+}
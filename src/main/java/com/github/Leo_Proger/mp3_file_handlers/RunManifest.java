@@ -0,0 +1,192 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.Leo_Proger.config.Config;
+import com.github.Leo_Proger.utils.JsonManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent list of files that were formatted by a previous run but are still in the source dir
+ * (moving was disabled or failed).
+ * <p>
+ * A file is considered already formatted if its size, modification time and the version of formatting rules
+ * are the same as when it was formatted. Such files don't need to be read and formatted again.
+ * <p>
+ * Entries of files processed by the current run are replaced. Entries of other files are kept while the files exist,
+ * so runs of only a few files, e.g. in watch mode, don't drop entries of the rest of the dir.
+ * Such runs can keep using the manifest after it is saved, and it is written only when its entries changed
+ *
+ * @see Config#CONFIG_VERSION
+ */
+public class RunManifest {
+    public static final String MANIFEST_FILENAME = ".mp3_editor_manifest.json";
+
+    private static final Logger log = LoggerFactory.getLogger(RunManifest.class);
+
+    private final Path manifestFile;
+    private final String configVersion;
+
+    /**
+     * Entries loaded from the manifest file. Key is absolute path to file
+     */
+    private final Map<String, Entry> previousEntries;
+
+    /**
+     * Entries that will be saved. Key is absolute path to file
+     */
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Files checked, recorded or removed during this run. Key is absolute path to file
+     */
+    private final Set<String> processedFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Entries were added or removed since the manifest was loaded or saved
+     */
+    private volatile boolean changed;
+
+    private RunManifest(Path manifestFile, String configVersion, Map<String, Entry> previousEntries) {
+        this.manifestFile = manifestFile;
+        this.configVersion = configVersion;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Load manifest of {@code dir}. If manifest cannot be read, an empty one is returned
+     *
+     * @param dir           dir with MP3 files
+     * @param configVersion version of formatting rules
+     * @return loaded manifest
+     */
+    public static RunManifest load(Path dir, String configVersion) {
+        Path manifestFile = dir.resolve(MANIFEST_FILENAME);
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.exists(manifestFile)) {
+            try {
+                entries = JsonManager.loadDataFromJson(manifestFile, new TypeReference<>() {
+                });
+            } catch (IOException e) {
+                log.warn("Failed to read manifest \"{}\", all files will be processed", manifestFile, e);
+            }
+        }
+        return new RunManifest(manifestFile, configVersion, entries);
+    }
+
+    /**
+     * Check that file was formatted by a previous run with the same formatting rules and was not changed since.
+     * Such file stays in the manifest
+     *
+     * @param file path to MP3 file
+     * @return {@code true} if file is already in its final form
+     */
+    public boolean isFormatted(Path file) throws IOException {
+        String key = toKey(file);
+        processedFiles.add(key);
+        Entry previous = previousEntries.get(key);
+        if (previous == null || !previous.equals(createEntry(file))) {
+            return false;
+        }
+        currentEntries.put(key, previous);
+        return true;
+    }
+
+    /**
+     * Record that file is in its final form
+     *
+     * @param file path to formatted MP3 file
+     */
+    public void markFormatted(Path file) throws IOException {
+        String key = toKey(file);
+        processedFiles.add(key);
+        currentEntries.put(key, createEntry(file));
+        changed = true;
+    }
+
+    /**
+     * Treat file as formatted by a previous run, e.g. when the run was killed before the manifest was saved
+     *
+     * @param file path to formatted MP3 file
+     * @see RunJournal
+     */
+    public void restore(Path file) throws IOException {
+        previousEntries.put(toKey(file), createEntry(file));
+        changed = true;
+    }
+
+    /**
+     * Remove file from the manifest, e.g. when it is moved out of the source dir
+     *
+     * @param file path to MP3 file
+     */
+    public void remove(Path file) {
+        String key = toKey(file);
+        processedFiles.add(key);
+        if (currentEntries.remove(key) != null || previousEntries.containsKey(key)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Write entries recorded during this run and entries of existing files that were not processed to the manifest file.
+     * Nothing is written if no entry changed. The saved entries become entries of previous runs,
+     * so the manifest can be used by the next run without loading it again
+     */
+    public void save() {
+        if (!changed) {
+            // Entries of checked files are entries of previous runs already
+            currentEntries.clear();
+            processedFiles.clear();
+            return;
+        }
+        Map<String, Entry> entries = new HashMap<>(currentEntries);
+        previousEntries.forEach((key, entry) -> {
+            if (!processedFiles.contains(key) && Files.exists(Path.of(key))) {
+                entries.putIfAbsent(key, entry);
+            }
+        });
+        try {
+            if (entries.isEmpty()) {
+                Files.deleteIfExists(manifestFile);
+            } else {
+                JsonManager.writeObjectToJson(entries, manifestFile);
+            }
+        } catch (IOException e) {
+            log.error("Failed to write manifest \"{}\"", manifestFile, e);
+        }
+        previousEntries.clear();
+        previousEntries.putAll(entries);
+        currentEntries.clear();
+        processedFiles.clear();
+        changed = false;
+    }
+
+    private Entry createEntry(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), configVersion);
+    }
+
+    private static String toKey(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * State of formatted file
+     *
+     * @param size          size of file in bytes
+     * @param lastModified  modification time in milliseconds
+     * @param configVersion version of formatting rules the file was formatted with
+     */
+    public record Entry(long size, long lastModified, String configVersion) {
+    }
+}
@@ -0,0 +1,347 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.utils.JsonManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and throughput of a run, collected by all processing threads at the same time.
+ * <p>
+ * Recording is cheap: a few {@link LongAdder} increments and no allocations, so it is always on.
+ * Latencies are kept in histograms with power-of-two buckets (1 ns, 2 ns, 4 ns, ...), so percentiles in the report
+ * are upper bounds of their buckets.
+ * <p>
+ * The report is a JSON file, see {@link #writeReport(Path)}
+ */
+public class RunMetrics {
+    /**
+     * Steps of file processing that are measured
+     */
+    public enum Stage {
+        /**
+         * Listing of one dir
+         */
+        SCAN,
+        /**
+         * Formatting of filename
+         */
+        FILENAME_RULES,
+        /**
+         * Reading of tags. Bytes are bytes read from disk: the tag and the beginning of audio data
+         */
+        TAG_READ,
+        /**
+         * Writing of new tag. Bytes are bytes written to disk
+         */
+        TAG_WRITE,
+        RENAME,
+        /**
+         * Moving to target dir. Bytes are sizes of moved files
+         */
+        MOVE
+    }
+
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+
+    private final LongAdder modifiedFiles = new LongAdder();
+    private final LongAdder unchangedFiles = new LongAdder();
+    private final LongAdder errorFiles = new LongAdder();
+
+    /**
+     * Key is category of error (name of exception class)
+     */
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Key is name of queue, e.g. stage of {@link FilePipeline}
+     */
+    private final Map<String, QueueMetrics> queues = new ConcurrentHashMap<>();
+
+    public RunMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+    }
+
+    /**
+     * Record that a stage is finished
+     *
+     * @param stage      finished stage
+     * @param startNanos time when the stage started, from {@link System#nanoTime()}
+     * @param bytes      bytes processed by the stage, {@code 0} if not applicable
+     */
+    public void record(Stage stage, long startNanos, long bytes) {
+        stages.get(stage).record(System.nanoTime() - startNanos, bytes);
+    }
+
+    public void recordModified() {
+        modifiedFiles.increment();
+    }
+
+    public void recordUnchanged() {
+        unchangedFiles.increment();
+    }
+
+    /**
+     * Record that a file could not be processed
+     *
+     * @param category category of error, e.g. name of exception class
+     */
+    public void recordError(String category) {
+        errorFiles.increment();
+        errors.computeIfAbsent(category, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Record depth of a queue after an item was added to it. A queue that is often full shows the slowest stage
+     *
+     * @param queue    name of queue
+     * @param depth    number of items in the queue
+     * @param capacity maximum number of items in the queue
+     */
+    public void recordQueueDepth(String queue, int depth, int capacity) {
+        queues.computeIfAbsent(queue, key -> new QueueMetrics(capacity)).record(depth);
+    }
+
+    /**
+     * Create report of the run so far. Can be called while files are being processed
+     *
+     * @return report that can be written as JSON
+     */
+    public Map<String, Object> createReport() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long processedFiles = modifiedFiles.sum() + unchangedFiles.sum() + errorFiles.sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startTime", startTime.toString());
+        report.put("durationSeconds", seconds);
+        report.put("processedFiles", processedFiles);
+        report.put("modifiedFiles", modifiedFiles.sum());
+        report.put("unchangedFiles", unchangedFiles.sum());
+        report.put("errorFiles", errorFiles.sum());
+        report.put("filesPerSecond", seconds > 0 ? processedFiles / seconds : 0);
+        report.put("bytesRead", stages.get(Stage.TAG_READ).bytes.sum());
+        report.put("bytesWritten", stages.get(Stage.TAG_WRITE).bytes.sum());
+        report.put("bytesMoved", stages.get(Stage.MOVE).bytes.sum());
+
+        Map<String, Object> stageReports = new LinkedHashMap<>();
+        stages.forEach((stage, metrics) -> stageReports.put(stage.name(), metrics.createReport()));
+        report.put("stages", stageReports);
+
+        Map<String, Long> errorReport = new LinkedHashMap<>();
+        errors.forEach((category, count) -> errorReport.put(category, count.sum()));
+        report.put("errors", errorReport);
+
+        Map<String, Object> queueReports = new LinkedHashMap<>();
+        queues.forEach((queue, metrics) -> queueReports.put(queue, metrics.createReport()));
+        report.put("queues", queueReports);
+        return report;
+    }
+
+    /**
+     * Write report of the run so far to JSON file
+     *
+     * @param file path to JSON file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeReport(Path file) throws IOException {
+        JsonManager.writeObjectToJson(createReport(), file);
+    }
+
+    /**
+     * Merge reports of workers that processed the same source dir at the same time into one summary.
+     * <p>
+     * Counters and histograms are added up, percentiles are computed again from merged histograms.
+     * Duration is the time from the start of the first worker to the end of the last one.
+     * Queues are not merged, because they depend on settings of every worker
+     *
+     * @param reports reports created by {@link #createReport()}, e.g. read from JSON files
+     * @return merged report
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> mergeReports(List<Map<String, Object>> reports) {
+        Instant start = null;
+        Instant end = null;
+        Map<String, Long> totals = new LinkedHashMap<>();
+        Map<String, Long> errors = new LinkedHashMap<>();
+        Map<String, StageMetrics> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage.name(), new StageMetrics());
+        }
+
+        for (Map<String, Object> report : reports) {
+            Instant workerStart = Instant.parse((String) report.get("startTime"));
+            Instant workerEnd = workerStart.plusNanos((long) (((Number) report.get("durationSeconds")).doubleValue() * 1e9));
+            start = start == null || workerStart.isBefore(start) ? workerStart : start;
+            end = end == null || workerEnd.isAfter(end) ? workerEnd : end;
+            for (String counter : List.of("processedFiles", "modifiedFiles", "unchangedFiles", "errorFiles",
+                    "bytesRead", "bytesWritten", "bytesMoved")) {
+                totals.merge(counter, ((Number) report.getOrDefault(counter, 0)).longValue(), Long::sum);
+            }
+            ((Map<String, Number>) report.getOrDefault("errors", Map.of()))
+                    .forEach((category, count) -> errors.merge(category, count.longValue(), Long::sum));
+            ((Map<String, Map<String, Object>>) report.getOrDefault("stages", Map.of()))
+                    .forEach((stage, stageReport) -> stages.computeIfAbsent(stage, key -> new StageMetrics()).add(stageReport));
+        }
+
+        double seconds = start == null ? 0 : Duration.between(start, end).toNanos() / 1e9;
+        Map<String, Object> merged = new LinkedHashMap<>();
+        merged.put("startTime", start == null ? null : start.toString());
+        merged.put("durationSeconds", seconds);
+        merged.put("workers", reports.size());
+        merged.putAll(totals);
+        long processedFiles = totals.getOrDefault("processedFiles", 0L);
+        merged.put("filesPerSecond", seconds > 0 ? processedFiles / seconds : 0);
+
+        Map<String, Object> stageReports = new LinkedHashMap<>();
+        stages.forEach((stage, metrics) -> stageReports.put(stage, metrics.createReport()));
+        merged.put("stages", stageReports);
+        merged.put("errors", errors);
+        return merged;
+    }
+
+    /**
+     * Depth of one bounded queue
+     */
+    private static class QueueMetrics {
+        private final int capacity;
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+        private final LongAdder additions = new LongAdder();
+        private final LongAdder totalDepth = new LongAdder();
+        /**
+         * Number of additions after which the queue was full
+         */
+        private final LongAdder fullCount = new LongAdder();
+
+        QueueMetrics(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void record(int depth) {
+            maxDepth.accumulate(depth);
+            additions.increment();
+            totalDepth.add(depth);
+            if (depth >= capacity) {
+                fullCount.increment();
+            }
+        }
+
+        Map<String, Object> createReport() {
+            long count = additions.sum();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("capacity", capacity);
+            report.put("maxDepth", maxDepth.get());
+            report.put("meanDepth", count > 0 ? (double) totalDepth.sum() / count : 0);
+            report.put("fullCount", fullCount.sum());
+            return report;
+        }
+    }
+
+    /**
+     * Latency histogram and counters of one stage
+     */
+    private static class StageMetrics {
+        /**
+         * Bucket {@code i} counts durations from {@code 2^(i-1)} to {@code 2^i - 1} nanoseconds
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder bytes = new LongAdder();
+
+        void record(long nanos, long processedBytes) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (processedBytes > 0) {
+                bytes.add(processedBytes);
+            }
+        }
+
+        /**
+         * Add counters and histogram of a stage from another report
+         *
+         * @param report report of the stage created by {@link #createReport()}
+         */
+        @SuppressWarnings("unchecked")
+        void add(Map<String, Object> report) {
+            count.add(((Number) report.get("count")).longValue());
+            totalNanos.add(TimeUnit.MILLISECONDS.toNanos(((Number) report.get("totalMillis")).longValue()));
+            maxNanos.accumulate((long) (((Number) report.get("maxMicros")).doubleValue() * 1000));
+            bytes.add(((Number) report.get("bytes")).longValue());
+            ((Map<String, Number>) report.get("histogramMicros")).forEach((bound, bucketCount) -> {
+                // Key is "<" and upper bound of bucket 2^i nanoseconds in microseconds
+                long upperBoundNanos = Math.round(Double.parseDouble(bound.substring(1)) * 1000);
+                buckets.addAndGet(Long.numberOfTrailingZeros(upperBoundNanos), bucketCount.longValue());
+            });
+        }
+
+        Map<String, Object> createReport() {
+            long[] snapshot = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("count", count.sum());
+            report.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()));
+            report.put("meanMicros", total > 0 ? totalNanos.sum() / total / 1000.0 : 0);
+            double maxMicros = maxNanos.get() / 1000.0;
+            // Upper bound of the last bucket can be bigger than the real maximum
+            report.put("p50Micros", Math.min(percentileMicros(snapshot, total, 0.5), maxMicros));
+            report.put("p90Micros", Math.min(percentileMicros(snapshot, total, 0.9), maxMicros));
+            report.put("p99Micros", Math.min(percentileMicros(snapshot, total, 0.99), maxMicros));
+            report.put("maxMicros", maxMicros);
+            report.put("bytes", bytes.sum());
+
+            // Only non-empty buckets, key is upper bound of bucket in microseconds
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < snapshot.length; i++) {
+                if (snapshot[i] > 0) {
+                    histogram.put("<" + upperBoundMicros(i), snapshot[i]);
+                }
+            }
+            report.put("histogramMicros", histogram);
+            return report;
+        }
+
+        private static double percentileMicros(long[] snapshot, long total, double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBoundMicros(i);
+                }
+            }
+            return upperBoundMicros(snapshot.length - 1);
+        }
+
+        private static double upperBoundMicros(int bucket) {
+            return Math.scalb(1.0, bucket) / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.Leo_Proger.utils.JsonManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Result of planning a run: what will be done with every file in the source dir, computed without changing any file.
+ * <p>
+ * Plan is written to a JSON file, so it can be reviewed and then executed by {@link FileManager#apply(Path)}.
+ * A planned file is applied only if its size and modification time are the same as when it was planned
+ *
+ * @param configVersion version of formatting rules the plan was created with
+ * @param createdAt     time when the plan was created
+ * @param targetDir     dir to move formatted files to
+ * @param entries       planned files in order of listing
+ * @param newArtists    artists that are not in CORRECT_ARTISTS_NAMES, in order of their appearance
+ */
+public record RunPlan(String configVersion, String createdAt, String targetDir, List<Entry> entries,
+                      Set<String> newArtists) {
+    /**
+     * Write plan to JSON file
+     *
+     * @param file path to JSON file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        JsonManager.writeObjectToJson(this, file);
+    }
+
+    /**
+     * Read plan from JSON file
+     *
+     * @param file path to JSON file
+     * @return read plan
+     * @throws IOException if the file cannot be read
+     */
+    public static RunPlan load(Path file) throws IOException {
+        return JsonManager.loadDataFromJson(file, new TypeReference<>() {
+        });
+    }
+
+    /**
+     * Mark entries that cannot be applied because their target names collide with each other
+     * or with existing files
+     *
+     * @param entries   planned files in order of listing
+     * @param targetDir dir to move formatted files to, {@code null} if files are not moved
+     * @return entries with errors of collisions
+     */
+    static List<Entry> markCollisions(List<Entry> entries, Path targetDir) {
+        // Key is lowercase name, because file systems of Windows and macOS ignore case
+        Map<String, Entry> plannedNames = new HashMap<>();
+        List<Entry> checked = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.error() != null) {
+                checked.add(entry);
+                continue;
+            }
+            Path source = Path.of(entry.source());
+            String key = entry.newFilename().toLowerCase(Locale.ROOT);
+            Entry previous = plannedNames.putIfAbsent(key, entry);
+            if (previous != null) {
+                checked.add(entry.withError("Same filename as \"%s\"".formatted(Path.of(previous.source()).getFileName())));
+            } else if (!entry.newFilename().equalsIgnoreCase(source.getFileName().toString())
+                    && Files.exists(source.resolveSibling(entry.newFilename()))) {
+                checked.add(entry.withError("File already exists in \"%s\"".formatted(source.getParent())));
+            } else if (targetDir != null && Files.exists(targetDir.resolve(entry.newFilename()))) {
+                checked.add(entry.withError("File already exists in \"%s\"".formatted(targetDir)));
+            } else {
+                checked.add(entry);
+            }
+        }
+        return checked;
+    }
+
+    /**
+     * Planned processing of one file
+     *
+     * @param source           absolute path to file
+     * @param size             size of file when it was planned
+     * @param lastModified     modification time of file in milliseconds when it was planned
+     * @param newFilename      formatted filename, the same as current one if the file is already formatted
+     * @param artist           artists to write to metadata, {@code null} if metadata is not changed
+     * @param title            track title to write to metadata, {@code null} if metadata is not changed
+     * @param alreadyFormatted {@code true} if the file was formatted by a previous run and is only moved
+     * @param error            why the file cannot be processed, {@code null} if it can
+     */
+    public record Entry(String source, long size, long lastModified, String newFilename, String artist, String title,
+                        boolean alreadyFormatted, String error) {
+        /**
+         * Create entry of a file that can be processed
+         *
+         * @param file       path to file
+         * @param formatting formatting of the file, {@code null} if the file is already formatted
+         */
+        static Entry of(Path file, FileFormatter.Formatting formatting) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            String source = file.toAbsolutePath().normalize().toString();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (formatting == null) {
+                return new Entry(source, attributes.size(), lastModified, file.getFileName().toString(),
+                        null, null, true, null);
+            }
+            return new Entry(source, attributes.size(), lastModified, formatting.newFilename(),
+                    formatting.metadata().artist(), formatting.metadata().title(), false, null);
+        }
+
+        /**
+         * Create entry of a file that cannot be processed
+         *
+         * @param file  path to file
+         * @param error why the file cannot be processed
+         */
+        static Entry failed(Path file, String error) {
+            return new Entry(file.toAbsolutePath().normalize().toString(), 0, 0, null, null, null, false, error);
+        }
+
+        Entry withError(String error) {
+            return new Entry(source, size, lastModified, newFilename, artist, title, alreadyFormatted, error);
+        }
+
+        /**
+         * @return formatting to apply, {@code null} if the file is already formatted
+         */
+        FileFormatter.Formatting formatting() {
+            return alreadyFormatted ? null
+                    : new FileFormatter.Formatting(newFilename, new MetadataFormatter.Metadata(artist, title));
+        }
+
+        /**
+         * Check that the file was not changed since it was planned
+         *
+         * @return {@code true} if size and modification time of the file are the same
+         */
+        boolean matchesFile() throws IOException {
+            Path file = Path.of(source);
+            if (!Files.exists(file)) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        }
+    }
+}
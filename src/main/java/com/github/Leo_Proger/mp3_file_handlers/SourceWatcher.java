@@ -0,0 +1,217 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches source dir and passes new MP3 files to {@link FileManager} as soon as they are completely written.
+ * <p>
+ * A file is considered complete when its size and modification time have not changed for {@link #STABLE_TIME_MS}
+ * and it can be opened for writing (on Windows a file that is still being downloaded is locked).
+ * <p>
+ * Files renamed or tagged in source dir by {@link FileManager} are not processed again: events of a file are ignored
+ * while its size and modification time are the same as after its processing
+ */
+public class SourceWatcher {
+    private static final Logger log = LoggerFactory.getLogger(SourceWatcher.class);
+
+    /**
+     * How often pending files are checked
+     */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    /**
+     * How long a file must stay unchanged to be processed
+     */
+    private static final long STABLE_TIME_MS = 500;
+
+    private final Path sourceDir;
+    private final FileManager fileManager;
+    private final boolean allowFileMove;
+
+    /**
+     * Files that appeared or changed but are not processed yet
+     */
+    private final Map<Path, PendingFile> pendingFiles = new LinkedHashMap<>();
+
+    /**
+     * Files in source dir written by {@link FileManager}, with their state after processing
+     */
+    private final Map<Path, PendingFile> processedFiles = new HashMap<>();
+
+    private volatile boolean running;
+
+    /**
+     * @param sourceDir     dir to watch
+     * @param fileManager   manager that processes files of {@code sourceDir}
+     * @param allowFileMove {@code true} - files will be moved to target dir,
+     *                      {@code false} - files will not be moved to target dir
+     */
+    public SourceWatcher(Path sourceDir, FileManager fileManager, boolean allowFileMove) {
+        this.sourceDir = sourceDir;
+        this.fileManager = fileManager;
+        this.allowFileMove = allowFileMove;
+    }
+
+    /**
+     * Watch source dir until {@link #stop()} is called. Files that are already in the dir are processed first
+     *
+     * @throws IOException          if the dir cannot be watched
+     * @throws InterruptedException if the thread is interrupted while waiting for changes
+     */
+    public void run() throws IOException, InterruptedException {
+        running = true;
+        try (WatchService watchService = sourceDir.getFileSystem().newWatchService()) {
+            sourceDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            addExistingFiles();
+
+            while (running) {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handleEvents(key);
+                }
+
+                List<Path> readyFiles = takeReadyFiles();
+                if (!readyFiles.isEmpty()) {
+                    rememberProcessedFiles(fileManager.run(readyFiles, allowFileMove));
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop watching. Files that are being processed are finished first
+     */
+    public void stop() {
+        running = false;
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Some events are lost, so check the whole dir
+                addExistingFiles();
+                continue;
+            }
+            Path file = sourceDir.resolve((Path) event.context());
+            if (DirectoryScanner.isMp3File(file)) {
+                addPendingFile(file);
+            }
+        }
+        if (!key.reset()) {
+            log.error("Dir \"{}\" is no longer accessible", sourceDir);
+            stop();
+        }
+    }
+
+    private void addExistingFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            paths.filter(DirectoryScanner::isMp3File).forEach(this::addPendingFile);
+        }
+    }
+
+    /**
+     * Remember state of processed files that stayed in source dir, so their events are ignored
+     *
+     * @param newPaths new paths of processed files
+     */
+    private void rememberProcessedFiles(List<Path> newPaths) {
+        // Files that were moved, renamed again or deleted since they were processed
+        processedFiles.keySet().removeIf(file -> !Files.exists(file));
+        for (Path file : newPaths) {
+            if (!sourceDir.equals(file.getParent())) {
+                continue;
+            }
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                processedFiles.put(file, new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), 0));
+            } catch (IOException e) {
+                log.debug("Unable to read attributes of processed file \"{}\"", file, e);
+            }
+        }
+    }
+
+    /**
+     * Start or restart waiting until the file is complete
+     */
+    private void addPendingFile(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            PendingFile processed = processedFiles.get(file);
+            if (processed != null && processed.size() == attributes.size()
+                    && processed.lastModified() == attributes.lastModifiedTime().toMillis()) {
+                // Event of renaming or tag writing by FileManager
+                return;
+            }
+            if (attributes.isRegularFile()) {
+                pendingFiles.put(file, new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), System.nanoTime()));
+            }
+        } catch (IOException e) {
+            // File was removed or renamed before it could be checked
+            pendingFiles.remove(file);
+        }
+    }
+
+    /**
+     * Remove from pending files those that are complete
+     *
+     * @return complete files in order of their appearance
+     */
+    private List<Path> takeReadyFiles() {
+        List<Path> readyFiles = new ArrayList<>();
+        long now = System.nanoTime();
+
+        Iterator<Map.Entry<Path, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            Path file = entry.getKey();
+            PendingFile pending = entry.getValue();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                long lastModified = attributes.lastModifiedTime().toMillis();
+
+                if (attributes.size() != pending.size() || lastModified != pending.lastModified()) {
+                    entry.setValue(new PendingFile(attributes.size(), lastModified, now));
+                } else if (now - pending.lastChangeNanos() >= TimeUnit.MILLISECONDS.toNanos(STABLE_TIME_MS) && isWritable(file)) {
+                    readyFiles.add(file);
+                    iterator.remove();
+                }
+            } catch (IOException e) {
+                iterator.remove();
+            }
+        }
+        return readyFiles;
+    }
+
+    /**
+     * Check that no other process holds the file open for writing
+     */
+    private boolean isWritable(Path file) {
+        try {
+            FileChannel.open(file, StandardOpenOption.WRITE).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * State of a file when it was last seen changing
+     *
+     * @param size            size of file in bytes
+     * @param lastModified    modification time in milliseconds
+     * @param lastChangeNanos time of the last change, from {@link System#nanoTime()}
+     */
+    private record PendingFile(long size, long lastModified, long lastChangeNanos) {
+    }
+}
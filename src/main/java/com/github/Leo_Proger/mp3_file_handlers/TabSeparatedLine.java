@@ -0,0 +1,71 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Line of tab separated fields in files of the program, e.g. the run journal and the duplicate index.
+ * <p>
+ * Tabs, line breaks and backslashes in fields are escaped as {@code \t}, {@code \n}, {@code \r} and {@code \\},
+ * so paths with any characters can be written
+ */
+final class TabSeparatedLine {
+    private TabSeparatedLine() {
+    }
+
+    /**
+     * @param fields fields of the line
+     * @return escaped fields separated by tabs, without line break
+     */
+    static String join(String... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int f = 0; f < fields.length; f++) {
+            if (f > 0) {
+                line.append('\t');
+            }
+            String field = fields[f];
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                switch (c) {
+                    case '\t' -> line.append("\\t");
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    case '\\' -> line.append("\\\\");
+                    default -> line.append(c);
+                }
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * @param line line written by {@link #join(String...)}
+     * @return unescaped fields of the line
+     * @throws IllegalArgumentException if the line is damaged, e.g. ends in the middle of an escape
+     */
+    static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\\') {
+                field.append(c);
+            } else if (++i < line.length()) {
+                switch (line.charAt(i)) {
+                    case 't' -> field.append('\t');
+                    case 'n' -> field.append('\n');
+                    case 'r' -> field.append('\r');
+                    case '\\' -> field.append('\\');
+                    default -> throw new IllegalArgumentException("Unknown escape in line: " + line);
+                }
+            } else {
+                throw new IllegalArgumentException("Unfinished escape in line: " + line);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(String[]::new);
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Names of files in target dir, so collisions are found without asking the file system about every file.
+ * <p>
+ * Names are compared ignoring case, because file systems of Windows and macOS and most network shares ignore it.
+ * The index is created by one listing of target dir and is updated when names are reserved by moved files.
+ * Safe to use from several threads at the same time
+ */
+public class TargetNameIndex {
+    /**
+     * Key is lowercase name, value is name as it is in target dir
+     */
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Load names of all files in {@code targetDir}
+     *
+     * @param targetDir dir with formatted MP3 files
+     * @return loaded index
+     * @throws IOException if the dir cannot be read
+     */
+    public static TargetNameIndex load(Path targetDir) throws IOException {
+        TargetNameIndex index = new TargetNameIndex();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(targetDir)) {
+            for (Path file : files) {
+                String filename = file.getFileName().toString();
+                index.names.put(toKey(filename), filename);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reserve {@code filename} for a file that will be moved to target dir
+     *
+     * @param filename name of the file in target dir
+     * @return name of the file that has the same name ignoring case, {@code null} if the name is reserved
+     */
+    public String reserve(String filename) {
+        return names.putIfAbsent(toKey(filename), filename);
+    }
+
+    /**
+     * Reserve {@code filename} or, if it is taken, the first free name with a number at the end of it,
+     * e.g. "Artist_-_Song_(2).mp3"
+     *
+     * @param filename name of MP3 file
+     * @return reserved name
+     */
+    public String reserveWithSuffix(String filename) {
+        String base = filename.substring(0, filename.length() - ".mp3".length());
+        String candidate = filename;
+        for (int number = 2; reserve(candidate) != null; number++) {
+            candidate = "%s_(%d).mp3".formatted(base, number);
+        }
+        return candidate;
+    }
+
+    /**
+     * Change name of a file to a name that is the same ignoring case, e.g. when the file is replaced
+     *
+     * @param existing current name
+     * @param filename new name
+     * @return {@code false} if the current name is not {@code existing}
+     */
+    public boolean replace(String existing, String filename) {
+        return names.replace(toKey(filename), existing, filename);
+    }
+
+    /**
+     * Remove name of a file that was not moved after all
+     *
+     * @param filename reserved name
+     */
+    public void release(String filename) {
+        names.remove(toKey(filename), filename);
+    }
+
+    /**
+     * @return number of names
+     */
+    public int size() {
+        return names.size();
+    }
+
+    private static String toKey(String filename) {
+        return filename.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets several processes, also on different machines with a shared mount, process the same source dir.
+ * <p>
+ * A worker claims a file by creating a lease file in {@value #WORKERS_DIRNAME}/leases of source dir.
+ * Creation of a new file is atomic, so only one worker gets every file. Held leases are renewed by a background
+ * thread, and a lease that was not renewed for the lease duration belongs to a crashed worker and can be taken over.
+ * <p>
+ * Leases are keyed by path of the file, so files must not be renamed in source dir while they are processed.
+ * Before a file is put to target dir, its target name is written to the lease, so a worker that takes over the lease
+ * can finish the file instead of putting it to target dir again.
+ * <p>
+ * Workers that process files at the same time form a batch, marked by {@value #BATCH_FILENAME}. The marker is created
+ * atomically by the first worker of the batch and deleted by the last one, or expires like a lease if it crashed
+ *
+ * @see Config#WORKER_ID
+ * @see Config#LEASE_DURATION
+ */
+public class WorkerLeases implements AutoCloseable {
+    public static final String WORKERS_DIRNAME = ".mp3_editor_workers";
+    public static final String BATCH_FILENAME = "batch.lease";
+
+    private static final Logger log = LoggerFactory.getLogger(WorkerLeases.class);
+
+    private final Path sourceDir;
+    private final String workerId;
+    private final Duration leaseDuration;
+    private final Path leaseDir;
+    private final Path liveDir;
+    private final Path batchFile;
+
+    /**
+     * Key is claimed file, value is its lease file
+     */
+    private final Map<Path, Path> heldLeases = new ConcurrentHashMap<>();
+
+    /**
+     * Key is claimed file, value is name in target dir written to its lease by a crashed worker
+     */
+    private final Map<Path, String> publishedTargets = new ConcurrentHashMap<>();
+
+    private volatile boolean inBatch;
+
+    private final ScheduledExecutorService renewer;
+
+    /**
+     * @param sourceDir     dir shared by workers
+     * @param workerId      name of this worker, unique among workers
+     * @param leaseDuration time after which a lease that is not renewed expires
+     * @throws IOException if the dir of leases cannot be created
+     */
+    public WorkerLeases(Path sourceDir, String workerId, Duration leaseDuration) throws IOException {
+        this.sourceDir = sourceDir.toAbsolutePath().normalize();
+        this.workerId = workerId;
+        this.leaseDuration = leaseDuration;
+        Path workersDir = sourceDir.resolve(WORKERS_DIRNAME);
+        this.leaseDir = Files.createDirectories(workersDir.resolve("leases"));
+        this.liveDir = Files.createDirectories(workersDir.resolve("live"));
+        this.batchFile = workersDir.resolve(BATCH_FILENAME);
+
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(leaseDuration.toMillis() / 3, 1);
+        renewer.scheduleAtFixedRate(this::renewLeases, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Claim {@code file} for this worker
+     *
+     * @param file MP3 file in source dir
+     * @return {@code true} if the file is claimed and still exists,
+     * {@code false} if another worker holds it or it was already processed
+     */
+    public boolean tryClaim(Path file) {
+        Path leaseFile = leaseDir.resolve(toLeaseName(file));
+        try {
+            if (!createLease(leaseFile)) {
+                String[] expired = isExpired(leaseFile) ? takeOver(leaseFile) : null;
+                if (expired == null || !createLease(leaseFile)) {
+                    return false;
+                }
+                if (expired.length > 1) {
+                    publishedTargets.put(file, expired[1]);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to claim file \"{}\"", file.getFileName(), e);
+            return false;
+        }
+        heldLeases.put(file, leaseFile);
+        // File could be moved by another worker after it was listed
+        if (!Files.exists(file)) {
+            release(file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release lease of a processed file
+     *
+     * @param file claimed file
+     */
+    public void release(Path file) {
+        publishedTargets.remove(file);
+        Path leaseFile = heldLeases.remove(file);
+        if (leaseFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(leaseFile);
+        } catch (IOException e) {
+            // Lease expires anyway
+            log.warn("Unable to release lease \"{}\"", leaseFile, e);
+        }
+    }
+
+    /**
+     * Write name of the claimed file in target dir to its lease before the file is put there
+     *
+     * @param file           claimed file
+     * @param targetFilename name of the file in target dir
+     * @see #getPublishedTarget(Path)
+     */
+    public void recordTarget(Path file, String targetFilename) {
+        Path leaseFile = heldLeases.get(file);
+        if (leaseFile == null) {
+            return;
+        }
+        try {
+            Files.writeString(leaseFile, workerId + "\n" + targetFilename);
+        } catch (IOException e) {
+            // File is processed again if this worker crashes, as without the record
+            log.warn("Unable to write target of \"{}\" to lease \"{}\"", file.getFileName(), leaseFile, e);
+        }
+    }
+
+    /**
+     * @param file claimed file
+     * @return name in target dir that a crashed worker was putting the file to, if its lease was taken over
+     */
+    public Optional<String> getPublishedTarget(Path file) {
+        return Optional.ofNullable(publishedTargets.get(file));
+    }
+
+    /**
+     * Join the batch of workers that are processing files, or begin a new batch if there is none.
+     * Only one worker begins a batch, because the batch marker is created atomically
+     *
+     * @return {@code true} if this worker began a new batch
+     * @throws IOException if the batch marker cannot be created
+     */
+    public boolean joinBatch() throws IOException {
+        Files.writeString(liveDir.resolve(workerId + ".lease"), workerId);
+        inBatch = true;
+        boolean began = createLease(batchFile)
+                || isExpired(batchFile) && takeOver(batchFile) != null && createLease(batchFile);
+        if (began) {
+            log.info("Worker \"{}\" began a new batch", workerId);
+            // Workers of previous batches that crashed
+            try (DirectoryStream<Path> liveFiles = Files.newDirectoryStream(liveDir, "*.lease")) {
+                for (Path liveFile : liveFiles) {
+                    if (isExpired(liveFile)) {
+                        Files.deleteIfExists(liveFile);
+                    }
+                }
+            }
+        }
+        return began;
+    }
+
+    /**
+     * @return names of workers of the batch that are processing files, including this worker
+     * @throws IOException if the dir of workers cannot be read
+     */
+    public Set<String> getLiveWorkers() throws IOException {
+        Set<String> workers = new HashSet<>();
+        try (DirectoryStream<Path> liveFiles = Files.newDirectoryStream(liveDir, "*.lease")) {
+            for (Path liveFile : liveFiles) {
+                if (!isExpired(liveFile)) {
+                    String name = liveFile.getFileName().toString();
+                    workers.add(name.substring(0, name.length() - ".lease".length()));
+                }
+            }
+        }
+        return workers;
+    }
+
+    /**
+     * @return number of files claimed by this worker and not released
+     */
+    public int size() {
+        return heldLeases.size();
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * Stop renewing and release all held leases. The last worker of the batch deletes the batch marker
+     */
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        heldLeases.keySet().forEach(this::release);
+        if (!inBatch) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(liveDir.resolve(workerId + ".lease"));
+            if (getLiveWorkers().isEmpty()) {
+                Files.deleteIfExists(batchFile);
+            }
+        } catch (IOException e) {
+            // Batch marker expires anyway
+            log.warn("Unable to leave batch of workers in \"{}\"", liveDir, e);
+        }
+    }
+
+    private boolean createLease(Path leaseFile) throws IOException {
+        try {
+            Files.writeString(leaseFile, workerId, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(Path leaseFile) {
+        try {
+            return isExpired(Files.getLastModifiedTime(leaseFile));
+        } catch (NoSuchFileException e) {
+            // Released in the meantime
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(FileTime renewed) {
+        return renewed.toMillis() + leaseDuration.toMillis() < System.currentTimeMillis();
+    }
+
+    /**
+     * Remove expired lease. Rename is atomic, so if several workers take over the same lease, only one succeeds
+     *
+     * @return lines of the removed lease: worker and, if it was recorded, target name of the file.
+     * Empty if the lease was removed by another worker, {@code null} if it is held again
+     */
+    private String[] takeOver(Path leaseFile) throws IOException {
+        Path expired = leaseFile.resolveSibling(leaseFile.getFileName() + "." + workerId + ".expired");
+        try {
+            Files.move(leaseFile, expired, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Lease was released or taken over by another worker, try to create it
+            return new String[0];
+        }
+        if (!isExpired(Files.getLastModifiedTime(expired))) {
+            // Another worker took over the lease after it was checked, give it back
+            try {
+                Files.move(expired, leaseFile);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(expired);
+            }
+            return null;
+        }
+        String[] lines = Files.readString(expired).split("\n");
+        Files.delete(expired);
+        log.warn("Lease \"{}\" of crashed worker \"{}\" is taken over", leaseFile.getFileName(), lines[0]);
+        return lines;
+    }
+
+    private void renewLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        List<Path> leaseFiles = new ArrayList<>(heldLeases.values());
+        if (inBatch) {
+            leaseFiles.add(liveDir.resolve(workerId + ".lease"));
+            try {
+                // Marker is deleted if the last worker of the batch left while this worker was joining
+                if (!createLease(batchFile)) {
+                    leaseFiles.add(batchFile);
+                }
+            } catch (IOException e) {
+                log.warn("Unable to create batch marker \"{}\"", batchFile, e);
+            }
+        }
+        for (Path leaseFile : leaseFiles) {
+            try {
+                Files.setLastModifiedTime(leaseFile, now);
+            } catch (IOException e) {
+                log.warn("Unable to renew lease \"{}\"", leaseFile, e);
+            }
+        }
+    }
+
+    /**
+     * Name of lease file. Path relative to source dir is used, because the shared dir may be mounted
+     * to different paths on different machines. It is hashed, because it may be longer than allowed names
+     */
+    private String toLeaseName(Path file) {
+        String relativePath = sourceDir.relativize(file.toAbsolutePath().normalize()).toString().replace('\\', '/');
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(relativePath.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16) + ".lease";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.github.Leo_Proger.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Read-only dictionary of correct artists' names with case-insensitive lookup, stored in a compact binary file
+ * that is memory-mapped instead of being loaded into heap.
+ * <p>
+ * Keys are compared as if the query was converted with {@link String#toLowerCase()}, but without creating
+ * a lowercase copy of the query. Only queries with characters whose lowercase form depends on context or locale
+ * (e.g. 'İ', 'Σ', surrogate pairs, Turkish locale) are converted to a lowercase String first.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * header: magic, version, size and modification time of source json, size of its journal, number of entries,
+ *         number of slots
+ * slots:  open addressing hash table, each slot is hash of key and offset of entry (0 - empty slot)
+ * data:   entries, each is length of key, chars of key, length of name, chars of name
+ * </pre>
+ */
+public final class ArtistDictionary {
+    private static final Logger log = LoggerFactory.getLogger(ArtistDictionary.class);
+
+    private static final int MAGIC = 0x4D504144;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 40;
+    private static final int SLOT_LENGTH = 8;
+
+    /**
+     * Lowercase of these characters depends on the characters around them
+     */
+    private static final char CAPITAL_I_WITH_DOT = 'İ';
+    private static final char CAPITAL_SIGMA = 'Σ';
+
+    /**
+     * With these locales {@link String#toLowerCase()} differs from {@link Character#toLowerCase(char)}
+     */
+    private static final Set<String> SPECIAL_CASE_LANGUAGES = Set.of("tr", "az", "lt");
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int slotMask;
+
+    private ArtistDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not an artist dictionary");
+        }
+        this.size = buffer.getInt(32);
+        this.slotMask = buffer.getInt(36) - 1;
+    }
+
+    /**
+     * Load dictionary built from {@code jsonFile} and its {@link ArtistJournal}. The dictionary file is rebuilt
+     * if the json file or the journal was changed since the last build. If the dictionary file cannot be written,
+     * the dictionary is built in memory
+     *
+     * @param jsonFile       json file with lowercase incorrect names as keys and correct names as values
+     * @param dictionaryFile binary file to store the dictionary in
+     * @return loaded dictionary
+     * @throws IOException if json file cannot be read
+     */
+    public static ArtistDictionary load(Path jsonFile, Path dictionaryFile) throws IOException {
+        BasicFileAttributes source = Files.readAttributes(jsonFile, BasicFileAttributes.class);
+        long sourceSize = source.size();
+        long sourceLastModified = source.lastModifiedTime().toMillis();
+        ArtistJournal journal = new ArtistJournal(jsonFile);
+        long journalSize = journal.size();
+
+        if (Files.exists(dictionaryFile)) {
+            try {
+                ArtistDictionary dictionary = map(dictionaryFile);
+                if (dictionary.buffer.getLong(8) == sourceSize && dictionary.buffer.getLong(16) == sourceLastModified
+                        && dictionary.buffer.getLong(24) == journalSize) {
+                    return dictionary;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Dictionary \"{}\" is damaged and will be rebuilt", dictionaryFile, e);
+            }
+        }
+
+        ByteBuffer built = build(journal.readAll(), sourceSize, sourceLastModified, journalSize);
+        try {
+            write(built, dictionaryFile);
+            return map(dictionaryFile);
+        } catch (IOException e) {
+            log.warn("Failed to write dictionary \"{}\", it is kept in memory", dictionaryFile, e);
+            return new ArtistDictionary(built);
+        }
+    }
+
+    /**
+     * Build dictionary in memory
+     *
+     * @param correctNames lowercase incorrect names as keys and correct names as values
+     * @return built dictionary
+     */
+    public static ArtistDictionary of(Map<String, String> correctNames) {
+        return new ArtistDictionary(build(correctNames, 0, 0, 0));
+    }
+
+    /**
+     * @return number of names in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find correct name of an artist
+     *
+     * @param artist name of artist in any case
+     * @return correct name or {@code null} if there is no such artist
+     */
+    public String get(CharSequence artist) {
+        int entry = find(artist, 0, artist.length());
+        if (entry < 0) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder();
+        appendName(entry, name);
+        return name.toString();
+    }
+
+    /**
+     * Find an artist whose name is a region of {@code text}
+     *
+     * @param text  text that contains name of artist
+     * @param start index of the first char of the name
+     * @param end   index after the last char of the name
+     * @return position of the entry to pass to {@link #appendName(int, StringBuilder)},
+     * or {@code -1} if there is no such artist
+     */
+    public int find(CharSequence text, int start, int end) {
+        if (needsStringLowerCase(text, start, end)) {
+            String lowerCase = text.subSequence(start, end).toString().toLowerCase();
+            return find(lowerCase, 0, lowerCase.length(), false);
+        }
+        return find(text, start, end, true);
+    }
+
+    /**
+     * Append correct name of the found artist
+     *
+     * @param entry  position of the entry returned by {@link #find(CharSequence, int, int)}
+     * @param output where to append the name
+     */
+    public void appendName(int entry, StringBuilder output) {
+        int keyLength = buffer.getChar(entry);
+        int namePosition = entry + 2 + keyLength * 2;
+        int nameLength = buffer.getChar(namePosition);
+        for (int i = 0, position = namePosition + 2; i < nameLength; i++, position += 2) {
+            output.append(buffer.getChar(position));
+        }
+    }
+
+    private int find(CharSequence text, int start, int end, boolean toLowerCase) {
+        int length = end - start;
+        if (length > Character.MAX_VALUE) {
+            return -1;
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            hash = 31 * hash + (toLowerCase ? Character.toLowerCase(c) : c);
+        }
+        hash = mix(hash);
+
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            int slotPosition = HEADER_LENGTH + slot * SLOT_LENGTH;
+            int entry = buffer.getInt(slotPosition + 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (buffer.getInt(slotPosition) == hash && keyEquals(entry, text, start, length, toLowerCase)) {
+                return entry;
+            }
+        }
+    }
+
+    private boolean keyEquals(int entry, CharSequence text, int start, int length, boolean toLowerCase) {
+        if (buffer.getChar(entry) != length) {
+            return false;
+        }
+        for (int i = 0, position = entry + 2; i < length; i++, position += 2) {
+            char c = text.charAt(start + i);
+            if (buffer.getChar(position) != (toLowerCase ? Character.toLowerCase(c) : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check that lowercase of the region cannot be found char by char
+     */
+    private static boolean needsStringLowerCase(CharSequence text, int start, int end) {
+        if (SPECIAL_CASE_LANGUAGES.contains(Locale.getDefault().getLanguage())) {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == CAPITAL_I_WITH_DOT || c == CAPITAL_SIGMA || Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Serialize dictionary
+     *
+     * @param correctNames       lowercase incorrect names as keys and correct names as values
+     * @param sourceSize         size of source json file
+     * @param sourceLastModified modification time of source json file
+     * @param journalSize        size of journal of source json file
+     * @return buffer with the whole dictionary file
+     */
+    private static ByteBuffer build(Map<String, String> correctNames, long sourceSize, long sourceLastModified,
+                                    long journalSize) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(correctNames.size());
+        long dataLength = 0;
+        for (Map.Entry<String, String> entry : correctNames.entrySet()) {
+            String key = entry.getKey();
+            String name = entry.getValue();
+            if (name == null || key.length() > Character.MAX_VALUE || name.length() > Character.MAX_VALUE) {
+                continue;
+            }
+            entries.add(entry);
+            dataLength += 4 + 2L * (key.length() + name.length());
+        }
+
+        int slots = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1;
+        long totalLength = HEADER_LENGTH + (long) slots * SLOT_LENGTH + dataLength;
+        if (totalLength > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many artists for dictionary");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalLength);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, sourceSize);
+        buffer.putLong(16, sourceLastModified);
+        buffer.putLong(24, journalSize);
+        buffer.putInt(32, entries.size());
+        buffer.putInt(36, slots);
+
+        int position = HEADER_LENGTH + slots * SLOT_LENGTH;
+        for (Map.Entry<String, String> entry : entries) {
+            String key = entry.getKey();
+            String name = entry.getValue();
+
+            int hash = mix(key.hashCode());
+            int slot = hash & (slots - 1);
+            while (buffer.getInt(HEADER_LENGTH + slot * SLOT_LENGTH + 4) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            buffer.putInt(HEADER_LENGTH + slot * SLOT_LENGTH, hash);
+            buffer.putInt(HEADER_LENGTH + slot * SLOT_LENGTH + 4, position);
+
+            position = putString(buffer, position, key);
+            position = putString(buffer, position, name);
+        }
+        return buffer;
+    }
+
+    private static int putString(ByteBuffer buffer, int position, String string) {
+        buffer.putChar(position, (char) string.length());
+        position += 2;
+        for (int i = 0; i < string.length(); i++, position += 2) {
+            buffer.putChar(position, string.charAt(i));
+        }
+        return position;
+    }
+
+    private static void write(ByteBuffer buffer, Path dictionaryFile) throws IOException {
+        // Unique name, so processes that rebuild the dictionary at the same time don't write the same temp file
+        Path tempFile = Files.createTempFile(dictionaryFile.toAbsolutePath().getParent(), "." + dictionaryFile.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer data = buffer.duplicate().clear();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(tempFile, dictionaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static ArtistDictionary map(Path dictionaryFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(dictionaryFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size of dictionary \"%s\"".formatted(dictionaryFile));
+            }
+            // Mapping stays valid after the channel is closed
+            return new ArtistDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.github.Leo_Proger.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of new artists' names, kept next to the json file with correct names.
+ * <p>
+ * Adding names appends one line per name to the journal instead of parsing and rewriting the whole json file.
+ * Journal entries are merged into the json file by {@link #compact()}, usually in background when the journal
+ * becomes big. Names that are already in the json file are never replaced by the journal.
+ * <p>
+ * All operations lock the journal file, so several programs can add names at the same time
+ */
+public final class ArtistJournal {
+    private static final Logger log = LoggerFactory.getLogger(ArtistJournal.class);
+
+    public static final String SUFFIX = ".journal";
+
+    /**
+     * Size of journal in bytes after which it should be merged into the json file
+     */
+    public static final long COMPACTION_THRESHOLD = 64 * 1024;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * A file lock cannot be taken twice by the same program, so threads wait for each other on this object
+     */
+    private static final Object LOCK = new Object();
+
+    private final Path jsonFile;
+    private final Path journalFile;
+
+    /**
+     * @param jsonFile json file with lowercase incorrect names as keys and correct names as values
+     */
+    public ArtistJournal(Path jsonFile) {
+        this.jsonFile = jsonFile;
+        this.journalFile = jsonFile.resolveSibling(jsonFile.getFileName() + SUFFIX);
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * @return size of journal in bytes, {@code 0} if there is no journal
+     */
+    public long size() throws IOException {
+        return Files.exists(journalFile) ? Files.size(journalFile) : 0;
+    }
+
+    /**
+     * Append names to the journal. The json file is not read
+     *
+     * @param names lowercase incorrect names as keys and correct names as values
+     * @throws IOException if the journal cannot be written
+     */
+    public void append(Map<String, String> names) throws IOException {
+        if (names.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            lines.append(objectMapper.writeValueAsString(Map.of(entry.getKey(), entry.getValue()))).append('\n');
+        }
+
+        synchronized (LOCK) {
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    long end = channel.size();
+                    // Line may be unfinished if the program was killed while appending
+                    if (end > 0 && readByte(channel, end - 1) != '\n') {
+                        lines.insert(0, '\n');
+                    }
+                    ByteBuffer data = StandardCharsets.UTF_8.encode(lines.toString());
+                    while (data.hasRemaining()) {
+                        end += channel.write(data, end);
+                    }
+                    channel.force(false);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read names from the json file and the journal
+     *
+     * @return names from the json file followed by names from the journal that are not in the json file
+     * @throws IOException if the json file cannot be read
+     */
+    public Map<String, String> readAll() throws IOException {
+        synchronized (LOCK) {
+            if (!Files.exists(journalFile)) {
+                return readJson(jsonFile);
+            }
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+                FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+                try {
+                    Map<String, String> names = readJson(jsonFile);
+                    readJournal(channel).forEach(names::putIfAbsent);
+                    return names;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the journal into the json file and clear the journal.
+     * <p>
+     * The json file is replaced atomically, so the names are never lost if the program is killed while compacting
+     *
+     * @return number of names added to the json file
+     * @throws IOException if the json file cannot be read or written
+     */
+    public int compact() throws IOException {
+        synchronized (LOCK) {
+            if (!Files.exists(journalFile)) {
+                return 0;
+            }
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Map<String, String> journal = readJournal(channel);
+                    int added = 0;
+                    if (!journal.isEmpty()) {
+                        Map<String, String> names = readJson(jsonFile);
+                        for (Map.Entry<String, String> entry : journal.entrySet()) {
+                            if (names.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                                added++;
+                            }
+                        }
+                        if (added > 0) {
+                            Path tempFile = Files.createTempFile(jsonFile.toAbsolutePath().getParent(), "." + jsonFile.getFileName() + ".", ".tmp");
+                            try {
+                                JsonManager.writeDataToJson(names, tempFile);
+                                Files.move(tempFile, jsonFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                            } finally {
+                                Files.deleteIfExists(tempFile);
+                            }
+                        }
+                    }
+                    channel.truncate(0);
+                    channel.force(false);
+                    return added;
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start {@link #compact()} in a daemon thread if the journal is bigger than {@link #COMPACTION_THRESHOLD}
+     */
+    public void compactInBackgroundIfNeeded() {
+        try {
+            if (size() < COMPACTION_THRESHOLD) {
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to get size of \"{}\"", journalFile, e);
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                int added = compact();
+                log.debug("{} artists from \"{}\" are added to \"{}\"", added, journalFile, jsonFile);
+            } catch (IOException e) {
+                log.warn("Failed to merge \"{}\" into \"{}\"", journalFile, jsonFile, e);
+            }
+        }, "artist-journal-compaction");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Read json object with a streaming parser, so no intermediate tree is created
+     *
+     * @param jsonFile json file with lowercase incorrect names as keys and correct names as values
+     * @return names in order of the file
+     * @throws IOException if the file cannot be read or is not a json object
+     */
+    static Map<String, String> readJson(Path jsonFile) throws IOException {
+        Map<String, String> names = new LinkedHashMap<>();
+        try (JsonParser parser = new JsonFactory().createParser(jsonFile.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("\"%s\" must contain json object".formatted(jsonFile));
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                parser.nextToken();
+                names.put(key, parser.getValueAsString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Read journal from the beginning. Damaged lines are skipped
+     */
+    private Map<String, String> readJournal(FileChannel channel) throws IOException {
+        Map<String, String> names = new LinkedHashMap<>();
+        channel.position(0);
+        // Reader is not closed, because it would close the channel and release the lock
+        BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Map<String, String> entry = objectMapper.readValue(line, new TypeReference<>() {
+                });
+                entry.forEach(names::putIfAbsent);
+            } catch (IOException e) {
+                log.warn("Damaged line in \"{}\" is skipped: {}", journalFile, line);
+            }
+        }
+        return names;
+    }
+
+    private static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+}
@@ -5,7 +5,9 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 
 import static com.github.Leo_Proger.config.Config.RESOURCES_PATH;
@@ -74,6 +76,39 @@ public class JsonManager {
         });
     }
 
+    /**
+     * Loads and deserializes json data from a file.
+     *
+     * @param <T>           The type of object to deserialize the json into
+     * @param jsonFilePath  Path to the json file to read
+     * @param typeReference TypeReference to handle complex generic types during deserialization
+     * @return Deserialized object of type T
+     * @throws IOException If there are issues reading the file or parsing json
+     */
+    public static <T> T loadDataFromJson(Path jsonFilePath, TypeReference<T> typeReference) throws IOException {
+        return objectMapper.readValue(jsonFilePath.toFile(), typeReference);
+    }
+
+    /**
+     * Serializes any object to a json file without pretty-printing.
+     * <p>
+     * Data is written to a temporary file with a unique name first, which then replaces the json file,
+     * so the json file is never left half-written, even if several processes write it
+     *
+     * @param data         Object to write to the json file
+     * @param jsonFilePath Path to the json file to be written
+     * @throws IOException If there are issues writing the file
+     */
+    public static void writeObjectToJson(Object data, Path jsonFilePath) throws IOException {
+        Path tempFile = Files.createTempFile(jsonFilePath.toAbsolutePath().getParent(), "." + jsonFilePath.getFileName() + ".", ".tmp");
+        try {
+            objectMapper.writeValue(tempFile.toFile(), data);
+            Files.move(tempFile, jsonFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
     /**
      * Writes a map of data to a json file with pretty-printing.
      *
@@ -0,0 +1,332 @@
+package com.github.Leo_Proger.utils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Case-insensitive matcher that finds many literal patterns in one pass over the text (Aho-Corasick automaton).
+ * <p>
+ * Case is ignored only for ASCII letters, the same way as {@code (?i)} flag does in regular expressions.
+ * Matches are found from left to right; if several patterns start at the same position, the longest one wins.
+ * Matches do not overlap.
+ * <p>
+ * The matcher is immutable and can be used from several threads at the same time
+ */
+public class MultiPatternMatcher {
+    private static final int ROOT = 0;
+
+    /**
+     * Transitions of the automaton: from {@code state} by character {@code transitionChars[state][k]}
+     * to {@code transitionTargets[state][k]}. Characters of every state are sorted for binary search
+     */
+    private final char[][] transitionChars;
+    private final int[][] transitionTargets;
+
+    /**
+     * For every state - the state of its longest proper suffix that is also a prefix of some pattern
+     */
+    private final int[] failure;
+
+    /**
+     * For every state - the length of the path from the root
+     */
+    private final int[] depth;
+
+    /**
+     * For every state - length of the longest pattern that ends in this state, {@code 0} if there is no such pattern
+     */
+    private final int[] longestMatch;
+
+    private final List<String> patterns;
+
+    /**
+     * Build automaton from {@code patterns}. Empty patterns are ignored
+     *
+     * @param patterns literal patterns to search for
+     */
+    public MultiPatternMatcher(Collection<String> patterns) {
+        this.patterns = List.copyOf(patterns);
+
+        List<Map<Character, Integer>> goTo = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        goTo.add(new HashMap<>());
+        depths.add(0);
+        ends.add(0);
+
+        // Build trie of patterns
+        for (String pattern : this.patterns) {
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = fold(pattern.charAt(i));
+                Integer next = goTo.get(state).get(c);
+                if (next == null) {
+                    next = goTo.size();
+                    goTo.get(state).put(c, next);
+                    goTo.add(new HashMap<>());
+                    depths.add(depths.get(state) + 1);
+                    ends.add(0);
+                }
+                state = next;
+            }
+            if (state != ROOT) {
+                ends.set(state, pattern.length());
+            }
+        }
+
+        int size = goTo.size();
+        transitionChars = new char[size][];
+        transitionTargets = new int[size][];
+        failure = new int[size];
+        depth = new int[size];
+        longestMatch = new int[size];
+        for (int state = 0; state < size; state++) {
+            depth[state] = depths.get(state);
+            longestMatch[state] = ends.get(state);
+
+            // Flatten transitions into sorted arrays
+            TreeMap<Character, Integer> sorted = new TreeMap<>(goTo.get(state));
+            transitionChars[state] = new char[sorted.size()];
+            transitionTargets[state] = new int[sorted.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> entry : sorted.entrySet()) {
+                transitionChars[state][k] = entry.getKey();
+                transitionTargets[state][k] = entry.getValue();
+                k++;
+            }
+        }
+
+        // Compute failure links in breadth-first order, so links of shorter states are ready first
+        Deque<Integer> queue = new ArrayDeque<>(goTo.get(ROOT).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> entry : goTo.get(state).entrySet()) {
+                int child = entry.getValue();
+                int fallback = failure[state];
+                while (fallback != ROOT && transition(fallback, entry.getKey()) < 0) {
+                    fallback = failure[fallback];
+                }
+                int target = transition(fallback, entry.getKey());
+                failure[child] = target >= 0 && target != child ? target : ROOT;
+
+                // A state also matches every pattern that its failure state matches
+                if (longestMatch[child] == 0) {
+                    longestMatch[child] = longestMatch[failure[child]];
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private MultiPatternMatcher(char[][] transitionChars, int[][] transitionTargets, int[] failure, int[] depth,
+                                int[] longestMatch, List<String> patterns) {
+        this.transitionChars = transitionChars;
+        this.transitionTargets = transitionTargets;
+        this.failure = failure;
+        this.depth = depth;
+        this.longestMatch = longestMatch;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Write built automaton, so it can be loaded without building it again
+     *
+     * @param output where to write
+     * @throws IOException if writing fails
+     * @see #readFrom(ByteBuffer)
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(patterns.size());
+        for (String pattern : patterns) {
+            output.writeInt(pattern.length());
+            output.writeChars(pattern);
+        }
+        output.writeInt(failure.length);
+        for (int state = 0; state < failure.length; state++) {
+            output.writeInt(failure[state]);
+            output.writeInt(depth[state]);
+            output.writeInt(longestMatch[state]);
+            output.writeInt(transitionChars[state].length);
+            for (int k = 0; k < transitionChars[state].length; k++) {
+                output.writeChar(transitionChars[state][k]);
+                output.writeInt(transitionTargets[state][k]);
+            }
+        }
+    }
+
+    /**
+     * Read automaton written by {@link #writeTo(DataOutput)}
+     *
+     * @param input buffer positioned at the start of the automaton, its position is moved to the end of it
+     * @return read matcher
+     * @throws IOException if data is damaged
+     */
+    public static MultiPatternMatcher readFrom(ByteBuffer input) throws IOException {
+        try {
+            List<String> patterns = new ArrayList<>();
+            for (int count = input.getInt(); count > 0; count--) {
+                char[] pattern = new char[input.getInt()];
+                for (int i = 0; i < pattern.length; i++) {
+                    pattern[i] = input.getChar();
+                }
+                patterns.add(new String(pattern));
+            }
+
+            int size = input.getInt();
+            char[][] transitionChars = new char[size][];
+            int[][] transitionTargets = new int[size][];
+            int[] failure = new int[size];
+            int[] depth = new int[size];
+            int[] longestMatch = new int[size];
+            for (int state = 0; state < size; state++) {
+                failure[state] = checkState(input.getInt(), size);
+                depth[state] = input.getInt();
+                longestMatch[state] = input.getInt();
+                int transitions = input.getInt();
+                transitionChars[state] = new char[transitions];
+                transitionTargets[state] = new int[transitions];
+                for (int k = 0; k < transitions; k++) {
+                    transitionChars[state][k] = input.getChar();
+                    transitionTargets[state][k] = checkState(input.getInt(), size);
+                }
+            }
+            return new MultiPatternMatcher(transitionChars, transitionTargets, failure, depth, longestMatch,
+                    List.copyOf(patterns));
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Matcher data is damaged", e);
+        }
+    }
+
+    private static int checkState(int state, int size) throws IOException {
+        if (state < 0 || state >= size) {
+            throw new IOException("Matcher data is damaged: invalid state " + state);
+        }
+        return state;
+    }
+
+    /**
+     * @return patterns the matcher was built from
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Replace every match in {@code text} with {@code replacement}
+     *
+     * @param text        text to search in
+     * @param replacement string to insert instead of every match
+     * @return text with all matches replaced
+     */
+    public String replaceAll(CharSequence text, String replacement) {
+        StringBuilder result = new StringBuilder(text.length());
+        replaceAll(text, replacement, result);
+        return result.toString();
+    }
+
+    /**
+     * Replace every match in {@code text} with {@code replacement} and append the result to {@code output}
+     *
+     * @param text        text to search in
+     * @param replacement string to insert instead of every match
+     * @param output      where to append the result
+     * @return {@code true} if at least one match was replaced
+     */
+    public boolean replaceAll(CharSequence text, String replacement, StringBuilder output) {
+        boolean replaced = false;
+        int copiedUntil = 0;
+        int state = ROOT;
+        // Start and end (exclusive) of the best match found so far; it is not final until no longer match can start before it
+        int matchStart = -1;
+        int matchEnd = -1;
+
+        int i = 0;
+        while (i <= text.length()) {
+            if (i < text.length()) {
+                state = next(state, fold(text.charAt(i)));
+            }
+            // Earliest position where a match that is still in progress can start
+            int liveStart = i < text.length() ? i + 1 - depth[state] : Integer.MAX_VALUE;
+
+            if (matchStart >= 0 && matchStart < liveStart) {
+                output.append(text, copiedUntil, matchStart).append(replacement);
+                copiedUntil = matchEnd;
+                replaced = true;
+
+                // Continue right after the match, from the initial state
+                i = matchEnd;
+                state = ROOT;
+                matchStart = -1;
+                continue;
+            }
+            if (i == text.length()) {
+                break;
+            }
+
+            int length = longestMatch[state];
+            if (length > 0) {
+                int start = i + 1 - length;
+                if (matchStart < 0 || start < matchStart || (start == matchStart && i + 1 > matchEnd)) {
+                    matchStart = start;
+                    matchEnd = i + 1;
+                }
+            }
+            i++;
+        }
+        output.append(text, copiedUntil, text.length());
+        return replaced;
+    }
+
+    /**
+     * Check if {@code text} contains at least one pattern
+     *
+     * @param text text to search in
+     * @return {@code true} if some pattern is found
+     */
+    public boolean containsMatch(CharSequence text) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, fold(text.charAt(i)));
+            if (longestMatch[state] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Follow transitions and failure links until character {@code c} can be consumed
+     *
+     * @return next state
+     */
+    private int next(int state, char c) {
+        while (true) {
+            int target = transition(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * @return state reached from {@code state} by character {@code c}, or {@code -1} if there is no such transition
+     */
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(transitionChars[state], c);
+        return index >= 0 ? transitionTargets[state][index] : -1;
+    }
+
+    /**
+     * Convert ASCII uppercase letter to lowercase, leave other characters as is
+     */
+    private static char fold(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.Leo_Proger.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigSnapshotTest {
+    private static final List<String> CONSTANTS = List.of("format", ", ");
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void writeJsonFiles() throws IOException {
+        Files.writeString(tempDir.resolve("characters_to_replace.json"), "{\"—\": \"-\"}");
+        Files.writeString(tempDir.resolve("blacklist.json"), "[\"(Official Video)\"]");
+        Files.writeString(tempDir.resolve("correct_artists_names.json"), "{\"dvrst\": \"DVRST\"}");
+        Files.writeString(tempDir.resolve("artists_exclusions.json"), "[\"Freddie_Dredd\"]");
+        Files.writeString(tempDir.resolve("artist_separators.json"), "[\"_feat_\", \"_x_\"]");
+    }
+
+    @Test
+    void load_readsSnapshotWrittenOnFirstLoad() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+        assertTrue(Files.exists(tempDir.resolve(ConfigSnapshot.SNAPSHOT_FILENAME)));
+
+        // Json file with the same size and modification time is considered unchanged, so snapshot must be used
+        Path blacklist = tempDir.resolve("blacklist.json");
+        FileTime lastModified = Files.getLastModifiedTime(blacklist);
+        Files.writeString(blacklist, "x".repeat((int) Files.size(blacklist)));
+        Files.setLastModifiedTime(blacklist, lastModified);
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        assertEquals(Map.of("—", "-"), loaded.charactersToReplace());
+        assertEquals(Set.of("(Official Video)"), loaded.blacklist());
+        assertEquals(Set.of("Freddie_Dredd"), loaded.artistsExclusions());
+        assertEquals(List.of("_feat_", "_x_"), loaded.artistSeparators());
+        assertEquals(built.configVersion(), loaded.configVersion());
+        assertEquals("Song.mp3", loaded.blacklistMatcher().replaceAll("Song(OFFICIAL VIDEO).mp3", ""));
+        assertEquals("a, b, c", loaded.artistSeparatorsMatcher().replaceAll("a_feat_b_X_c", ", "));
+    }
+
+    @Test
+    void load_rebuildsSnapshotWhenJsonFileChanges() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        Path blacklist = tempDir.resolve("blacklist.json");
+        Files.writeString(blacklist, "[\"(Official Video)\", \"(Lyrics)\"]");
+        Files.setLastModifiedTime(blacklist, FileTime.fromMillis(Files.getLastModifiedTime(blacklist).toMillis() + 1000));
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        assertEquals(Set.of("(Official Video)", "(Lyrics)"), loaded.blacklist());
+        assertEquals("Song.mp3", loaded.blacklistMatcher().replaceAll("Song(lyrics).mp3", ""));
+        assertNotEquals(built.configVersion(), loaded.configVersion());
+    }
+
+    @Test
+    void load_keepsConfigVersionWhenArtistIsAdded() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        Files.writeString(tempDir.resolve(ConfigSnapshot.ARTISTS_JOURNAL_FILE), "{\"new_artist\":\"New_Artist\"}\n");
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        assertEquals(built.configVersion(), loaded.configVersion(), "Formatted files must not be formatted again");
+    }
+
+    @Test
+    void load_changesConfigVersionWhenArtistNameIsCorrected() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        Path correctNames = tempDir.resolve("correct_artists_names.json");
+        Files.writeString(correctNames, "{\"dvrst\": \"Dvrst\"}");
+        Files.setLastModifiedTime(correctNames, FileTime.fromMillis(Files.getLastModifiedTime(correctNames).toMillis() + 1000));
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        assertNotEquals(built.configVersion(), loaded.configVersion(), "Formatted files must get corrected names");
+    }
+
+    @Test
+    void load_rebuildsSnapshotWhenConstantsChange() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, List.of("format", " & "));
+
+        assertNotEquals(built.configVersion(), loaded.configVersion());
+    }
+
+    @Test
+    void load_rebuildsDamagedSnapshot() throws IOException {
+        ConfigSnapshot built = ConfigSnapshot.load(tempDir, CONSTANTS);
+        Path snapshotFile = tempDir.resolve(ConfigSnapshot.SNAPSHOT_FILENAME);
+        byte[] data = Files.readAllBytes(snapshotFile);
+        Files.write(snapshotFile, Arrays.copyOf(data, data.length - 10));
+
+        ConfigSnapshot loaded = ConfigSnapshot.load(tempDir, CONSTANTS);
+
+        assertEquals(built.configVersion(), loaded.configVersion());
+        assertEquals(built.artistSeparators(), loaded.artistSeparators());
+        assertArrayEquals(data, Files.readAllBytes(snapshotFile));
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.Leo_Proger.events;
+
+import com.github.Leo_Proger.mp3_file_handlers.FileManager;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileEventTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void finish_recordsPathSizeAndOutcome() throws IOException {
+        Path file = tempDir.resolve("old_track.mp3");
+        Path newFile = tempDir.resolve("new_track.mp3");
+        Files.writeString(file, "Test content");
+        Path targetDir = Files.createDirectories(tempDir.resolve("target"));
+        Files.writeString(targetDir.resolve("new_track.mp3"), "Existing file");
+        FileManager fileManager = new FileManager(tempDir, targetDir, 1);
+
+        List<RecordedEvent> events = record(() -> {
+            fileManager.renameFile(file, newFile);
+            assertThrows(FileAlreadyExistsException.class, () -> fileManager.moveFile(newFile, targetDir));
+        });
+
+        RecordedEvent rename = findEvent(events, "com.github.Leo_Proger.Rename");
+        assertEquals(newFile.toString(), rename.getString("path"));
+        assertEquals(12, rename.getLong("size"));
+        assertEquals(FileEvent.OUTCOME_SUCCESS, rename.getString("outcome"));
+
+        RecordedEvent move = findEvent(events, "com.github.Leo_Proger.Move");
+        assertEquals(newFile.toString(), move.getString("path"));
+        assertEquals("FileAlreadyExistsException", move.getString("outcome"));
+    }
+
+    @Test
+    void finish_doesNotRecordWhenEventIsDisabled() throws IOException {
+        Path recordingFile = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.disable("com.github.Leo_Proger.Rename");
+            recording.start();
+            RenameEvent event = new RenameEvent();
+            event.begin();
+            event.finish(tempDir, null);
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+
+        assertTrue(events.stream().noneMatch(event -> event.getEventType().getName().equals("com.github.Leo_Proger.Rename")));
+    }
+
+    private List<RecordedEvent> record(Action action) throws IOException {
+        Path recordingFile = tempDir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        return RecordingFile.readAllEvents(recordingFile);
+    }
+
+    private RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Event \"%s\" is not recorded".formatted(name)));
+    }
+
+    private interface Action {
+        void run() throws IOException;
+    }
+}
@@ -1,32 +1,35 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
+import com.github.Leo_Proger.utils.ArtistJournal;
 import com.github.Leo_Proger.utils.JsonManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.MockedStatic;
-import org.mockito.junit.jupiter.MockitoExtension;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.*;
 
-@ExtendWith(MockitoExtension.class)
 public class ArtistManagerTest {
+    @TempDir
+    Path tempDir;
+
     private ArtistManager artistManager;
-    private Path mockJsonFilePath;
+    private Path jsonFilePath;
+    private ArtistJournal journal;
 
     @BeforeEach
-    public void setUp() {
+    public void setUp() throws IOException {
         artistManager = new ArtistManager();
-        mockJsonFilePath = Path.of("test-artists.json");
+        jsonFilePath = tempDir.resolve("test-artists.json");
+        JsonManager.writeDataToJson(Map.of(), jsonFilePath);
+        journal = new ArtistJournal(jsonFilePath);
     }
 
     /**
@@ -42,82 +45,52 @@ public class ArtistManagerTest {
         System.setIn(new ByteArrayInputStream("\n".getBytes()));
 
         // Call run method and verify no exceptions are thrown
-        assertDoesNotThrow(() -> artistManager.run(emptyArtistSet, mockJsonFilePath));
+        assertDoesNotThrow(() -> artistManager.run(emptyArtistSet, jsonFilePath));
+        assertFalse(Files.exists(journal.getJournalFile()));
     }
 
     /**
      * Test adding artists with user confirmation
      * <p>
-     * Verifies that artists are added to the JSON file when user confirms
+     * Verifies that artists are added to the journal when user confirms
      */
     @Test
-    public void testRunWithUserConfirmation() {
+    public void testRunWithUserConfirmation() throws IOException {
+        JsonManager.writeDataToJson(Map.of("existingartist", "ExistingArtist"), jsonFilePath);
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
         newArtists.add("Artist2");
 
-        // Mock existing artists in JSON file
-        Map<String, String> existingArtists = new HashMap<>();
-        existingArtists.put("existingartist", "ExistingArtist");
-
         // Redirect system input to simulate user confirmation
         System.setIn(new ByteArrayInputStream("y\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Stub loading existing data
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(existingArtists);
-
-            artistManager.run(newArtists, mockJsonFilePath);
-
-            // Verify that writeDataToJson was called with updated artists
-            jsonManagerMock.verify(() -> JsonManager.writeDataToJson(
-                    argThat(map ->
-                            map.containsKey("existingartist") &&
-                                    map.containsKey("artist1") &&
-                                    map.containsKey("artist2")
-                    ),
-                    eq(mockJsonFilePath)
-            ));
-        }
+        artistManager.run(newArtists, jsonFilePath);
+
+        assertEquals(Map.of("existingartist", "ExistingArtist", "artist1", "Artist1", "artist2", "Artist2"),
+                journal.readAll());
     }
 
     /**
      * Test adding artists with user confirmation and already had artists in JSON file
      * <p>
-     * Verifies that artists are added to the JSON file when user confirms but existing artist are remained
+     * Verifies that artists are added when user confirms but existing artist are remained
      */
     @Test
-    public void testRunWithUserConfirmation_HasExistingArtist() {
+    public void testRunWithUserConfirmation_HasExistingArtist() throws IOException {
+        JsonManager.writeDataToJson(Map.of("artist2", "ARTIST2"), jsonFilePath);
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
         newArtists.add("Artist2");
 
-        // Mock existing artists in JSON file
-        Map<String, String> existingArtists = new HashMap<>();
-        existingArtists.put("artist2", "ARTIST2");
-
         // Redirect system input to simulate user confirmation
         System.setIn(new ByteArrayInputStream("y\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Stub loading existing data
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(existingArtists);
-
-            artistManager.run(newArtists, mockJsonFilePath);
-
-            // Verify that writeDataToJson was called with updated artists but artist2 with ARTIST2 value is remained
-            jsonManagerMock.verify(() -> JsonManager.writeDataToJson(
-                    argThat(map ->
-                            map.get("artist2").equals("ARTIST2") &&
-                                    map.containsKey("artist1")
-                    ),
-                    eq(mockJsonFilePath)
-            ));
-        }
+        artistManager.run(newArtists, jsonFilePath);
+
+        // Artist2 with ARTIST2 value is remained, also after merging the journal into the JSON file
+        assertEquals(Map.of("artist1", "Artist1", "artist2", "ARTIST2"), journal.readAll());
+        journal.compact();
+        assertEquals(Map.of("artist1", "Artist1", "artist2", "ARTIST2"), JsonManager.loadDataFromJson(jsonFilePath));
     }
 
     /**
@@ -126,7 +99,7 @@ public class ArtistManagerTest {
      * Verifies that specific artists can be excluded from addition
      */
     @Test
-    public void testRunWithUserExclusion() {
+    public void testRunWithUserExclusion() throws IOException {
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
         newArtists.add("Artist2");
@@ -135,24 +108,10 @@ public class ArtistManagerTest {
         // Redirect system input to simulate user excluding artists
         System.setIn(new ByteArrayInputStream("y 0 2\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Stub loading existing data
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(new HashMap<>());
-
-            // Call run method
-            artistManager.run(newArtists, mockJsonFilePath);
-
-            // Verify that writeDataToJson was called with only the non-excluded artist
-            jsonManagerMock.verify(() -> JsonManager.writeDataToJson(
-                    argThat(map ->
-                            map.size() == 1 &&
-                                    map.containsKey("artist2")
-                    ),
-                    eq(mockJsonFilePath)
-            ));
-        }
+        artistManager.run(newArtists, jsonFilePath);
+
+        // Only the non-excluded artist is added
+        assertEquals(Map.of("artist2", "Artist2"), journal.readAll());
     }
 
     /**
@@ -167,97 +126,65 @@ public class ArtistManagerTest {
         // Redirect system input to simulate user rejection
         System.setIn(new ByteArrayInputStream("n\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Verify that writeDataToJson is never called
-            artistManager.run(newArtists, mockJsonFilePath);
-            jsonManagerMock.verifyNoInteractions();
-        }
+        artistManager.run(newArtists, jsonFilePath);
+        assertFalse(Files.exists(journal.getJournalFile()));
     }
 
     /**
      * Test handling of duplicate artists with case-insensitive comparison
      */
     @Test
-    public void testHandlingOfDuplicateArtistsCaseInsensitive() {
+    public void testHandlingOfDuplicateArtistsCaseInsensitive() throws IOException {
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
         newArtists.add("ARTIST1");
         newArtists.add("artist1");
 
-        // Redirect system input to simulate user rejection
+        // Redirect system input to simulate user confirmation
         System.setIn(new ByteArrayInputStream("y\n".getBytes()));
 
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Simulate empty existing artists
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(new HashMap<>());
-
-            // Capture the actual map passed to writeDataToJson
-            jsonManagerMock.when(() -> JsonManager.writeDataToJson(any(), eq(mockJsonFilePath)))
-                    .thenAnswer(invocation -> {
-                        Map<String, String> passedMap = invocation.getArgument(0);
-
-                        // Verify map properties
-                        assertEquals(1, passedMap.size(), "Should have only one unique artist");
-                        assertTrue(passedMap.containsKey("artist1"), "Should have lowercase key");
-                        assertEquals("Artist1", passedMap.get("artist1"), "Should preserve the first encountered case");
+        artistManager.run(newArtists, jsonFilePath);
 
-                        return null;
-                    });
-            artistManager.run(newArtists, mockJsonFilePath);
-
-            // Verify that writeDataToJson was called
-            jsonManagerMock.verify(() -> JsonManager.writeDataToJson(any(), eq(mockJsonFilePath)));
-        }
+        Map<String, String> artists = journal.readAll();
+        assertEquals(1, artists.size(), "Should have only one unique artist");
+        assertTrue(artists.containsKey("artist1"), "Should have lowercase key");
+        assertEquals("Artist1", artists.get("artist1"), "Should preserve the first encountered case");
+        assertEquals(1, Files.readAllLines(journal.getJournalFile()).size());
     }
 
     /**
-     * Test error handling when JSON file reading fails
+     * Test that adding artists doesn't read the JSON file, so it works even if the JSON file is damaged
      */
     @Test
-    public void testErrorHandlingWhenJsonReadFails() {
+    public void testAddingArtistsDoesNotReadJsonFile() throws IOException {
+        Files.writeString(jsonFilePath, "{\"damaged");
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
 
         // Redirect system input to simulate user confirmation
         System.setIn(new ByteArrayInputStream("y\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Simulate IOException when reading JSON
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenThrow(new IOException("Failed to read JSON"));
+        artistManager.run(newArtists, jsonFilePath);
 
-            // Call run method and verify no unhandled exceptions
-            assertDoesNotThrow(() -> artistManager.run(newArtists, mockJsonFilePath));
-        }
+        assertEquals("{\"artist1\":\"Artist1\"}", Files.readString(journal.getJournalFile()).strip());
     }
 
     /**
-     * Test error handling when JSON file writing fails
+     * Test error handling when journal writing fails
      */
     @Test
-    public void testErrorHandlingWhenJsonWriteFails() {
+    public void testErrorHandlingWhenJournalWriteFails() {
         Set<String> newArtists = new LinkedHashSet<>();
         newArtists.add("Artist1");
 
         // Redirect system input to simulate user confirmation
         System.setIn(new ByteArrayInputStream("y\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Stub reading existing data
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(new HashMap<>());
-
-            // Simulate IOException when writing JSON
-            jsonManagerMock.when(() -> JsonManager.writeDataToJson(anyMap(), eq(mockJsonFilePath)))
-                    .thenThrow(new IOException("Failed to write JSON"));
+        // Journal cannot be created in a dir that doesn't exist
+        Path missingJsonFile = tempDir.resolve("missing").resolve("test-artists.json");
 
-            // Call run method and verify no unhandled exceptions
-            assertDoesNotThrow(() -> artistManager.run(newArtists, mockJsonFilePath));
-        }
+        // Call run method and verify no unhandled exceptions
+        assertDoesNotThrow(() -> artistManager.run(newArtists, missingJsonFile));
     }
 
     /**
@@ -272,14 +199,8 @@ public class ArtistManagerTest {
         // Redirect system input to simulate invalid input
         System.setIn(new ByteArrayInputStream("y 10 abc\n".getBytes()));
 
-        // Use MockedStatic to mock static methods of JsonManager
-        try (MockedStatic<JsonManager> jsonManagerMock = mockStatic(JsonManager.class)) {
-            // Stub loading existing data
-            jsonManagerMock.when(() -> JsonManager.loadDataFromJson(mockJsonFilePath))
-                    .thenReturn(new HashMap<>());
-
-            // Call run method and verify error is logged but no exception thrown
-            assertDoesNotThrow(() -> artistManager.run(newArtists, mockJsonFilePath));
-        }
+        // Call run method and verify error is logged but no exception thrown
+        assertDoesNotThrow(() -> artistManager.run(newArtists, jsonFilePath));
+        assertFalse(Files.exists(journal.getJournalFile()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitrateReaderTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void read_returnsBitrateOfFirstFrame() throws IOException {
+        Path file = tempDir.resolve("song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+
+        assertEquals(128, BitrateReader.read(file));
+    }
+
+    @Test
+    void read_returnsZeroWithoutAudioFrames() throws IOException {
+        Path file = tempDir.resolve("empty.mp3");
+        Files.write(file, new byte[100]);
+
+        assertEquals(0, BitrateReader.read(file));
+    }
+
+    @Test
+    void readBitrate_usesFrameCountOfXingHeader() {
+        ByteBuffer frame = ByteBuffer.allocate(Mp3TestFiles.FRAME_LENGTH);
+        frame.put(new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x64});
+        frame.put(36, "Xing".getBytes());
+        frame.putInt(40, 0x01);
+        // 100 frames of 1152 samples at 44.1 kHz are 2.6 s
+        frame.putInt(44, 100);
+
+        assertEquals(64, BitrateReader.readBitrate(frame, 20_898));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryScannerTest {
+    @TempDir
+    Path tempDir;
+
+    private Path targetDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Create a tree with MP3 files, other files and a dir with MP3 extension
+        Files.createFile(tempDir.resolve("Artist_-_Top.mp3"));
+        Files.createFile(tempDir.resolve("Artist_-_Upper.MP3"));
+        Files.createFile(tempDir.resolve("cover.jpg"));
+        Files.createDirectories(tempDir.resolve("album.mp3"));
+        Files.createFile(tempDir.resolve("album.mp3").resolve("Artist_-_In_Album.mp3"));
+        Files.createDirectories(tempDir.resolve("a").resolve("b"));
+        Files.createFile(tempDir.resolve("a").resolve("b").resolve("Artist_-_Deep.mp3"));
+        Files.createFile(tempDir.resolve("a").resolve("notes.txt"));
+
+        targetDir = Files.createDirectories(tempDir.resolve("target"));
+        Files.createFile(targetDir.resolve("Artist_-_Already_Moved.mp3"));
+    }
+
+    @Test
+    void scan_findsOnlyTopLevelFilesWhenNotRecursive() throws IOException {
+        assertEquals(Set.of("Artist_-_Top.mp3", "Artist_-_Upper.MP3"), scan(new DirectoryScanner(false, null)));
+    }
+
+    @Test
+    void scan_findsFilesInSubdirsWhenRecursive() throws IOException {
+        assertEquals(Set.of("Artist_-_Top.mp3", "Artist_-_Upper.MP3", "Artist_-_In_Album.mp3", "Artist_-_Deep.mp3",
+                "Artist_-_Already_Moved.mp3"), scan(new DirectoryScanner(true, null)));
+    }
+
+    @Test
+    void scan_skipsExcludedDir() throws IOException {
+        assertEquals(Set.of("Artist_-_Top.mp3", "Artist_-_Upper.MP3", "Artist_-_In_Album.mp3", "Artist_-_Deep.mp3"),
+                scan(new DirectoryScanner(true, targetDir)));
+    }
+
+    @Test
+    void scan_findsAllFilesOfLargeTree() throws IOException {
+        for (int dir = 0; dir < 20; dir++) {
+            Path subdir = Files.createDirectories(tempDir.resolve("large").resolve("dir" + dir).resolve("inner"));
+            for (int file = 0; file < 50; file++) {
+                Files.createFile(subdir.resolve("Artist_-_Song_%d_%d.mp3".formatted(dir, file)));
+            }
+        }
+
+        try (Stream<Path> files = new DirectoryScanner(true, null).scan(tempDir.resolve("large"))) {
+            assertEquals(1000, files.distinct().count());
+        }
+    }
+
+    @Test
+    void scan_throwsExceptionWhenDirDoesNotExist() {
+        assertThrows(IOException.class, () -> new DirectoryScanner(true, null).scan(tempDir.resolve("missing")));
+    }
+
+    @Test
+    void isMp3File_ignoresCaseOfExtension() {
+        assertTrue(DirectoryScanner.isMp3File(Path.of("Artist_-_Song.Mp3")));
+        assertFalse(DirectoryScanner.isMp3File(Path.of("Artist_-_Song.mp4")));
+        assertFalse(DirectoryScanner.isMp3File(Path.of("mp3")));
+    }
+
+    private Set<String> scan(DirectoryScanner scanner) throws IOException {
+        try (Stream<Path> files = scanner.scan(tempDir)) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+}
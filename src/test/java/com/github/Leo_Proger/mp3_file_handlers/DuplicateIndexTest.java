@@ -0,0 +1,147 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateIndexTest {
+    @TempDir
+    Path tempDir;
+
+    private Path sourceDir;
+    private Path targetDir;
+
+    @BeforeEach
+    void createDirs() throws IOException {
+        sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        targetDir = Files.createDirectory(tempDir.resolve("target"));
+    }
+
+    @Test
+    void findOrAdd_findsSameAudioWithOtherTagAndName() throws Exception {
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Artist_-_Song.mp3"), 200);
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+
+        Path incoming = sourceDir.resolve("artist - song (1).mp3");
+        Mp3TestFiles.writeSilentMp3(incoming, 200);
+        ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.TITLE, "Song");
+        new Id3TagWriter(500).write(incoming, tag);
+
+        assertEquals(Optional.of("Artist_-_Song.mp3"), index.findOrAdd(incoming, "Artist_-_Song_1.mp3"));
+    }
+
+    @Test
+    void load_readsFilenamesWithTabs() throws Exception {
+        String filename = "Artist\t-\tSong.mp3";
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve(filename), 200);
+        DuplicateIndex.load(targetDir).flush();
+
+        Path source = sourceDir.resolve("Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(source, 200);
+        assertEquals(Optional.of(filename), DuplicateIndex.load(targetDir).findOrAdd(source, "Artist_-_Song.mp3"));
+    }
+
+    @Test
+    void findOrAdd_findsSameAudioOfFileThatIsNotInTargetYet() throws Exception {
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+        Path first = sourceDir.resolve("Artist_-_Song.mp3");
+        Path second = sourceDir.resolve("Artist_-_Song_Copy.mp3");
+        Mp3TestFiles.writeSilentMp3(first, 200);
+        Mp3TestFiles.writeSilentMp3(second, 200);
+
+        assertEquals(Optional.empty(), index.findOrAdd(first, "Artist_-_Song.mp3"));
+        assertEquals(Optional.of("Artist_-_Song.mp3"), index.findOrAdd(second, "Artist_-_Song_Copy.mp3"),
+                "File of the same run that is not moved yet should be found");
+        index.flush();
+        Path indexFile = targetDir.resolve(DuplicateIndex.INDEX_FILENAME);
+        assertTrue(Files.notExists(indexFile) || Files.readAllLines(indexFile).stream().allMatch(String::isBlank),
+                "Files that are not in target dir should not be written to the index file");
+
+        Files.move(first, targetDir.resolve("Artist_-_Song.mp3"));
+        index.update(targetDir.resolve("Artist_-_Song.mp3"));
+        assertEquals(Optional.of("Artist_-_Song.mp3"), index.findOrAdd(second, "Artist_-_Song_Copy.mp3"));
+    }
+
+    @Test
+    void findOrAdd_comparesWholeAudioOfFilesWithSameBeginningAndEnd() throws Exception {
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Artist_-_Song.mp3"), 200);
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+
+        Path incoming = sourceDir.resolve("Artist_-_Other_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(incoming, 200);
+        // Middle of audio data is not in partial hash
+        try (FileChannel channel = FileChannel.open(incoming, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), Files.size(incoming) / 2);
+        }
+
+        assertEquals(Optional.empty(), index.findOrAdd(incoming, "Artist_-_Other_Song.mp3"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void load_readsSavedIndexWithHashes() throws Exception {
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Artist_-_Song.mp3"), 200);
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+        Path first = sourceDir.resolve("Artist_-_Song_2.mp3");
+        Mp3TestFiles.writeSilentMp3(first, 200);
+        index.findOrAdd(first, "Artist_-_Song_2.mp3");
+        index.flush();
+
+        // Index is read from the file, not built from files in target dir
+        Files.writeString(targetDir.resolve("Not_-_Indexed.mp3"), "text");
+        DuplicateIndex loaded = DuplicateIndex.load(targetDir);
+        assertEquals(1, loaded.size());
+
+        Path second = sourceDir.resolve("Artist_-_Song_3.mp3");
+        Mp3TestFiles.writeSilentMp3(second, 200);
+        assertEquals(Optional.of("Artist_-_Song.mp3"), loaded.findOrAdd(second, "Artist_-_Song_3.mp3"));
+    }
+
+    @Test
+    void findOrAdd_ignoresFilesDeletedFromTargetDir() throws Exception {
+        Path indexed = targetDir.resolve("Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(indexed, 200);
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+        Files.delete(indexed);
+
+        Path incoming = sourceDir.resolve("Artist_-_Song_2.mp3");
+        Mp3TestFiles.writeSilentMp3(incoming, 200);
+
+        assertEquals(Optional.empty(), index.findOrAdd(incoming, "Artist_-_Song_2.mp3"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void load_removesReplacedLinesFromIndexFile() throws Exception {
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Artist_-_Song.mp3"), 200);
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Artist_-_Other_Song.mp3"), 100);
+        DuplicateIndex index = DuplicateIndex.load(targetDir);
+        Path incoming = sourceDir.resolve("Artist_-_Song_2.mp3");
+        Mp3TestFiles.writeSilentMp3(incoming, 200);
+        index.findOrAdd(incoming, "Artist_-_Song_2.mp3");
+        index.remove("Artist_-_Other_Song.mp3");
+        index.flush();
+
+        DuplicateIndex loaded = DuplicateIndex.load(targetDir);
+
+        List<String> lines = Files.readAllLines(targetDir.resolve(DuplicateIndex.INDEX_FILENAME));
+        assertEquals(1, loaded.size());
+        assertEquals(1, lines.size());
+        assertTrue(lines.getFirst().startsWith("Artist_-_Song.mp3\t"), "Saved hashes should be kept");
+        assertFalse(lines.getFirst().endsWith("-"), "Saved hashes should be kept");
+    }
+}
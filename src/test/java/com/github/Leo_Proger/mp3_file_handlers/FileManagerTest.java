@@ -1,14 +1,26 @@
 package com.github.Leo_Proger.mp3_file_handlers;
 
+import com.github.Leo_Proger.config.CollisionPolicy;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -54,7 +66,7 @@ class FileManagerTest {
     }
 
     @Test
-    void renameFile_doesNotThrowExceptionWhenFileAlreadyExists() throws IOException {
+    void renameFile_doesNotReplaceExistingFile() throws IOException {
         // Create a temporary dir
         Path testDir = tempDir.resolve("rename_test_dir");
         Files.createDirectories(testDir);
@@ -63,14 +75,14 @@ class FileManagerTest {
         Path sourceFile = testDir.resolve("source.mp3");
         Path targetFile = testDir.resolve("target.mp3");
 
-        Files.createFile(sourceFile);
-        Files.createFile(targetFile);
+        Files.writeString(sourceFile, "source");
+        Files.writeString(targetFile, "target");
 
-        // Checking that an attempt to rename an existing file does not throw an exception
-        assertDoesNotThrow(
-                () -> fileManager.renameFile(sourceFile, targetFile),
-                "Renaming to an existing file should not throw an exception"
-        );
+        // Checking that an attempt to rename to an existing file keeps both files
+        assertThrows(FileAlreadyExistsException.class, () -> fileManager.renameFile(sourceFile, targetFile),
+                "Renaming to an existing file should fail");
+        assertEquals("source", Files.readString(sourceFile));
+        assertEquals("target", Files.readString(targetFile), "Existing file should not be replaced");
     }
 
     @Test
@@ -126,4 +138,454 @@ class FileManagerTest {
                     "Original file should be removed: " + fileName);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void run_parallelProcessingKeepsSequentialOrderOfNewArtists() throws IOException {
+        Path sourceDir = tempDir.resolve("parallel_source");
+        Path targetDir = tempDir.resolve("parallel_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+
+        for (int i = 0; i < 20; i++) {
+            Mp3TestFiles.writeSilentMp3(sourceDir.resolve("ParallelArtist%d_-_Song_%d.mp3".formatted(i, i)));
+        }
+        // Expected order of new artists is the order in which files are listed
+        List<String> expectedArtists;
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            expectedArtists = paths
+                    .map(path -> path.getFileName().toString().split("_-_")[0])
+                    .toList();
+        }
+
+        FilenameFormatter.getNewArtists().clear();
+        new FileManager(sourceDir, targetDir, 4).run(true);
+
+        assertEquals(expectedArtists, new ArrayList<>(FilenameFormatter.getNewArtists()));
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(expectedArtists.size(), paths.count(), "All files should be moved to target dir");
+        }
+    }
+
+    @Test
+    void run_skipsFilesFormattedByPreviousRun() throws Exception {
+        Path sourceDir = tempDir.resolve("manifest_source");
+        Files.createDirectories(sourceDir);
+        Path file = sourceDir.resolve("Manifest_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        FileTime formattedTime = Files.getLastModifiedTime(file);
+        assertTrue(Files.exists(sourceDir.resolve(RunManifest.MANIFEST_FILENAME)), "Manifest should be saved");
+
+        // Tags of a file from the manifest are not rewritten, so modification time stays the same
+        Thread.sleep(10);
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        assertEquals(formattedTime, Files.getLastModifiedTime(file));
+
+        // Changed file is formatted again
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        assertNotEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(file));
+    }
+
+    @Test
+    void run_keepsManifestEntriesOfFilesOutsideOfRun() throws Exception {
+        Path sourceDir = tempDir.resolve("partial_source");
+        Files.createDirectories(sourceDir);
+        Path file = sourceDir.resolve("Partial_Artist_-_Song.mp3");
+        Path otherFile = sourceDir.resolve("Partial_Artist_-_Other_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+        Mp3TestFiles.writeSilentMp3(otherFile);
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        FileTime formattedTime = Files.getLastModifiedTime(otherFile);
+
+        // Run of one file, e.g. in watch mode, must not drop the entry of the other file
+        new FileManager(sourceDir, tempDir, 1).run(List.of(file), false);
+        Thread.sleep(10);
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        assertEquals(formattedTime, Files.getLastModifiedTime(otherFile));
+    }
+
+    @Test
+    void run_continuesFilesTaggedByKilledRun() throws Exception {
+        Path sourceDir = tempDir.resolve("journal_source");
+        Files.createDirectories(sourceDir);
+        String filename = "Journal_Artist & Other_Artist_-_Song.mp3";
+        Path file = sourceDir.resolve(filename);
+        Mp3TestFiles.writeSilentMp3(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+
+        RunJournal killed = RunJournal.open(sourceDir);
+        killed.record(RunJournal.Operation.TAGGED, file, null, Files.readAttributes(file, BasicFileAttributes.class));
+        killed.commit();
+
+        new FileManager(sourceDir, tempDir, 1).run(false);
+        Path renamed = sourceDir.resolve(new FileFormatter().plan(filename).newFilename());
+        assertFalse(Files.exists(file));
+        // Tag is not written again, so modification time stays the same after renaming
+        assertEquals(FileTime.fromMillis(1_000_000), Files.getLastModifiedTime(renamed));
+        assertFalse(Files.exists(sourceDir.resolve(RunJournal.JOURNAL_FILENAME)), "Journal of finished run should be deleted");
+    }
+
+    @Test
+    void run_deletesSourceOfFileMovedByKilledRunWithoutJournalRecord() throws Exception {
+        Path sourceDir = tempDir.resolve("unlogged_source");
+        Path targetDir = tempDir.resolve("unlogged_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        String filename = "Unlogged_Artist_-_Song.mp3";
+        Path file = sourceDir.resolve(filename);
+        Mp3TestFiles.writeSilentMp3(file);
+        // Killed run copied the file to target dir, but its intent was not committed yet
+        RunJournal.open(sourceDir);
+        String targetFilename = new FileFormatter().plan(filename).newFilename();
+        Files.copy(file, targetDir.resolve(targetFilename));
+
+        ProcessingOptions options = new ProcessingOptions(FilePipeline.defaultStages(1), false, false, CollisionPolicy.SUFFIX);
+        new FileManager(sourceDir, targetDir, 1, false, options).run(true);
+
+        assertFalse(Files.exists(file), "Source of the moved file should be deleted");
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(List.of(targetDir.resolve(targetFilename)),
+                    paths.filter(path -> path.toString().endsWith(".mp3")).toList(), "File should not be moved again");
+        }
+    }
+
+    @Test
+    void run_writesManifestOfFewFilesOnlyWhenItChanges() throws Exception {
+        Path sourceDir = tempDir.resolve("few_files_source");
+        Path targetDir = tempDir.resolve("few_files_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Path kept = sourceDir.resolve("Kept Artist - Song.mp3");
+        Path moved = sourceDir.resolve("Moved_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(kept);
+        Mp3TestFiles.writeSilentMp3(moved);
+        FileManager manager = new FileManager(sourceDir, targetDir, 1);
+
+        manager.run(List.of(kept), false);
+        Path manifestFile = sourceDir.resolve(RunManifest.MANIFEST_FILENAME);
+        assertTrue(Files.exists(manifestFile), "Formatted file that was not moved should be in the manifest");
+        Files.setLastModifiedTime(manifestFile, FileTime.fromMillis(0));
+
+        assertEquals(List.of(targetDir.resolve("Moved_Artist_-_Song.mp3")), manager.run(List.of(moved), true));
+        assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(manifestFile),
+                "Manifest should not be written when its entries are the same");
+    }
+
+    @Test
+    void plan_doesNotChangeFilesAndFindsCollisions() throws Exception {
+        Path sourceDir = tempDir.resolve("plan_source");
+        Path targetDir = tempDir.resolve("plan_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Path file = sourceDir.resolve("Plan_Artist_-_Song.mp3");
+        Path otherFile = sourceDir.resolve("Plan_Artist_-_Other_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+        Mp3TestFiles.writeSilentMp3(otherFile);
+        FileTime modifiedTime = Files.getLastModifiedTime(file);
+        Path planFile = tempDir.resolve("plan.json");
+
+        new FileManager(sourceDir, targetDir, 2).plan(planFile);
+
+        RunPlan plan = RunPlan.load(planFile);
+        assertEquals(2, plan.entries().size());
+        assertTrue(plan.entries().stream().allMatch(entry -> entry.error() == null));
+        assertEquals(modifiedTime, Files.getLastModifiedTime(file), "File should not be changed");
+        assertFalse(Files.exists(sourceDir.resolve(RunManifest.MANIFEST_FILENAME)), "Manifest should not be saved");
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(0, paths.count(), "Files should not be moved");
+        }
+
+        // File with the planned name already exists in target dir
+        RunPlan.Entry entry = plan.entries().stream()
+                .filter(e -> e.source().equals(file.toAbsolutePath().normalize().toString()))
+                .findFirst().orElseThrow();
+        Files.createFile(targetDir.resolve(entry.newFilename()));
+        new FileManager(sourceDir, targetDir, 2).plan(planFile);
+
+        assertTrue(RunPlan.load(planFile).entries().stream()
+                .anyMatch(e -> e.source().equals(entry.source()) && e.error() != null));
+    }
+
+    @Test
+    void apply_executesPlanAndSkipsChangedFiles() throws Exception {
+        Path sourceDir = tempDir.resolve("apply_source");
+        Path targetDir = tempDir.resolve("apply_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Path file = sourceDir.resolve("Apply_Artist_-_Song.mp3");
+        Path changedFile = sourceDir.resolve("Apply_Artist_-_Changed_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+        Mp3TestFiles.writeSilentMp3(changedFile);
+        Path planFile = tempDir.resolve("apply_plan.json");
+
+        FileManager fileManager = new FileManager(sourceDir, targetDir, 2);
+        fileManager.plan(planFile);
+        Files.setLastModifiedTime(changedFile, FileTime.fromMillis(0));
+        fileManager.apply(planFile);
+
+        assertFalse(Files.exists(file), "Planned file should be moved");
+        assertTrue(Files.exists(changedFile), "Changed file should not be touched");
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(1, paths.count());
+        }
+    }
+
+    @Test
+    void apply_refusesPlanOfOtherTargetDir() throws Exception {
+        Path sourceDir = tempDir.resolve("other_target_source");
+        Path plannedTargetDir = tempDir.resolve("other_target_planned");
+        Path targetDir = tempDir.resolve("other_target_configured");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(plannedTargetDir);
+        Files.createDirectories(targetDir);
+        Path file = sourceDir.resolve("Other_Target_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+        Path planFile = tempDir.resolve("other_target_plan.json");
+
+        new FileManager(sourceDir, plannedTargetDir, 2).plan(planFile);
+        new FileManager(sourceDir, targetDir, 2).apply(planFile);
+
+        assertTrue(Files.exists(file), "File should not be touched");
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(0, paths.count());
+        }
+    }
+
+    @Test
+    void run_writesFormattedFilesDirectlyToTarget() throws IOException {
+        Path sourceDir = tempDir.resolve("direct_source");
+        Path targetDir = tempDir.resolve("direct_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        for (int i = 0; i < 5; i++) {
+            Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Direct_Artist_-_Song_%d.mp3".formatted(i)));
+        }
+
+        new FileManager(sourceDir, targetDir, 2, false,
+                new ProcessingOptions(FilePipeline.defaultStages(2), true, false, CollisionPolicy.ERROR)).run(true);
+
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            assertTrue(paths.noneMatch(path -> path.toString().endsWith(".mp3")), "Source files should be deleted");
+        }
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            List<Path> files = paths.toList();
+            assertEquals(5, files.size(), "Only formatted files should be in target dir: " + files);
+            assertTrue(files.stream().allMatch(path -> path.toString().endsWith(".mp3")));
+        }
+    }
+
+    @Test
+    void run_keepsFilesWithAudioAlreadyInTarget() throws IOException {
+        Path sourceDir = tempDir.resolve("duplicate_source");
+        Path targetDir = tempDir.resolve("duplicate_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Mp3TestFiles.writeSilentMp3(targetDir.resolve("Duplicate_Artist_-_Song.mp3"), 100);
+        Path duplicate = sourceDir.resolve("Duplicate_Artist_-_Song_Copy.mp3");
+        Mp3TestFiles.writeSilentMp3(duplicate, 100);
+        Path unique = sourceDir.resolve("Duplicate_Artist_-_Other_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(unique, 101);
+
+        new FileManager(sourceDir, targetDir, 1, false,
+                new ProcessingOptions(FilePipeline.defaultStages(1), false, true, CollisionPolicy.ERROR)).run(true);
+
+        assertTrue(Files.exists(duplicate), "Duplicate should stay in source dir");
+        assertFalse(Files.exists(unique), "Unique file should be moved");
+        assertTrue(Files.exists(targetDir.resolve(DuplicateIndex.INDEX_FILENAME)));
+    }
+
+    @Test
+    void run_movesOneOfSameAudioFilesOfBatchInParallel() throws IOException {
+        Path sourceDir = tempDir.resolve("batch_duplicate_source");
+        Path targetDir = tempDir.resolve("batch_duplicate_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        for (String name : List.of("Batch_Artist_-_Song.mp3", "Batch_Artist_-_Song_Copy.mp3", "Batch_Artist_-_Song_Other_Copy.mp3")) {
+            Mp3TestFiles.writeSilentMp3(sourceDir.resolve(name), 100);
+        }
+
+        new FileManager(sourceDir, targetDir, 4, false,
+                new ProcessingOptions(FilePipeline.defaultStages(4), false, true, CollisionPolicy.ERROR)).run(true);
+
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(1, paths.filter(path -> path.toString().endsWith(".mp3")).count(), "Only one copy should be moved");
+        }
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            assertEquals(2, paths.filter(path -> path.toString().endsWith(".mp3")).count(), "Duplicates should stay in source dir");
+        }
+    }
+
+    @Test
+    void run_resolvesCollisionsIgnoringCaseByPolicy() throws IOException {
+        Path sourceDir = tempDir.resolve("collision_source");
+        Path targetDir = tempDir.resolve("collision_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Path file = sourceDir.resolve("Collision_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file, 10);
+        new FileManager(sourceDir, targetDir, 1).run(true);
+        Path moved;
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            moved = paths.findFirst().orElseThrow();
+        }
+        // Name differs only in case
+        Path existing = moved.resolveSibling(moved.getFileName().toString().toUpperCase(Locale.ROOT));
+        Files.move(moved, existing);
+
+        Mp3TestFiles.writeSilentMp3(file, 11);
+        new FileManager(sourceDir, targetDir, 1, false,
+                new ProcessingOptions(FilePipeline.defaultStages(1), false, false, CollisionPolicy.SKIP)).run(true);
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            assertEquals(1, paths.filter(path -> path.toString().endsWith(".mp3")).count(), "Skipped file should stay in source dir");
+        }
+
+        new FileManager(sourceDir, targetDir, 1, false,
+                new ProcessingOptions(FilePipeline.defaultStages(1), false, false, CollisionPolicy.SUFFIX)).run(true);
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            List<String> names = paths.map(path -> path.getFileName().toString()).toList();
+            assertEquals(2, names.size(), names.toString());
+            assertTrue(names.contains(existing.getFileName().toString()), "Existing file should be kept");
+            assertTrue(names.stream().anyMatch(name -> name.endsWith("_(2).mp3")), names.toString());
+        }
+    }
+
+    @Test
+    void run_keepsFilesWithSameFormattedNameInParallel() throws IOException {
+        Path sourceDir = tempDir.resolve("same_name_source");
+        Path targetDir = tempDir.resolve("same_name_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        // Both names are formatted to "Same_Artist_-_Song.mp3"
+        Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Same Artist - Song.mp3"), 10);
+        Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Same_Artist_-_Song.mp3"), 11);
+
+        // Files are renamed in source dir
+        new FileManager(sourceDir, targetDir, 4).run(false);
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            assertEquals(2, paths.filter(path -> path.toString().endsWith(".mp3")).count(), "No file should be replaced");
+        }
+
+        new FileManager(sourceDir, targetDir, 4, false,
+                new ProcessingOptions(FilePipeline.defaultStages(4), false, false, CollisionPolicy.SUFFIX)).run(true);
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            List<Long> sizes = new ArrayList<>();
+            for (Path path : paths.filter(path -> path.toString().endsWith(".mp3")).toList()) {
+                sizes.add(Files.size(path));
+            }
+            assertEquals(2, sizes.size(), "Both files should be moved");
+            assertNotEquals(sizes.get(0), sizes.get(1), "Neither file should replace the other");
+        }
+    }
+
+    @Test
+    void runWorker_processesEveryFileByOneWorker() throws Exception {
+        Path sourceDir = tempDir.resolve("worker_source");
+        Path targetDir = tempDir.resolve("worker_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        for (int i = 0; i < 20; i++) {
+            Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Worker_Artist_-_Song_%d.mp3".formatted(i)), 5);
+        }
+        ProcessingOptions options = ProcessingOptions.defaults(2).forWorkers();
+
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            for (String workerId : List.of("first", "second")) {
+                workers.add(executor.submit(() -> {
+                    try (WorkerLeases leases = new WorkerLeases(sourceDir, workerId, Duration.ofMinutes(5))) {
+                        new FileManager(sourceDir, targetDir, 2, false, options).runWorker(leases);
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+
+        try (Stream<Path> paths = Files.list(sourceDir)) {
+            assertTrue(paths.noneMatch(path -> path.toString().endsWith(".mp3")), "All files should be processed");
+        }
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(20, paths.count());
+        }
+        try (Stream<Path> reports = Files.list(sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("reports"))) {
+            assertEquals(2, reports.count(), "Every worker should write its report");
+        }
+    }
+
+    @Test
+    void runWorker_deletesReportsOfPreviousBatch() throws Exception {
+        Path sourceDir = tempDir.resolve("batch_source");
+        Path targetDir = tempDir.resolve("batch_target");
+        Path reportDir = sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("reports");
+        Files.createDirectories(reportDir);
+        Files.createDirectories(targetDir);
+        Files.writeString(reportDir.resolve("previous.json"), "{}");
+        Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Batch_Artist_-_Song.mp3"));
+
+        try (WorkerLeases leases = new WorkerLeases(sourceDir, "current", Duration.ofMinutes(5))) {
+            new FileManager(sourceDir, targetDir, 1, false, ProcessingOptions.defaults(1).forWorkers()).runWorker(leases);
+        }
+
+        try (Stream<Path> reports = Files.list(reportDir)) {
+            assertEquals(List.of(reportDir.resolve("current.json")), reports.toList());
+        }
+    }
+
+    @Test
+    void runWorker_keepsReportsOfWorkersOfCurrentBatch() throws Exception {
+        Path sourceDir = tempDir.resolve("live_batch_source");
+        Path targetDir = tempDir.resolve("live_batch_target");
+        Path reportDir = sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("reports");
+        Files.createDirectories(reportDir);
+        Files.createDirectories(targetDir);
+        new RunMetrics().writeReport(reportDir.resolve("other.json"));
+        Mp3TestFiles.writeSilentMp3(sourceDir.resolve("Batch_Artist_-_Song.mp3"));
+
+        try (WorkerLeases other = new WorkerLeases(sourceDir, "other", Duration.ofMinutes(5))) {
+            assertTrue(other.joinBatch());
+            try (WorkerLeases leases = new WorkerLeases(sourceDir, "current", Duration.ofMinutes(5))) {
+                new FileManager(sourceDir, targetDir, 1, false, ProcessingOptions.defaults(1).forWorkers()).runWorker(leases);
+            }
+        }
+
+        try (Stream<Path> reports = Files.list(reportDir)) {
+            assertEquals(Set.of(reportDir.resolve("current.json"), reportDir.resolve("other.json")), reports.collect(Collectors.toSet()),
+                    "Report of a worker that is processing files should be kept");
+        }
+    }
+
+    @Test
+    void runWorker_finishesFilePutToTargetDirByCrashedWorker() throws Exception {
+        Path sourceDir = tempDir.resolve("crashed_source");
+        Path targetDir = tempDir.resolve("crashed_target");
+        Files.createDirectories(sourceDir);
+        Files.createDirectories(targetDir);
+        Path file = sourceDir.resolve("Crashed_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+        // Worker crashed after the file was put to target dir and before it was deleted from source dir
+        WorkerLeases crashed = new WorkerLeases(sourceDir, "crashed", Duration.ofMinutes(5));
+        assertTrue(crashed.tryClaim(file));
+        crashed.recordTarget(file, "Crashed_Artist_-_Song.mp3");
+        Files.copy(file, targetDir.resolve("Crashed_Artist_-_Song.mp3"));
+        try (Stream<Path> leases = Files.list(sourceDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("leases"))) {
+            for (Path lease : leases.toList()) {
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(0));
+            }
+        }
+
+        ProcessingOptions options = new ProcessingOptions(FilePipeline.defaultStages(1), false, false, CollisionPolicy.SUFFIX);
+        try (WorkerLeases leases = new WorkerLeases(sourceDir, "other", Duration.ofMinutes(5))) {
+            new FileManager(sourceDir, targetDir, 1, false, options.forWorkers()).runWorker(leases);
+        }
+
+        assertFalse(Files.exists(file), "Source of the finished file should be deleted");
+        try (Stream<Path> paths = Files.list(targetDir)) {
+            assertEquals(List.of(targetDir.resolve("Crashed_Artist_-_Song.mp3")),
+                    paths.filter(path -> path.toString().endsWith(".mp3")).toList(), "File should not be put to target dir again");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.config.SyncPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileMoverTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void copyAndDelete_copiesDataAndDeletesSource() throws IOException {
+        Path source = tempDir.resolve("source.mp3");
+        byte[] data = new byte[20 * 1024 * 1024 + 123];
+        new Random(7).nextBytes(data);
+        Files.write(source, data);
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path targetFile = targetDir.resolve("source.mp3");
+
+        long checksum = new FileMover(SyncPolicy.FILE_AND_DIR).copyAndDelete(source, targetFile);
+
+        assertFalse(Files.exists(source));
+        assertArrayEquals(data, Files.readAllBytes(targetFile));
+        assertEquals(FileMover.checksum(targetFile), checksum, "Checksum should be computed from copied data");
+        try (Stream<Path> files = Files.list(targetDir)) {
+            assertEquals(1, files.count(), "Temporary file should be removed");
+        }
+    }
+
+    @Test
+    void copyAndDelete_keepsSourceIfTargetExists() throws IOException {
+        Path source = tempDir.resolve("source.mp3");
+        Files.writeString(source, "source");
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path targetFile = Files.writeString(targetDir.resolve("source.mp3"), "existing");
+
+        assertThrows(FileAlreadyExistsException.class, () -> new FileMover(SyncPolicy.NONE).copyAndDelete(source, targetFile));
+
+        assertEquals("source", Files.readString(source));
+        assertEquals("existing", Files.readString(targetFile));
+        try (Stream<Path> files = Files.list(targetDir)) {
+            assertEquals(1, files.count(), "Temporary file should be removed");
+        }
+    }
+
+    @Test
+    void move_renamesFileInTheSameFileSystem() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("source.mp3"), "data");
+        Path targetFile = tempDir.resolve("renamed.mp3");
+
+        new FileMover(SyncPolicy.FILE).move(source, targetFile);
+
+        assertFalse(Files.exists(source));
+        assertEquals("data", Files.readString(targetFile));
+    }
+
+    @Test
+    void move_keepsSourceIfTargetExists() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("source.mp3"), "source");
+        Path targetFile = Files.writeString(tempDir.resolve("existing.mp3"), "existing");
+
+        assertThrows(FileAlreadyExistsException.class, () -> new FileMover(SyncPolicy.FILE).move(source, targetFile));
+
+        assertEquals("source", Files.readString(source));
+        assertEquals("existing", Files.readString(targetFile));
+    }
+
+    @Test
+    void checksum_isCrc32cOfFile() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("file"), "123456789");
+
+        // Check value of CRC32C
+        assertEquals(0xE3069283L, FileMover.checksum(file));
+    }
+}
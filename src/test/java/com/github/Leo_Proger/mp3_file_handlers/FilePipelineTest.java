@@ -0,0 +1,93 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilePipelineTest {
+    @Test
+    void run_passesItemsThroughAllStagesInSubmittedOrder() throws Exception {
+        Map<PipelineStage, UnaryOperator<List<String>>> steps = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            steps.put(stage, item -> {
+                item.add(stage.name());
+                return item;
+            });
+        }
+        List<Integer> numbers = IntStream.range(0, 200).boxed().toList();
+        List<String> results = new ArrayList<>();
+
+        try (FilePipeline<List<String>> pipeline = new FilePipeline<>(FilePipeline.defaultStages(4), steps, new RunMetrics())) {
+            Iterator<List<String>> items = numbers.stream()
+                    .map(number -> (List<String>) new ArrayList<>(List.of(String.valueOf(number))))
+                    .iterator();
+            pipeline.run(items, item -> results.add(String.join(" ", item)));
+        }
+
+        assertEquals(numbers.stream().map(number -> number + " NORMALIZE TAG_READ TAG_WRITE MOVE").toList(), results);
+    }
+
+    @Test
+    void run_slowLastStageLimitsTakenItems() throws Exception {
+        Map<PipelineStage, FilePipeline.StageSettings> settings = new EnumMap<>(FilePipeline.defaultStages(1));
+        settings.put(PipelineStage.MOVE, new FilePipeline.StageSettings(1, 1));
+        CountDownLatch moveAllowed = new CountDownLatch(1);
+        Map<PipelineStage, UnaryOperator<Integer>> steps = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            steps.put(stage, UnaryOperator.identity());
+        }
+        steps.put(PipelineStage.MOVE, item -> {
+            try {
+                moveAllowed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return item;
+        });
+        AtomicInteger takenItems = new AtomicInteger();
+        Iterator<Integer> items = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return takenItems.get() < 1000;
+            }
+
+            @Override
+            public Integer next() {
+                return takenItems.incrementAndGet();
+            }
+        };
+        RunMetrics metrics = new RunMetrics();
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+
+        try (FilePipeline<Integer> pipeline = new FilePipeline<>(settings, steps, metrics)) {
+            Thread runner = new Thread(() -> {
+                try {
+                    pipeline.run(items, results::add);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            runner.start();
+            TimeUnit.MILLISECONDS.sleep(200);
+
+            // Threads and queues of all stages, nothing more is taken while moving is blocked
+            assertTrue(takenItems.get() <= 3 * (1 + 2) + (1 + 1) + 1, "Taken items: " + takenItems.get());
+            moveAllowed.countDown();
+            runner.join();
+        }
+
+        assertEquals(1000, results.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> queues = (Map<String, Map<String, Object>>) metrics.createReport().get("queues");
+        assertEquals(1, queues.get("MOVE").get("capacity"));
+        assertEquals(1L, queues.get("MOVE").get("maxDepth"));
+        assertTrue((Long) queues.get("MOVE").get("fullCount") > 0);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.github.Leo_Proger.exceptions.Mp3FileFormattingException;
+import com.github.Leo_Proger.utils.JsonManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static com.github.Leo_Proger.config.Config.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilenameRulesTest {
+    /**
+     * Pieces that random filenames are made of, they trigger every formatting rule
+     */
+    private static final String[] PIECES = {
+            "Artist", "артист", "DVRST", "kordhell", "Song", " ", "  ", "_", "__", "-", " - ", "_-_", ",", " ,", ", ",
+            ",_", "\t", "x", " x ", "_x_", " feat ", "_FT._", " & ", "(Official Video)", "(EEMUSIC.ru)",
+            "[music video]", "Ø", "★", "’", ".mp3", ".MP3", "(", ")"
+    };
+
+    /**
+     * Correct names as a plain map, the way they were stored before the dictionary
+     */
+    private static Map<String, String> correctArtistsNames;
+
+    @BeforeAll
+    static void loadCorrectArtistsNames() throws IOException {
+        correctArtistsNames = JsonManager.loadDataFromJson(RESOURCES_PATH.resolve("correct_artists_names.json"));
+    }
+
+    @Test
+    void apply_givesSameResultAsChainOfStringOperations() {
+        Random random = new Random(2024);
+        FilenameRules rules = FILENAME_RULES;
+        StringBuilder buffer = new StringBuilder();
+        StringBuilder secondBuffer = new StringBuilder();
+
+        for (int test = 0; test < 20_000; test++) {
+            StringBuilder filename = new StringBuilder();
+            int pieces = 1 + random.nextInt(10);
+            for (int i = 0; i < pieces; i++) {
+                filename.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            if (random.nextBoolean()) {
+                filename.append(".mp3");
+            }
+
+            Set<String> expectedArtists = new LinkedHashSet<>();
+            Set<String> actualArtists = new LinkedHashSet<>();
+            String expected = formatWithStringOperations(filename.toString(), expectedArtists);
+            String actual;
+            try {
+                actual = rules.apply(filename.toString(), buffer, secondBuffer, actualArtists);
+            } catch (Mp3FileFormattingException e) {
+                actual = null;
+            }
+
+            assertEquals(expected, actual, "Filename \"%s\"".formatted(filename));
+            assertEquals(expectedArtists, actualArtists, "Filename \"%s\"".formatted(filename));
+        }
+    }
+
+    @Test
+    void apply_removesJunkBeforeExtension() throws Mp3FileFormattingException {
+        StringBuilder buffer = new StringBuilder();
+        Set<String> newArtists = new HashSet<>();
+
+        assertEquals("DVRST_-_Close_Eyes.mp3",
+                FILENAME_RULES.apply(" dvrst - Close Eyes _-_ .MP3 ", buffer, new StringBuilder(), newArtists));
+        assertTrue(newArtists.isEmpty());
+    }
+
+    /**
+     * Reference implementation: formatting rules applied one by one with {@link String} methods
+     *
+     * @return formatted filename or {@code null} if filename is invalid
+     */
+    private String formatWithStringOperations(String filename, Set<String> newArtists) {
+        StringBuilder result = new StringBuilder();
+        for (char c : filename.toCharArray()) {
+            result.append(CHARACTERS_TO_REPLACE.getOrDefault(String.valueOf(c), String.valueOf(c)));
+        }
+        String formatted = BLACKLIST_MATCHER.replaceAll(result.toString(), "")
+                .trim()
+                .replaceAll("(?i)[ _-]+\\.mp3$", ".mp3")
+                .replaceAll(" ", "_")
+                .replaceAll("[\\s_]*,[\\s_]*", ", ");
+
+        if (!formatted.contains("_-_")) {
+            return null;
+        }
+        String[] parts = formatted.split("_-_");
+        if (parts.length < 2) {
+            return null;
+        }
+        formatted = ARTIST_SEPARATORS_MATCHER.replaceAll(parts[0], ", ") + "_-_" + parts[1];
+
+        if (!FileFormatter.isValidMp3Filename(formatted)) {
+            return null;
+        }
+        parts = formatted.split("_-_");
+        List<String> artists = new ArrayList<>();
+        for (String artist : parts[0].split(", ")) {
+            if (correctArtistsNames.containsKey(artist.toLowerCase())) {
+                artists.add(correctArtistsNames.get(artist.toLowerCase()));
+            } else {
+                artists.add(artist);
+                newArtists.add(artist);
+            }
+        }
+        return String.join(", ", artists) + "_-_" + parts[1];
+    }
+}
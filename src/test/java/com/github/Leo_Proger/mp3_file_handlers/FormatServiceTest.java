@@ -0,0 +1,93 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatServiceTest {
+    @TempDir
+    Path tempDir;
+
+    private FormatService service;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path sourceDir = Files.createDirectories(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectories(tempDir.resolve("target"));
+        service = new FormatService(new FileManager(sourceDir, targetDir, 1), 0, tempDir.resolve("service_results.jsonl"));
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void normalize_formatsEveryFilename() throws Exception {
+        HttpResponse<String> response = post("/normalize", "Artist1 & Artist2_-_Song.mp3\nArtist-Track\n");
+
+        assertEquals(200, response.statusCode());
+        String[] lines = response.body().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"filename\":\"Artist1, Artist2_-_Song.mp3\""), lines[0]);
+        assertTrue(lines[1].contains("\"error\""), lines[1]);
+    }
+
+    @Test
+    void format_returnsResultOfFile() throws Exception {
+        Path file = tempDir.resolve("source").resolve("Service_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+
+        HttpResponse<String> response = post("/format", file.toString());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"outcome\":\"MODIFIED\""), response.body());
+
+        assertEquals(400, post("/format", file + "\n" + file).statusCode(), "Only one file is formatted by /format");
+        HttpResponse<String> batch = post("/format-batch", file + "\n" + tempDir.resolve("missing.mp3"));
+        assertEquals(2, batch.body().lines().count(), "Only results of the request are returned");
+        assertEquals(3, Files.readAllLines(tempDir.resolve("service_results.jsonl")).size(),
+                "Results of all requests are kept");
+    }
+
+    @Test
+    void handle_rejectsRequestsOfWebPages() throws Exception {
+        assertEquals(403, send(request("/normalize", "Artist - Song.mp3")
+                .header("Origin", "https://example.com")).statusCode());
+        assertEquals(415, send(request("/normalize", "Artist - Song.mp3")
+                .header("Content-Type", "text/plain; charset=utf-8")).statusCode());
+        assertEquals(415, send(HttpRequest.newBuilder(URI.create("http://localhost:%d/normalize".formatted(service.getPort())))
+                .POST(HttpRequest.BodyPublishers.ofString("Artist - Song.mp3"))).statusCode(),
+                "Content-Type must be set");
+    }
+
+    @Test
+    void handle_rejectsTooLargeRequest() throws Exception {
+        assertEquals(413, post("/normalize", "a".repeat(FormatService.MAX_BODY_SIZE + 1)).statusCode());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return send(request(path, body).header("Content-Type", "application/octet-stream"));
+    }
+
+    private HttpRequest.Builder request(String path, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:%d%s".formatted(service.getPort(), path)))
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
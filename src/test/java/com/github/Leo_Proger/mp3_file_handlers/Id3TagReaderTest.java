@@ -0,0 +1,128 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.audio.exceptions.InvalidAudioFrameException;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.jaudiotagger.tag.images.Artwork;
+import org.jaudiotagger.tag.images.ArtworkFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Id3TagReaderTest {
+    @TempDir
+    Path tempDir;
+
+    private Path mp3File;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mp3File = tempDir.resolve("Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(mp3File, 2000);
+    }
+
+    @Test
+    void read_readsArtworkAndLyricsWithoutAudioData() throws Exception {
+        byte[] image = new byte[10_000];
+        new Random(42).nextBytes(image);
+        Artwork artwork = ArtworkFactory.getNew();
+        artwork.setBinaryData(image);
+        artwork.setMimeType("image/jpeg");
+        artwork.setPictureType(3);
+
+        ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.ARTIST, "Artist");
+        tag.setField(FieldKey.LYRICS, "Lyrics");
+        tag.setField(artwork);
+        new Id3TagWriter(0).write(mp3File, tag);
+
+        Id3TagReader.Result result = new Id3TagReader().read(mp3File);
+
+        Tag readTag = result.tag();
+        assertEquals("Artist", readTag.getFirst(FieldKey.ARTIST));
+        assertEquals("Lyrics", readTag.getFirst(FieldKey.LYRICS));
+        assertArrayEquals(image, readTag.getFirstArtwork().getBinaryData());
+        assertTrue(result.bytesRead() < Files.size(mp3File) / 10, "Audio data should not be read, read " + result.bytesRead());
+    }
+
+    @Test
+    void readFrames_findsFramesWithoutReadingThem() throws Exception {
+        byte[] image = new byte[100_000];
+        new Random(42).nextBytes(image);
+        Artwork artwork = ArtworkFactory.getNew();
+        artwork.setBinaryData(image);
+        artwork.setMimeType("image/jpeg");
+        artwork.setPictureType(3);
+        ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.ARTIST, "Artist");
+        tag.setField(FieldKey.ALBUM, "Album");
+        tag.setField(artwork);
+        new Id3TagWriter(0).write(mp3File, tag);
+
+        Id3TagReader.TagFrames frames = new Id3TagReader().readFrames(mp3File, Set.of("APIC", "USLT"));
+
+        assertNull(frames.decodedTag());
+        assertEquals(1, frames.frames().size());
+        Id3TagReader.RawFrame frame = frames.frames().getFirst();
+        assertEquals("APIC", frame.id());
+        assertTrue(frame.bodySize() > image.length);
+        assertTrue(frames.bytesRead() < image.length / 10, "Artwork should not be read, read " + frames.bytesRead());
+    }
+
+    @Test
+    void readFrames_decodesTagThatCannotBeCopiedByFrames() throws Exception {
+        ID3v22Tag tag = new ID3v22Tag();
+        tag.setField(FieldKey.TITLE, "Song");
+        new Id3TagWriter(100).write(mp3File, tag);
+
+        Id3TagReader.TagFrames frames = new Id3TagReader().readFrames(mp3File, Set.of("APIC"));
+
+        assertTrue(frames.frames().isEmpty());
+        assertEquals("Song", frames.decodedTag().getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    void read_readsId3v23Tag() throws Exception {
+        ID3v23Tag tag = new ID3v23Tag();
+        tag.setField(FieldKey.TITLE, "Song");
+        new Id3TagWriter(100).write(mp3File, tag);
+
+        assertEquals("Song", new Id3TagReader().read(mp3File).tag().getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    void read_returnsNoTagForFileWithoutTag() throws Exception {
+        assertNull(new Id3TagReader().read(mp3File).tag());
+    }
+
+    @Test
+    void read_rejectsFileWithoutAudioFrames() throws IOException {
+        Path textFile = tempDir.resolve("Not_-_Music.mp3");
+        Files.writeString(textFile, "Just text ".repeat(1000));
+
+        assertThrows(InvalidAudioFrameException.class, () -> new Id3TagReader().read(textFile));
+    }
+
+    @Test
+    void containsFrameHeader_checksVersionLayerBitrateAndSampleRate() {
+        assertTrue(Id3TagReader.containsFrameHeader(ByteBuffer.wrap(new byte[]{0, (byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64})));
+        // Reserved version
+        assertFalse(Id3TagReader.containsFrameHeader(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xEB, (byte) 0x90, 0x64})));
+        // Invalid bitrate
+        assertFalse(Id3TagReader.containsFrameHeader(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0xF0, 0x64})));
+        // Header is not complete
+        assertFalse(Id3TagReader.containsFrameHeader(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0x90})));
+    }
+}
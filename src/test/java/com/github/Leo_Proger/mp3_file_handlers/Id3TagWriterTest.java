@@ -0,0 +1,156 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Id3TagWriterTest {
+    @TempDir
+    Path tempDir;
+
+    private Path mp3File;
+    private byte[] audio;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mp3File = tempDir.resolve("Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(mp3File);
+        audio = Files.readAllBytes(mp3File);
+    }
+
+    @Test
+    void write_reservesPaddingInNewTag() throws Exception {
+        new Id3TagWriter(1000).write(mp3File, createTag("Artist", "Song"));
+
+        long tagSize = readTagSize();
+        assertEquals(tagWithoutPaddingSize(createTag("Artist", "Song")) + 1000, tagSize);
+        assertAudioStartsAt(tagSize);
+
+        Tag tag = AudioFileIO.read(mp3File.toFile()).getTag();
+        assertEquals("Artist", tag.getFirst(FieldKey.ARTIST));
+        assertEquals("Song", tag.getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    void write_updatesTagInPlaceWhenItFits() throws Exception {
+        Id3TagWriter writer = new Id3TagWriter(1000);
+        writer.write(mp3File, createTag("Artist", "Song"));
+        long tagSize = readTagSize();
+        Object fileKey = Files.readAttributes(mp3File, BasicFileAttributes.class).fileKey();
+
+        writer.write(mp3File, createTag("Another Artist", "Another Song With Longer Title"));
+
+        assertEquals(tagSize, readTagSize(), "Tag size should not change");
+        assertAudioStartsAt(tagSize);
+        if (fileKey != null) {
+            assertEquals(fileKey, Files.readAttributes(mp3File, BasicFileAttributes.class).fileKey(),
+                    "File should be updated in place, not replaced");
+        }
+        Tag tag = AudioFileIO.read(mp3File.toFile()).getTag();
+        assertEquals("Another Artist", tag.getFirst(FieldKey.ARTIST));
+        assertEquals("Another Song With Longer Title", tag.getFirst(FieldKey.TITLE));
+    }
+
+    @Test
+    void write_rewritesFileWhenTagDoesNotFit() throws Exception {
+        Id3TagWriter writer = new Id3TagWriter(0);
+        writer.write(mp3File, createTag("A", "S"));
+
+        writer.write(mp3File, createTag("Artist", "Song ".repeat(100)));
+
+        long tagSize = readTagSize();
+        assertEquals(tagWithoutPaddingSize(createTag("Artist", "Song ".repeat(100))), tagSize);
+        assertAudioStartsAt(tagSize);
+        assertEquals("Song ".repeat(100).trim(), AudioFileIO.read(mp3File.toFile()).getTag().getFirst(FieldKey.TITLE).trim());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "Temporary file should be removed");
+        }
+    }
+
+    @Test
+    void write_removesId3v1Tag() throws Exception {
+        byte[] id3v1Tag = new byte[128];
+        id3v1Tag[0] = 'T';
+        id3v1Tag[1] = 'A';
+        id3v1Tag[2] = 'G';
+        Files.write(mp3File, id3v1Tag, StandardOpenOption.APPEND);
+
+        new Id3TagWriter(100).write(mp3File, createTag("Artist", "Song"));
+
+        long tagSize = readTagSize();
+        assertEquals(tagSize + audio.length, Files.size(mp3File));
+        assertAudioStartsAt(tagSize);
+    }
+
+    @Test
+    void writeTo_writesTagAndAudioToTargetWithoutChangingSource() throws Exception {
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        Path targetFile = targetDir.resolve("Artist_-_Song.mp3");
+
+        long writtenBytes = new Id3TagWriter(100).writeTo(mp3File, createTag("Artist", "Song"), targetFile);
+
+        assertArrayEquals(audio, Files.readAllBytes(mp3File), "Source file should not be changed");
+        assertEquals(Files.size(targetFile), writtenBytes);
+        assertEquals("Song", AudioFileIO.read(targetFile.toFile()).getTag().getFirst(FieldKey.TITLE));
+        mp3File = targetFile;
+        assertAudioStartsAt(readTagSize());
+        try (var files = Files.list(targetDir)) {
+            assertEquals(1, files.count(), "Temporary file should be removed");
+        }
+    }
+
+    @Test
+    void writeTo_doesNotReplaceExistingFile() throws Exception {
+        Path targetDir = Files.createDirectory(tempDir.resolve("existing_target"));
+        Path targetFile = targetDir.resolve("Existing_-_Song.mp3");
+        Files.writeString(targetFile, "existing");
+
+        assertThrows(FileAlreadyExistsException.class,
+                () -> new Id3TagWriter(100).writeTo(mp3File, createTag("Artist", "Song"), targetFile));
+        assertEquals("existing", Files.readString(targetFile));
+        assertArrayEquals(audio, Files.readAllBytes(mp3File), "Source file should not be changed");
+        try (var files = Files.list(targetDir)) {
+            assertEquals(1, files.count(), "Temporary file should be removed");
+        }
+    }
+
+    private ID3v24Tag createTag(String artist, String title) throws Exception {
+        ID3v24Tag tag = new ID3v24Tag();
+        tag.setField(FieldKey.ARTIST, artist);
+        tag.setField(FieldKey.TITLE, title);
+        return tag;
+    }
+
+    private int tagWithoutPaddingSize(ID3v24Tag tag) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        tag.write(stream, 0);
+        return stream.size();
+    }
+
+    private long readTagSize() throws IOException {
+        try (FileChannel channel = FileChannel.open(mp3File)) {
+            return Id3TagWriter.readTagSize(channel);
+        }
+    }
+
+    private void assertAudioStartsAt(long position) throws IOException {
+        byte[] content = Files.readAllBytes(mp3File);
+        assertArrayEquals(audio, Arrays.copyOfRange(content, (int) position, content.length), "Audio data should be preserved");
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
+import org.jaudiotagger.tag.images.Artwork;
+import org.jaudiotagger.tag.images.ArtworkFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawId3v24TagTest {
+    private static final Set<String> KEPT_FRAMES = Set.of("APIC", "USLT");
+
+    @TempDir
+    Path tempDir;
+
+    private Path mp3File;
+    private byte[] audio;
+    private byte[] image;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mp3File = tempDir.resolve("Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(mp3File);
+        audio = Files.readAllBytes(mp3File);
+        image = new byte[200_000];
+        new Random(42).nextBytes(image);
+    }
+
+    @Test
+    void write_copiesArtworkAndLyricsOfId3v24Tag() throws Exception {
+        new Id3TagWriter(0).write(mp3File, withArtworkAndLyrics(new ID3v24Tag()));
+
+        writeRawTag(new Id3TagWriter(100), null);
+
+        Tag tag = new Id3TagReader().read(mp3File).tag();
+        assertEquals("New Artist", tag.getFirst(FieldKey.ARTIST));
+        assertEquals("New Song", tag.getFirst(FieldKey.TITLE));
+        assertEquals("Lyrics", tag.getFirst(FieldKey.LYRICS));
+        assertEquals("", tag.getFirst(FieldKey.ALBUM), "Not kept frames should be removed");
+        assertArrayEquals(image, tag.getFirstArtwork().getBinaryData());
+        assertAudioStartsAt(mp3File, readTagSize(mp3File));
+    }
+
+    @Test
+    void write_convertsFramesOfId3v23Tag() throws Exception {
+        new Id3TagWriter(0).write(mp3File, withArtworkAndLyrics(new ID3v23Tag()));
+
+        writeRawTag(new Id3TagWriter(100), null);
+
+        Tag tag = new Id3TagReader().read(mp3File).tag();
+        assertInstanceOf(ID3v24Tag.class, tag);
+        assertEquals("New Song", tag.getFirst(FieldKey.TITLE));
+        assertEquals("Lyrics", tag.getFirst(FieldKey.LYRICS));
+        assertArrayEquals(image, tag.getFirstArtwork().getBinaryData());
+    }
+
+    @Test
+    void write_movesFramesInPlaceWhenTagFits() throws Exception {
+        // Big not kept frame before artwork, so artwork moves towards the beginning of the file
+        ID3v24Tag oldTag = new ID3v24Tag();
+        oldTag.setField(FieldKey.COMMENT, "Comment ".repeat(10_000));
+        new Id3TagWriter(0).write(mp3File, withArtworkAndLyrics(oldTag));
+        long oldTagSize = readTagSize(mp3File);
+
+        writeRawTag(new Id3TagWriter(0), null);
+
+        assertEquals(oldTagSize, readTagSize(mp3File), "Tag should be written in place");
+        Tag tag = new Id3TagReader().read(mp3File).tag();
+        assertEquals("New Song", tag.getFirst(FieldKey.TITLE));
+        assertArrayEquals(image, tag.getFirstArtwork().getBinaryData());
+        assertAudioStartsAt(mp3File, oldTagSize);
+
+        // Copied frames are already at the beginning of the tag
+        writeRawTag(new Id3TagWriter(0), null);
+        assertArrayEquals(image, new Id3TagReader().read(mp3File).tag().getFirstArtwork().getBinaryData());
+    }
+
+    @Test
+    void writeTo_copiesFramesToTargetFile() throws Exception {
+        new Id3TagWriter(0).write(mp3File, withArtworkAndLyrics(new ID3v24Tag()));
+        byte[] source = Files.readAllBytes(mp3File);
+        Path targetFile = Files.createDirectory(tempDir.resolve("target")).resolve("New_Artist_-_New_Song.mp3");
+
+        writeRawTag(new Id3TagWriter(100), targetFile);
+
+        assertArrayEquals(source, Files.readAllBytes(mp3File), "Source file should not be changed");
+        Tag tag = new Id3TagReader().read(targetFile).tag();
+        assertEquals("New Artist", tag.getFirst(FieldKey.ARTIST));
+        assertArrayEquals(image, tag.getFirstArtwork().getBinaryData());
+        assertAudioStartsAt(targetFile, readTagSize(targetFile));
+    }
+
+    @Test
+    void write_failsWhenTagWasChangedAfterReading() throws Exception {
+        Id3TagReader.TagFrames frames = new Id3TagReader().readFrames(mp3File, KEPT_FRAMES);
+        new Id3TagWriter(0).write(mp3File, withArtworkAndLyrics(new ID3v24Tag()));
+
+        assertThrows(IOException.class, () -> new Id3TagWriter(0).write(mp3File, new RawId3v24Tag(frames)));
+    }
+
+    private void writeRawTag(Id3TagWriter writer, Path targetFile) throws Exception {
+        RawId3v24Tag tag = new RawId3v24Tag(new Id3TagReader().readFrames(mp3File, KEPT_FRAMES));
+        tag.addTextFrame("TIT2", "New Song");
+        tag.addTextFrame("TPE1", "New Artist");
+        if (targetFile == null) {
+            writer.write(mp3File, tag);
+        } else {
+            writer.writeTo(mp3File, tag, targetFile);
+        }
+    }
+
+    private AbstractID3v2Tag withArtworkAndLyrics(AbstractID3v2Tag tag) throws Exception {
+        Artwork artwork = ArtworkFactory.getNew();
+        artwork.setBinaryData(image);
+        artwork.setMimeType("image/jpeg");
+        artwork.setPictureType(3);
+        tag.setField(FieldKey.ALBUM, "Album");
+        tag.setField(FieldKey.LYRICS, "Lyrics");
+        tag.setField(artwork);
+        return tag;
+    }
+
+    private static long readTagSize(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return Id3TagWriter.readTagSize(channel);
+        }
+    }
+
+    private void assertAudioStartsAt(Path file, long position) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        assertArrayEquals(audio, Arrays.copyOfRange(content, (int) position, content.length), "Audio data should be preserved");
+    }
+}
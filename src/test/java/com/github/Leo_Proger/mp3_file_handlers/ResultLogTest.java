@@ -0,0 +1,66 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultLogTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void add_writesEveryResultAsLine() throws IOException {
+        Path resultsFile = tempDir.resolve("results").resolve("run_results.jsonl");
+        ResultLog results = ResultLog.open(resultsFile, false);
+        results.add(ResultLog.Outcome.MODIFIED, Path.of("artist - song.mp3"), Path.of("Artist_-_Song.mp3"), null);
+        results.add(ResultLog.Outcome.SKIPPED, Path.of("Other_-_Song.mp3"), Path.of("Other_-_Song.mp3"), "File exists");
+        results.add(ResultLog.Outcome.ERROR, Path.of("broken.mp3"), null, "Invalid filename format");
+        results.close();
+
+        List<String> lines = Files.readAllLines(resultsFile);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"outcome\":\"MODIFIED\""));
+        assertTrue(lines.get(0).contains("Artist_-_Song.mp3"));
+        assertTrue(lines.get(2).contains("\"message\":\"Invalid filename format\""));
+        assertEquals(1, results.count(ResultLog.Outcome.SKIPPED));
+    }
+
+    @Test
+    void open_keepsResultsOfPreviousRunsIfAppended() throws IOException {
+        Path resultsFile = tempDir.resolve("run_results.jsonl");
+        ResultLog first = ResultLog.open(resultsFile, false);
+        first.add(ResultLog.Outcome.MODIFIED, Path.of("first.mp3"), Path.of("First.mp3"), null);
+        first.close();
+        ResultLog second = ResultLog.open(resultsFile, true);
+        second.add(ResultLog.Outcome.MODIFIED, Path.of("second.mp3"), Path.of("Second.mp3"), null);
+        second.close();
+        assertEquals(2, Files.readAllLines(resultsFile).size());
+
+        ResultLog replaced = ResultLog.open(resultsFile, false);
+        replaced.close();
+        assertTrue(Files.readAllLines(resultsFile).isEmpty());
+    }
+
+    @Test
+    void add_countsManyFilesWithoutKeepingThem() throws IOException {
+        Path resultsFile = tempDir.resolve("run_results.jsonl");
+        ResultLog results = ResultLog.open(resultsFile, false);
+        int files = ResultLog.CONSOLE_LINES * 3;
+        for (int i = 0; i < files; i++) {
+            // Every error message is different
+            results.add(ResultLog.Outcome.ERROR, Path.of("file_%d.mp3".formatted(i)), null, "Error %d".formatted(i));
+        }
+        results.close();
+
+        assertEquals(files, results.count(ResultLog.Outcome.ERROR));
+        try (var lines = Files.lines(resultsFile)) {
+            assertEquals(files, lines.count());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunJournalTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void open_continuesOperationsOfKilledRun() throws IOException {
+        Path target = Files.createDirectories(tempDir.resolve("target"));
+        Path tagged = Files.writeString(tempDir.resolve("tagged.mp3"), "tagged");
+        Path renamed = Files.writeString(tempDir.resolve("renamed.mp3"), "renamed");
+        Path written = Files.writeString(tempDir.resolve("written.mp3"), "written");
+        Path moved = Files.writeString(tempDir.resolve("moved.mp3"), "moved");
+        Files.writeString(target.resolve("written.mp3"), "written");
+
+        RunJournal killed = RunJournal.open(tempDir);
+        killed.record(RunJournal.Operation.TAGGED, tagged, null, Files.readAttributes(tagged, BasicFileAttributes.class));
+        Path oldName = tempDir.resolve("old_name.mp3");
+        killed.record(RunJournal.Operation.TAGGED, oldName, null, Files.readAttributes(renamed, BasicFileAttributes.class));
+        killed.record(RunJournal.Operation.RENAMED, oldName, renamed, null);
+        killed.record(RunJournal.Operation.WRITTEN, written, target.resolve("written.mp3"), null);
+        killed.record(RunJournal.Operation.TAGGED, moved, null, Files.readAttributes(moved, BasicFileAttributes.class));
+        killed.record(RunJournal.Operation.MOVED, moved, target.resolve("moved.mp3"), null);
+        killed.commit();
+
+        RunJournal journal = RunJournal.open(tempDir);
+        assertTrue(journal.isTagged(tagged));
+        assertFalse(journal.isTagged(moved), "Moved file is finished");
+        assertEquals(List.of(renamed.toAbsolutePath()), journal.getRenamedFiles());
+        journal.deleteWrittenSources();
+        assertFalse(Files.exists(written), "Source of file written to target dir should be deleted");
+
+        // Unfinished files are kept by the new journal, changed files are not trusted
+        RunJournal reopened = RunJournal.open(tempDir);
+        Files.setLastModifiedTime(renamed, FileTime.fromMillis(0));
+        assertTrue(reopened.isTagged(tagged));
+        assertTrue(reopened.getRenamedFiles().isEmpty());
+
+        reopened.finish();
+        assertFalse(Files.exists(tempDir.resolve(RunJournal.JOURNAL_FILENAME)), "Finished journal should be deleted");
+    }
+
+    @Test
+    void open_resolvesOperationsStartedByKilledRun() throws IOException {
+        Path target = Files.createDirectories(tempDir.resolve("target"));
+        Path written = tempDir.resolve("written.mp3");
+        Path notMoved = tempDir.resolve("not_moved.mp3");
+        Path taken = tempDir.resolve("taken.mp3");
+        Mp3TestFiles.writeSilentMp3(written);
+        Mp3TestFiles.writeSilentMp3(notMoved);
+        Mp3TestFiles.writeSilentMp3(taken);
+        Mp3TestFiles.writeSilentMp3(target.resolve("written.mp3"));
+        // Another process took the name before the killed run wrote the file
+        Mp3TestFiles.writeSilentMp3(target.resolve("taken.mp3"), 20);
+
+        RunJournal killed = RunJournal.open(tempDir);
+        killed.recordIntent(RunJournal.Operation.WRITING, written, target.resolve("written.mp3"));
+        killed.recordIntent(RunJournal.Operation.MOVING, notMoved, target.resolve("not_moved.mp3"));
+        killed.recordIntent(RunJournal.Operation.WRITING, taken, target.resolve("taken.mp3"));
+        // Intents are committed in a group like other records
+        killed.commit();
+
+        RunJournal journal = RunJournal.open(tempDir);
+        assertTrue(journal.isTagged(notMoved), "File that was not moved should be moved again without writing its tag");
+        journal.deleteWrittenSources();
+        assertFalse(Files.exists(written), "Source of file written to target dir should be deleted");
+        assertTrue(Files.exists(taken), "File should not be deleted if its name was taken by another file");
+    }
+
+    @Test
+    void open_readsPathsWithTabsAndLineBreaks() throws IOException {
+        Path tagged = Files.writeString(tempDir.resolve("Artist\t-\nSong\\.mp3"), "tagged");
+        RunJournal killed = RunJournal.open(tempDir);
+        assertFalse(killed.isInterrupted());
+        killed.record(RunJournal.Operation.TAGGED, tagged, null, Files.readAttributes(tagged, BasicFileAttributes.class));
+        killed.commit();
+
+        RunJournal journal = RunJournal.open(tempDir);
+        assertTrue(journal.isInterrupted());
+        assertTrue(journal.isTagged(tagged));
+    }
+
+    @Test
+    void open_findsKilledRunWithoutCommittedRecords() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("file.mp3"), "file");
+        RunJournal killed = RunJournal.open(tempDir);
+        // Killed before the group was committed
+        killed.recordIntent(RunJournal.Operation.MOVING, file, tempDir.resolve("target.mp3"));
+
+        RunJournal journal = RunJournal.open(tempDir);
+        assertTrue(journal.isInterrupted(), "Journal left by a killed run should be found even if it is empty");
+        assertFalse(journal.isTagged(file));
+    }
+
+    @Test
+    void open_skipsDamagedLines() throws IOException {
+        Path tagged = Files.writeString(tempDir.resolve("tagged.mp3"), "tagged");
+        RunJournal killed = RunJournal.open(tempDir);
+        killed.record(RunJournal.Operation.TAGGED, tagged, null, Files.readAttributes(tagged, BasicFileAttributes.class));
+        killed.commit();
+        // Program was killed while writing the next record
+        Files.writeString(tempDir.resolve(RunJournal.JOURNAL_FILENAME), "RENAMED\t" + tagged.toAbsolutePath(),
+                StandardOpenOption.APPEND);
+
+        assertTrue(RunJournal.open(tempDir).isTagged(tagged));
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.Leo_Proger.utils.JsonManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunMetricsTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void createReport_countsFilesBytesAndErrors() {
+        RunMetrics metrics = new RunMetrics();
+        long now = System.nanoTime();
+        metrics.record(RunMetrics.Stage.TAG_READ, now, 1000);
+        metrics.record(RunMetrics.Stage.TAG_READ, now, 500);
+        metrics.record(RunMetrics.Stage.TAG_WRITE, now, 200);
+        metrics.recordModified();
+        metrics.recordUnchanged();
+        metrics.recordError("InvalidAudioFrameException");
+        metrics.recordError("InvalidAudioFrameException");
+        metrics.recordError("FileAlreadyExistsException");
+
+        Map<String, Object> report = metrics.createReport();
+
+        assertEquals(5L, report.get("processedFiles"));
+        assertEquals(1L, report.get("modifiedFiles"));
+        assertEquals(3L, report.get("errorFiles"));
+        assertEquals(1500L, report.get("bytesRead"));
+        assertEquals(200L, report.get("bytesWritten"));
+        assertEquals(Map.of("InvalidAudioFrameException", 2L, "FileAlreadyExistsException", 1L), report.get("errors"));
+        assertEquals(2L, stageReport(report, RunMetrics.Stage.TAG_READ).get("count"));
+        assertEquals(0L, stageReport(report, RunMetrics.Stage.MOVE).get("count"));
+    }
+
+    @Test
+    void createReport_givesPercentilesAsUpperBoundsOfBuckets() {
+        RunMetrics metrics = new RunMetrics();
+        // 99 fast durations of about 1 microsecond and 1 slow duration of about 1 second
+        for (int i = 0; i < 99; i++) {
+            metrics.record(RunMetrics.Stage.RENAME, System.nanoTime() - 1000, 0);
+        }
+        metrics.record(RunMetrics.Stage.RENAME, System.nanoTime() - 1_000_000_000, 0);
+
+        Map<String, Object> stage = stageReport(metrics.createReport(), RunMetrics.Stage.RENAME);
+        double p50 = (double) stage.get("p50Micros");
+        double p99 = (double) stage.get("p99Micros");
+        double max = (double) stage.get("maxMicros");
+
+        assertTrue(p50 >= 1 && p50 < 100_000, "p50 should be close to fast durations, got " + p50);
+        assertTrue(p99 < 100_000, "p99 should not be affected by the single slow duration, got " + p99);
+        assertTrue(max >= 1_000_000, "max should be the slow duration, got " + max);
+    }
+
+    @Test
+    void record_isSafeFromSeveralThreads() throws Exception {
+        RunMetrics metrics = new RunMetrics();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int thread = 0; thread < 4; thread++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        metrics.record(RunMetrics.Stage.FILENAME_RULES, System.nanoTime(), 0);
+                        metrics.recordError("Error");
+                    }
+                });
+            }
+        }
+
+        Map<String, Object> report = metrics.createReport();
+        assertEquals(40_000L, stageReport(report, RunMetrics.Stage.FILENAME_RULES).get("count"));
+        assertEquals(40_000L, report.get("errorFiles"));
+    }
+
+    @Test
+    void writeReport_writesJsonFile() throws IOException {
+        RunMetrics metrics = new RunMetrics();
+        metrics.record(RunMetrics.Stage.SCAN, System.nanoTime(), 0);
+        Path reportFile = tempDir.resolve("run_report.json");
+
+        metrics.writeReport(reportFile);
+
+        Map<String, Object> report = JsonManager.loadDataFromJson(reportFile, new TypeReference<>() {
+        });
+        assertTrue(report.containsKey("filesPerSecond"));
+        assertTrue(((Map<?, ?>) report.get("stages")).containsKey("SCAN"));
+    }
+
+    @Test
+    void mergeReports_addsUpReportsOfWorkers() throws IOException {
+        RunMetrics first = new RunMetrics();
+        first.record(RunMetrics.Stage.MOVE, System.nanoTime() - 1000, 100);
+        first.recordModified();
+        first.recordError("FileAlreadyExistsException");
+        RunMetrics second = new RunMetrics();
+        second.record(RunMetrics.Stage.MOVE, System.nanoTime() - 1_000_000, 200);
+        second.recordModified();
+        second.recordUnchanged();
+        Path firstFile = tempDir.resolve("first.json");
+        Path secondFile = tempDir.resolve("second.json");
+        first.writeReport(firstFile);
+        second.writeReport(secondFile);
+
+        Map<String, Object> merged = RunMetrics.mergeReports(List.of(
+                JsonManager.loadDataFromJson(firstFile, new TypeReference<>() {
+                }),
+                JsonManager.loadDataFromJson(secondFile, new TypeReference<>() {
+                })));
+
+        assertEquals(2, merged.get("workers"));
+        assertEquals(4L, merged.get("processedFiles"));
+        assertEquals(2L, merged.get("modifiedFiles"));
+        assertEquals(300L, merged.get("bytesMoved"));
+        assertEquals(Map.of("FileAlreadyExistsException", 1L), merged.get("errors"));
+        Map<String, Object> move = stageReport(merged, RunMetrics.Stage.MOVE);
+        assertEquals(2L, move.get("count"));
+        assertEquals(2, ((Map<?, ?>) move.get("histogramMicros")).size());
+        assertTrue((double) move.get("maxMicros") >= 1000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stageReport(Map<String, Object> report, RunMetrics.Stage stage) {
+        return (Map<String, Object>) ((Map<String, Object>) report.get("stages")).get(stage.name());
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceWatcherTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void run_processesNewFileOnceAndIgnoresItsRenaming() throws Exception {
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        List<List<Path>> batches = new CopyOnWriteArrayList<>();
+        FileManager fileManager = new FileManager(sourceDir, targetDir, 1) {
+            @Override
+            public List<Path> run(List<Path> files, boolean allowFileMove) {
+                List<Path> newPaths = super.run(files, allowFileMove);
+                batches.add(files);
+                return newPaths;
+            }
+        };
+        SourceWatcher watcher = new SourceWatcher(sourceDir, fileManager, false);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<?> watching = executor.submit(() -> {
+                watcher.run();
+                return null;
+            });
+            try {
+                // File appears in source dir at once, like a finished download
+                Path downloaded = tempDir.resolve("Watch Artist - Song.mp3");
+                Mp3TestFiles.writeSilentMp3(downloaded);
+                Files.move(downloaded, sourceDir.resolve(downloaded.getFileName()));
+
+                waitFor(() -> batches.size() == 1);
+                // Events of renaming and tag writing are delivered and checked for longer than a file needs to be stable
+                TimeUnit.SECONDS.sleep(2);
+            } finally {
+                watcher.stop();
+            }
+            watching.get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of(List.of(sourceDir.resolve("Watch Artist - Song.mp3"))), batches,
+                    "Renamed file should not be processed again");
+        }
+    }
+
+    @Test
+    void run_processesFileChangedAfterProcessing() throws Exception {
+        Path sourceDir = Files.createDirectory(tempDir.resolve("source"));
+        Path targetDir = Files.createDirectory(tempDir.resolve("target"));
+        List<List<Path>> batches = new CopyOnWriteArrayList<>();
+        FileManager fileManager = new FileManager(sourceDir, targetDir, 1) {
+            @Override
+            public List<Path> run(List<Path> files, boolean allowFileMove) {
+                List<Path> newPaths = super.run(files, allowFileMove);
+                batches.add(files);
+                return newPaths;
+            }
+        };
+        SourceWatcher watcher = new SourceWatcher(sourceDir, fileManager, false);
+        Path file = sourceDir.resolve("Changed_Artist_-_Song.mp3");
+        Mp3TestFiles.writeSilentMp3(file);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<?> watching = executor.submit(() -> {
+                watcher.run();
+                return null;
+            });
+            try {
+                waitFor(() -> batches.size() == 1);
+                // User replaces the processed file with another one of the same name
+                Path downloaded = tempDir.resolve("Changed_Artist_-_Song.mp3");
+                Mp3TestFiles.writeSilentMp3(downloaded, 20);
+                Files.move(downloaded, file, StandardCopyOption.REPLACE_EXISTING);
+
+                waitFor(() -> batches.size() == 2);
+            } finally {
+                watcher.stop();
+            }
+            watching.get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of(file), batches.get(1));
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Watcher did not process the file in time");
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TabSeparatedLineTest {
+    @Test
+    void split_returnsFieldsOfJoinedLine() {
+        String[] fields = {"C:\\Music\\new", "Artist\t-\tSong.mp3", "line\nbreak\r", "", "-"};
+        String line = TabSeparatedLine.join(fields);
+
+        assertFalse(line.contains("\n") || line.contains("\r"));
+        assertEquals(fields.length - 1, line.chars().filter(c -> c == '\t').count());
+        assertArrayEquals(fields, TabSeparatedLine.split(line));
+    }
+
+    @Test
+    void split_throwsExceptionForDamagedLine() {
+        assertThrows(IllegalArgumentException.class, () -> TabSeparatedLine.split("Artist\\"));
+        assertThrows(IllegalArgumentException.class, () -> TabSeparatedLine.split("Artist\\x"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TargetNameIndexTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reserve_findsNamesIgnoringCase() throws IOException {
+        Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        TargetNameIndex index = TargetNameIndex.load(tempDir);
+
+        assertEquals("Artist_-_Song.mp3", index.reserve("ARTIST_-_song.mp3"));
+        assertNull(index.reserve("Artist_-_Other_Song.mp3"));
+        assertEquals("Artist_-_Other_Song.mp3", index.reserve("artist_-_other_song.mp3"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void reserveWithSuffix_returnsFirstFreeName() throws IOException {
+        Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        Files.createFile(tempDir.resolve("artist_-_song_(2).mp3"));
+        TargetNameIndex index = TargetNameIndex.load(tempDir);
+
+        assertEquals("Artist_-_Song_(3).mp3", index.reserveWithSuffix("Artist_-_Song.mp3"));
+        assertEquals("Artist_-_New.mp3", index.reserveWithSuffix("Artist_-_New.mp3"));
+    }
+
+    @Test
+    void releaseAndReplace_changeReservedNames() throws IOException {
+        Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        TargetNameIndex index = TargetNameIndex.load(tempDir);
+
+        assertTrue(index.replace("Artist_-_Song.mp3", "ARTIST_-_SONG.mp3"));
+        assertFalse(index.replace("Artist_-_Song.mp3", "artist_-_song.mp3"), "Name was already replaced");
+
+        assertNull(index.reserve("Artist_-_New.mp3"));
+        index.release("Artist_-_New.mp3");
+        assertNull(index.reserve("Artist_-_New.mp3"), "Released name should be free");
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerLeasesTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tryClaim_givesFileToOneWorker() throws IOException {
+        Path file = Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        try (WorkerLeases first = new WorkerLeases(tempDir, "first", Duration.ofMinutes(5));
+             WorkerLeases second = new WorkerLeases(tempDir, "second", Duration.ofMinutes(5))) {
+            assertTrue(first.tryClaim(file));
+            assertFalse(second.tryClaim(file), "File is claimed by the first worker");
+
+            first.release(file);
+            assertTrue(second.tryClaim(file), "Released file can be claimed");
+            assertEquals(0, first.size());
+        }
+    }
+
+    @Test
+    void tryClaim_takesOverExpiredLease() throws IOException {
+        Path file = Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        WorkerLeases crashed = new WorkerLeases(tempDir, "crashed", Duration.ofMinutes(5));
+        assertTrue(crashed.tryClaim(file));
+        // Worker stopped renewing its lease long ago
+        crashed.close();
+        Path leaseDir = tempDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("leases");
+        try (WorkerLeases other = new WorkerLeases(tempDir, "other", Duration.ofMinutes(5))) {
+            assertTrue(other.tryClaim(file), "Lease of closed worker is released");
+            other.release(file);
+        }
+
+        WorkerLeases stuck = new WorkerLeases(tempDir, "stuck", Duration.ofMinutes(5));
+        assertTrue(stuck.tryClaim(file));
+        try (Stream<Path> leases = Files.list(leaseDir)) {
+            for (Path lease : leases.toList()) {
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(0));
+            }
+        }
+        try (WorkerLeases other = new WorkerLeases(tempDir, "other", Duration.ofMinutes(5))) {
+            assertTrue(other.tryClaim(file), "Expired lease should be taken over");
+            try (WorkerLeases third = new WorkerLeases(tempDir, "third", Duration.ofMinutes(5))) {
+                assertFalse(third.tryClaim(file), "Renewed lease should not be taken over");
+            }
+        }
+    }
+
+    @Test
+    void tryClaim_returnsTargetRecordedByCrashedWorker() throws IOException {
+        Path file = Files.createFile(tempDir.resolve("Artist_-_Song.mp3"));
+        WorkerLeases crashed = new WorkerLeases(tempDir, "crashed", Duration.ofMinutes(5));
+        assertTrue(crashed.tryClaim(file));
+        crashed.recordTarget(file, "Artist - Song.mp3");
+        try (Stream<Path> leases = Files.list(tempDir.resolve(WorkerLeases.WORKERS_DIRNAME).resolve("leases"))) {
+            for (Path lease : leases.toList()) {
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(0));
+            }
+        }
+
+        try (WorkerLeases other = new WorkerLeases(tempDir, "other", Duration.ofMinutes(5))) {
+            assertTrue(other.tryClaim(file));
+            assertEquals(Optional.of("Artist - Song.mp3"), other.getPublishedTarget(file));
+            other.release(file);
+            assertTrue(other.tryClaim(file));
+            assertEquals(Optional.empty(), other.getPublishedTarget(file), "Released lease has no target");
+        }
+    }
+
+    @Test
+    void joinBatch_beginsBatchByOneWorker() throws IOException {
+        WorkerLeases first = new WorkerLeases(tempDir, "first", Duration.ofMinutes(5));
+        try (WorkerLeases second = new WorkerLeases(tempDir, "second", Duration.ofMinutes(5))) {
+            assertTrue(first.joinBatch());
+            assertFalse(second.joinBatch(), "Second worker should join the batch of the first one");
+            assertEquals(Set.of("first", "second"), second.getLiveWorkers());
+
+            first.close();
+            try (WorkerLeases third = new WorkerLeases(tempDir, "third", Duration.ofMinutes(5))) {
+                assertFalse(third.joinBatch(), "Batch goes on while one of its workers is live");
+            }
+        }
+
+        try (WorkerLeases next = new WorkerLeases(tempDir, "next", Duration.ofMinutes(5))) {
+            assertTrue(next.joinBatch(), "Last worker should end the batch");
+            assertEquals(Set.of("next"), next.getLiveWorkers());
+        }
+    }
+
+    @Test
+    void tryClaim_skipsFileThatNoLongerExists() throws IOException {
+        try (WorkerLeases leases = new WorkerLeases(tempDir, "worker", Duration.ofMinutes(5))) {
+            assertFalse(leases.tryClaim(tempDir.resolve("Moved_-_Song.mp3")));
+            assertEquals(0, leases.size());
+        }
+    }
+}
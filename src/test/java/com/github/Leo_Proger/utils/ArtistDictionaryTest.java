@@ -0,0 +1,111 @@
+package com.github.Leo_Proger.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtistDictionaryTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void get_ignoresCaseOfQuery() {
+        ArtistDictionary dictionary = ArtistDictionary.of(Map.of("dvrst", "DVRST", "kordhell", "Kordhell", "кино", "Кино"));
+
+        assertEquals("DVRST", dictionary.get("dvrst"));
+        assertEquals("DVRST", dictionary.get("DvRsT"));
+        assertEquals("Кино", dictionary.get("КИНО"));
+        assertNull(dictionary.get("dvrst2"));
+        assertNull(dictionary.get(""));
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    void find_searchesRegionOfText() {
+        ArtistDictionary dictionary = ArtistDictionary.of(Map.of("freddie_dredd", "Freddie_Dredd"));
+        String text = "Kordhell, FREDDIE_DREDD_-_Opium.mp3";
+
+        int entry = dictionary.find(text, 10, 23);
+        assertTrue(entry >= 0);
+        StringBuilder output = new StringBuilder("Kordhell, ");
+        dictionary.appendName(entry, output);
+        assertEquals("Kordhell, Freddie_Dredd", output.toString());
+
+        assertEquals(-1, dictionary.find(text, 10, 22));
+    }
+
+    @Test
+    void find_givesSameResultAsLookupOfLowercaseString() {
+        Map<String, String> correctNames = new HashMap<>();
+        correctNames.put("i̇stanbul", "İstanbul");
+        correctNames.put("σοφια", "ΣΟΦΙΑ");
+        correctNames.put("σοφιας", "ΣΟΦΙΑΣ_1");
+        correctNames.put("σοφιaς", "ΣΟΦΙAΣ_2");
+        correctNames.put("𐐨", "Deseret");
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            String artist = "artist_" + Integer.toString(random.nextInt(1_000_000), 36);
+            correctNames.put(artist, artist.toUpperCase());
+        }
+        ArtistDictionary dictionary = ArtistDictionary.of(correctNames);
+
+        String[] queries = {"İSTANBUL", "ΣΟΦΙΑ", "ΣΟΦΙΑΣ", "ΣΟΦΙAΣ", "𐐀", "ARTIST_1", "Artist_ZZZ", "σοφιασ"};
+        for (String query : queries) {
+            assertEquals(correctNames.get(query.toLowerCase()), dictionary.get(query), "Query \"%s\"".formatted(query));
+        }
+        for (Map.Entry<String, String> entry : correctNames.entrySet()) {
+            assertEquals(entry.getValue(), dictionary.get(entry.getKey().toUpperCase()), "Key \"%s\"".formatted(entry.getKey()));
+        }
+    }
+
+    @Test
+    void load_rebuildsDictionaryWhenJsonChanges() throws IOException {
+        Path jsonFile = tempDir.resolve("correct_artists_names.json");
+        Path dictionaryFile = tempDir.resolve("correct_artists_names.dict");
+        Files.writeString(jsonFile, "{\"dvrst\": \"DVRST\"}");
+
+        assertEquals("DVRST", ArtistDictionary.load(jsonFile, dictionaryFile).get("Dvrst"));
+        assertTrue(Files.exists(dictionaryFile));
+        assertEquals("DVRST", ArtistDictionary.load(jsonFile, dictionaryFile).get("Dvrst"));
+
+        Files.writeString(jsonFile, "{\"dvrst\": \"DVRST\", \"kordhell\": \"Kordhell\"}");
+        Files.setLastModifiedTime(jsonFile, FileTime.fromMillis(Files.getLastModifiedTime(jsonFile).toMillis() + 1000));
+        ArtistDictionary dictionary = ArtistDictionary.load(jsonFile, dictionaryFile);
+
+        assertEquals("Kordhell", dictionary.get("KORDHELL"));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void load_includesNamesFromJournal() throws IOException {
+        Path jsonFile = tempDir.resolve("correct_artists_names.json");
+        Path dictionaryFile = tempDir.resolve("correct_artists_names.dict");
+        Files.writeString(jsonFile, "{\"dvrst\": \"DVRST\"}");
+        assertNull(ArtistDictionary.load(jsonFile, dictionaryFile).get("Kordhell"));
+
+        new ArtistJournal(jsonFile).append(Map.of("kordhell", "Kordhell", "dvrst", "Dvrst"));
+        ArtistDictionary dictionary = ArtistDictionary.load(jsonFile, dictionaryFile);
+
+        assertEquals("Kordhell", dictionary.get("KORDHELL"));
+        assertEquals("DVRST", dictionary.get("dvrst"));
+    }
+
+    @Test
+    void load_rebuildsDamagedDictionary() throws IOException {
+        Path jsonFile = tempDir.resolve("correct_artists_names.json");
+        Path dictionaryFile = tempDir.resolve("correct_artists_names.dict");
+        Files.writeString(jsonFile, "{\"dvrst\": \"DVRST\"}");
+        Files.write(dictionaryFile, new byte[100]);
+
+        assertEquals("DVRST", ArtistDictionary.load(jsonFile, dictionaryFile).get("DVRST"));
+    }
+}
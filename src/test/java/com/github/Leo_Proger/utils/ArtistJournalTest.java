@@ -0,0 +1,98 @@
+package com.github.Leo_Proger.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArtistJournalTest {
+    @TempDir
+    Path tempDir;
+
+    private Path jsonFile;
+    private ArtistJournal journal;
+
+    @BeforeEach
+    void createJsonFile() throws IOException {
+        jsonFile = tempDir.resolve("correct_artists_names.json");
+        JsonManager.writeDataToJson(Map.of("dvrst", "DVRST"), jsonFile);
+        journal = new ArtistJournal(jsonFile);
+    }
+
+    @Test
+    void readAll_addsJournalToJsonWithoutReplacingNames() throws IOException {
+        journal.append(Map.of("kordhell", "Kordhell"));
+        journal.append(Map.of("dvrst", "Dvrst", "кино", "Кино"));
+
+        assertEquals(Map.of("dvrst", "DVRST", "kordhell", "Kordhell", "кино", "Кино"), journal.readAll());
+        assertEquals(Map.of("dvrst", "DVRST"), JsonManager.loadDataFromJson(jsonFile));
+    }
+
+    @Test
+    void compact_mergesJournalIntoJsonAndClearsJournal() throws IOException {
+        journal.append(Map.of("kordhell", "Kordhell", "dvrst", "Dvrst"));
+
+        assertEquals(1, journal.compact());
+
+        assertEquals(Map.of("dvrst", "DVRST", "kordhell", "Kordhell"), JsonManager.loadDataFromJson(jsonFile));
+        assertEquals(0, journal.size());
+        assertEquals(0, journal.compact());
+    }
+
+    @Test
+    void append_finishesLineLeftByKilledProgram() throws IOException {
+        Files.writeString(journal.getJournalFile(), "{\"kordh", StandardOpenOption.CREATE);
+
+        journal.append(Map.of("dvrst_2", "DVRST_2"));
+
+        assertEquals(Map.of("dvrst", "DVRST", "dvrst_2", "DVRST_2"), journal.readAll());
+    }
+
+    @Test
+    void append_isSafeFromSeveralThreads() throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            Future<?>[] futures = new Future<?>[4];
+            for (int thread = 0; thread < futures.length; thread++) {
+                int threadNumber = thread;
+                futures[thread] = executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        Map<String, String> names = new LinkedHashMap<>();
+                        names.put("artist_%d_%d".formatted(threadNumber, i), "Artist_%d_%d".formatted(threadNumber, i));
+                        journal.append(names);
+                        if (i % 25 == 0) {
+                            journal.compact();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(401, journal.readAll().size());
+        journal.compact();
+        assertEquals(401, JsonManager.loadDataFromJson(jsonFile).size());
+    }
+
+    @Test
+    void compactInBackgroundIfNeeded_ignoresSmallJournal() throws IOException {
+        journal.append(Map.of("kordhell", "Kordhell"));
+
+        journal.compactInBackgroundIfNeeded();
+
+        assertTrue(journal.size() > 0);
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.Leo_Proger.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiPatternMatcherTest {
+    @Test
+    void replaceAll_removesAllPatternsIgnoringAsciiCase() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("(Official Video)", "[Music Video]", "(EEMUSIC.ru)"));
+
+        assertEquals("Artist - Song .mp3",
+                matcher.replaceAll("Artist - Song (official video)[MUSIC VIDEO].mp3", ""));
+        assertEquals("Song.mp3", matcher.replaceAll("Song(EEMUSIC.RU).mp3", ""));
+    }
+
+    @Test
+    void replaceAll_doesNotIgnoreCaseOfNonAsciiLetters() {
+        // (?i) without UNICODE_CASE flag works only with ASCII, matcher must behave the same way
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("(Ремикс)"));
+
+        assertEquals("Song_(РЕМИКС)", matcher.replaceAll("Song_(РЕМИКС)", ""));
+        assertEquals("Song_", matcher.replaceAll("Song_(Ремикс)", ""));
+    }
+
+    @Test
+    void replaceAll_prefersLeftmostThenLongestMatch() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("_feat_", "_feat._", "at._b", "_f"));
+
+        assertEquals("a, b", matcher.replaceAll("a_feat._b", ", "));
+        assertEquals("a, b", matcher.replaceAll("a_feat_b", ", "));
+        assertEquals("a, oo", matcher.replaceAll("a_foo", ", "));
+    }
+
+    @Test
+    void replaceAll_handlesAdjacentAndOverlappingOccurrences() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("_x_"));
+
+        assertEquals("a, b, c", matcher.replaceAll("a_x_b_X_c", ", "));
+        assertEquals("a, x_b", matcher.replaceAll("a_x_x_b", ", "));
+        assertEquals("", matcher.replaceAll("", ", "));
+    }
+
+    @Test
+    void replaceAll_withoutPatternsReturnsSameText() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of());
+
+        assertEquals("Artist_-_Song.mp3", matcher.replaceAll("Artist_-_Song.mp3", ""));
+        assertFalse(matcher.containsMatch("Artist_-_Song.mp3"));
+    }
+
+    @Test
+    void containsMatch_findsPatternAnywhere() {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("_ft_", "(musmore.com)"));
+
+        assertTrue(matcher.containsMatch("a_FT_b"));
+        assertTrue(matcher.containsMatch("Song(MusMore.com).mp3"));
+        assertFalse(matcher.containsMatch("a_ft.b"));
+    }
+
+    @Test
+    void replaceAll_matchesRegexForSinglePattern() {
+        Random random = new Random(42);
+        String alphabet = "abAB_";
+
+        for (int test = 0; test < 2000; test++) {
+            String pattern = randomString(random, alphabet, 1 + random.nextInt(3));
+            String text = randomString(random, alphabet, random.nextInt(20));
+
+            String expected = text.replaceAll("(?i)" + Pattern.quote(pattern), "-");
+            assertEquals(expected, new MultiPatternMatcher(List.of(pattern)).replaceAll(text, "-"),
+                    "Pattern \"%s\", text \"%s\"".formatted(pattern, text));
+        }
+    }
+
+    @Test
+    void replaceAll_matchesNaiveSearchForManyPatterns() {
+        Random random = new Random(7);
+        String alphabet = "aAb_";
+
+        for (int test = 0; test < 2000; test++) {
+            List<String> patterns = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(5); i++) {
+                patterns.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+            }
+            String text = randomString(random, alphabet, random.nextInt(25));
+
+            assertEquals(naiveReplaceAll(patterns, text, "-"), new MultiPatternMatcher(patterns).replaceAll(text, "-"),
+                    "Patterns %s, text \"%s\"".formatted(patterns, text));
+        }
+    }
+
+    @Test
+    void readFrom_restoresMatcherWrittenByWriteTo() throws IOException {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of("_feat_", "_feat._", "at._b", "(Ремикс)"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        matcher.writeTo(new DataOutputStream(bytes));
+
+        MultiPatternMatcher restored = MultiPatternMatcher.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+
+        assertEquals(matcher.getPatterns(), restored.getPatterns());
+        assertEquals("a, b, (РЕМИКС)", restored.replaceAll("a_feat._b_FEAT_(РЕМИКС)", ", "));
+    }
+
+    @Test
+    void readFrom_rejectsTruncatedData() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MultiPatternMatcher(List.of("_ft_", "_feat_")).writeTo(new DataOutputStream(bytes));
+        byte[] data = bytes.toByteArray();
+
+        assertThrows(IOException.class, () -> MultiPatternMatcher.readFrom(ByteBuffer.wrap(data, 0, data.length - 3)));
+    }
+
+    /**
+     * Replace leftmost-longest matches by checking every pattern at every position
+     */
+    private String naiveReplaceAll(List<String> patterns, String text, String replacement) {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int longest = 0;
+            for (String pattern : patterns) {
+                if (pattern.length() > longest && text.regionMatches(true, i, pattern, 0, pattern.length())) {
+                    longest = pattern.length();
+                }
+            }
+            if (longest > 0) {
+                result.append(replacement);
+                i += longest;
+            } else {
+                result.append(text.charAt(i++));
+            }
+        }
+        return result.toString();
+    }
+
+    private String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
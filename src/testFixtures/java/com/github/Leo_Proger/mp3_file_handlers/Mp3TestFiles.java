@@ -0,0 +1,50 @@
+package com.github.Leo_Proger.mp3_file_handlers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates MP3 files for tests
+ */
+final class Mp3TestFiles {
+    /**
+     * Length of one 128 kbps, 44.1 kHz MPEG-1 Layer III frame
+     */
+    static final int FRAME_LENGTH = 417;
+
+    private Mp3TestFiles() {
+    }
+
+    /**
+     * Write a small MP3 file that contains only silent MPEG-1 Layer III frames and no tags
+     *
+     * @param file path to file to write
+     */
+    static void writeSilentMp3(Path file) throws IOException {
+        writeSilentMp3(file, 40);
+    }
+
+    /**
+     * Write MP3 file that contains only silent MPEG-1 Layer III frames and no tags
+     *
+     * @param file   path to file to write
+     * @param frames number of frames
+     */
+    static void writeSilentMp3(Path file, int frames) throws IOException {
+        byte[] frame = new byte[FRAME_LENGTH];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        frame[3] = (byte) 0x64;
+
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            for (int i = 0; i < frames; i++) {
+                // Make frames different, so moved audio data can be detected
+                frame[FRAME_LENGTH - 1] = (byte) i;
+                stream.write(frame);
+            }
+        }
+    }
+}